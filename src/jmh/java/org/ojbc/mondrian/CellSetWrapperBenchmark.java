@@ -0,0 +1,130 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.olap4j.CellSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Benchmarks the hot paths between a Mondrian CellSet and the JSON sent to the client:  wrapping, tidying (with and without name simplification), and
+ * serialization of the wrappers with Jackson and of the CellSet with the streaming writer.  Run with the gc profiler (as the benchmarks profile does) to
+ * report the allocation rate alongside throughput.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CellSetWrapperBenchmark {
+
+	@Param({"2", "3"})
+	private int axisCount;
+
+	@Param({"10", "50"})
+	private int positionsPerAxis;
+
+	@Param({"1", "4"})
+	private int hierarchyDepth;
+
+	private CellSet cellSet;
+	private CellSetWrapper cellSetWrapper;
+	private TidyCellSetWrapper tidyCellSetWrapper;
+	private ObjectMapper mapper;
+
+	/**
+	 * An output stream that discards what is written, so that serialization is measured without the cost of buffering its output
+	 */
+	private static final OutputStream NULL_OUTPUT_STREAM = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		cellSet = new SyntheticCellSetFactory(axisCount, positionsPerAxis, hierarchyDepth).createCellSet();
+		cellSetWrapper = new CellSetWrapper(cellSet);
+		tidyCellSetWrapper = new TidyCellSetWrapper();
+		tidyCellSetWrapper.init(cellSet, false, null);
+		mapper = new ObjectMapper();
+	}
+
+	@Benchmark
+	public CellSetWrapper wrap() {
+		return new CellSetWrapper(cellSet);
+	}
+
+	@Benchmark
+	public TidyCellSetWrapper tidy() {
+		TidyCellSetWrapper ret = new TidyCellSetWrapper();
+		ret.init(cellSet, false, null);
+		return ret;
+	}
+
+	@Benchmark
+	public TidyCellSetWrapper tidySimplifyNames() {
+		TidyCellSetWrapper ret = new TidyCellSetWrapper();
+		ret.init(cellSet, true, null);
+		return ret;
+	}
+
+	@Benchmark
+	public void serializeCellSetWrapper() throws IOException {
+		mapper.writeValue(NULL_OUTPUT_STREAM, cellSetWrapper);
+	}
+
+	@Benchmark
+	public void serializeTidyCellSetWrapper() throws IOException {
+		mapper.writeValue(NULL_OUTPUT_STREAM, tidyCellSetWrapper);
+	}
+
+	@Benchmark
+	public void wrapAndSerialize() throws IOException {
+		mapper.writeValue(NULL_OUTPUT_STREAM, new CellSetWrapper(cellSet));
+	}
+
+	@Benchmark
+	public void streamCellSet() throws IOException {
+		try (JsonGenerator generator = mapper.getFactory().createGenerator(NULL_OUTPUT_STREAM)) {
+			CellSetJsonWriter.write(cellSet, generator);
+		}
+	}
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.olap4j.Axis;
+import org.olap4j.Cell;
+import org.olap4j.CellSet;
+import org.olap4j.CellSetAxis;
+import org.olap4j.Position;
+import org.olap4j.metadata.Dimension;
+import org.olap4j.metadata.Level;
+import org.olap4j.metadata.Member;
+
+/**
+ * Builds synthetic CellSets of arbitrary shape for benchmarking.  Like TestCellSetFactory, the olap4j objects are stubs, but they are plain dynamic proxies
+ * that return precomputed values rather than Mockito mocks, so that the cost of the stubs does not swamp the cost of the code being measured.
+ *
+ * The first axis holds measures; each further axis holds the members of its own dimension, at the bottom of a hierarchy of the specified depth.
+ *
+ */
+public final class SyntheticCellSetFactory {
+
+	private static final String MEASURES_LEVEL_UNIQUE_NAME = "[Measures].[MeasuresLevel]";
+
+	private final int axisCount;
+	private final int positionsPerAxis;
+	private final int hierarchyDepth;
+
+	/**
+	 * Create a factory
+	 * @param axisCount the number of axes (at least 1)
+	 * @param positionsPerAxis the number of positions on each axis
+	 * @param hierarchyDepth the depth of the level holding each non-measures axis's members (0 means the members have no parents)
+	 */
+	public SyntheticCellSetFactory(int axisCount, int positionsPerAxis, int hierarchyDepth) {
+		if (axisCount < 1 || positionsPerAxis < 1 || hierarchyDepth < 0) {
+			throw new IllegalArgumentException("Invalid CellSet shape: " + axisCount + " axes, " + positionsPerAxis + " positions per axis, hierarchy depth " + hierarchyDepth);
+		}
+		this.axisCount = axisCount;
+		this.positionsPerAxis = positionsPerAxis;
+		this.hierarchyDepth = hierarchyDepth;
+	}
+
+	public CellSet createCellSet() {
+
+		Map<String, Object> cellSetValues = new HashMap<>();
+		CellSet cellSet = stub(CellSet.class, cellSetValues);
+
+		List<CellSetAxis> axes = new ArrayList<>();
+		axes.add(createAxis(cellSet, 0, createMeasuresDimension(), 0));
+		for (int a=1;a < axisCount;a++) {
+			axes.add(createAxis(cellSet, a, createDimension("Dimension " + a), hierarchyDepth));
+		}
+		cellSetValues.put("getAxes", axes);
+
+		int totalCellCount = (int) Math.pow(positionsPerAxis, axisCount);
+		Cell[] cells = new Cell[totalCellCount];
+		for (int ordinal=0;ordinal < totalCellCount;ordinal++) {
+			cells[ordinal] = createCell(cellSet, ordinal);
+		}
+		cellSetValues.put("getCell", (Answer) args -> {
+			if (!(args[0] instanceof Integer)) {
+				throw new UnsupportedOperationException("CellSet.getCell is only stubbed by ordinal");
+			}
+			return cells[(Integer) args[0]];
+		});
+
+		return cellSet;
+
+	}
+
+	private CellSetAxis createAxis(CellSet cellSet, int axisOrdinal, Dimension dimension, int depth) {
+
+		List<Level> levels = new ArrayList<>();
+		for (int l=0;l <= depth;l++) {
+			levels.add(depth == 0 && dimension.getName().equals("Measures") ? createLevel(MEASURES_LEVEL_UNIQUE_NAME, "MeasuresLevel", 0) :
+				createLevel("[" + dimension.getName() + "].[" + dimension.getName() + " Level " + l + "]", dimension.getName() + " Level " + l, l));
+		}
+
+		// parents are shared between neighbouring members, halving in number at each level up the hierarchy
+		Map<String, Member> parents = new HashMap<>();
+		List<Position> positions = new ArrayList<>(positionsPerAxis);
+		for (int p=0;p < positionsPerAxis;p++) {
+			Member member = createMember(dimension, levels, depth, p, parents);
+			Map<String, Object> positionValues = new HashMap<>();
+			positionValues.put("getMembers", Arrays.asList(member));
+			positionValues.put("getOrdinal", p);
+			positions.add(stub(Position.class, positionValues));
+		}
+
+		Map<String, Object> axisValues = new HashMap<>();
+		axisValues.put("getAxisOrdinal", Axis.Factory.forOrdinal(axisOrdinal));
+		axisValues.put("getPositions", positions);
+		axisValues.put("getPositionCount", positions.size());
+		axisValues.put("getCellSet", cellSet);
+		return stub(CellSetAxis.class, axisValues);
+
+	}
+
+	private Member createMember(Dimension dimension, List<Level> levels, int depth, int index, Map<String, Member> parents) {
+		Member parent = null;
+		if (depth > 0) {
+			int parentIndex = index / 2;
+			String key = (depth - 1) + "." + parentIndex;
+			parent = parents.get(key);
+			if (parent == null) {
+				parent = createMember(dimension, levels, depth - 1, parentIndex, parents);
+				parents.put(key, parent);
+			}
+		}
+		String name = (dimension.getName().equals("Measures") ? "Measure " : "Member " + depth + ".") + index;
+		Map<String, Object> values = new HashMap<>();
+		values.put("getName", name);
+		values.put("getCaption", name);
+		values.put("getUniqueName", (parent == null ? "[" + dimension.getName() + "]" : parent.getUniqueName()) + ".[" + name + "]");
+		values.put("getDimension", dimension);
+		values.put("getLevel", levels.get(depth));
+		values.put("getDepth", depth);
+		values.put("getParentMember", parent);
+		values.put("getMemberType", Member.Type.REGULAR);
+		values.put("isAll", false);
+		values.put("isCalculated", false);
+		values.put("isHidden", false);
+		return stub(Member.class, values);
+	}
+
+	private Level createLevel(String uniqueName, String name, int depth) {
+		Map<String, Object> values = new HashMap<>();
+		values.put("getUniqueName", uniqueName);
+		values.put("getName", name);
+		values.put("getCaption", name);
+		values.put("getDepth", depth);
+		values.put("getCardinality", (int) Math.pow(2, depth));
+		return stub(Level.class, values);
+	}
+
+	private Dimension createMeasuresDimension() {
+		Map<String, Object> values = new HashMap<>();
+		values.put("getName", "Measures");
+		values.put("getCaption", "Measures");
+		values.put("getUniqueName", "[Measures]");
+		values.put("getDimensionType", Dimension.Type.MEASURE);
+		return stub(Dimension.class, values);
+	}
+
+	private Dimension createDimension(String name) {
+		Map<String, Object> values = new HashMap<>();
+		values.put("getName", name);
+		values.put("getCaption", name);
+		values.put("getUniqueName", "[" + name + "]");
+		values.put("getDimensionType", Dimension.Type.OTHER);
+		return stub(Dimension.class, values);
+	}
+
+	private Cell createCell(CellSet cellSet, int ordinal) {
+		List<Integer> coordinates = new ArrayList<>(axisCount);
+		int remainder = ordinal;
+		for (int a=0;a < axisCount;a++) {
+			coordinates.add(remainder % positionsPerAxis);
+			remainder /= positionsPerAxis;
+		}
+		Double value = ordinal * 1.5;
+		Map<String, Object> values = new HashMap<>();
+		values.put("getValue", value);
+		values.put("getFormattedValue", value.toString());
+		values.put("getOrdinal", ordinal);
+		values.put("getCoordinateList", coordinates);
+		values.put("getCellSet", cellSet);
+		values.put("isNull", false);
+		values.put("isEmpty", false);
+		values.put("isError", false);
+		return stub(Cell.class, values);
+	}
+
+	/**
+	 * A stubbed method whose result depends on its arguments
+	 */
+	private static interface Answer {
+		public Object answer(Object[] args);
+	}
+
+	/**
+	 * Create a stub of an olap4j interface.  Each method returns the value mapped to its name (or, for an Answer, the value it computes from the arguments);
+	 * methods without a value throw UnsupportedOperationException, so that a benchmark does not silently measure a shape the real objects would not have.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T stub(Class<T> type, Map<String, Object> values) {
+		InvocationHandler handler = new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				Object value = values.get(name);
+				if (value instanceof Answer) {
+					return ((Answer) value).answer(args);
+				}
+				if (value != null || values.containsKey(name)) {
+					return value;
+				}
+				switch (name) {
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return type.getSimpleName() + values.getOrDefault("getUniqueName", values.getOrDefault("getOrdinal", ""));
+					default:
+						throw new UnsupportedOperationException(type.getSimpleName() + "." + name + " is not stubbed");
+				}
+			}
+		};
+		return (T) Proxy.newProxyInstance(SyntheticCellSetFactory.class.getClassLoader(), new Class<?>[] {type}, handler);
+	}
+
+}
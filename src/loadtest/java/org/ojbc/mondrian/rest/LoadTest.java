@@ -0,0 +1,365 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Load generator that replays a weighted mix of requests against the service, either at a fixed concurrency (each worker sends its next request as soon as the
+ * previous one completes) or at a fixed arrival rate, and reports throughput and latency percentiles for each kind of request.  Unless a URL is given, the
+ * application is booted in-process on a random port, with its bundled demo connections.
+ *
+ * At a fixed arrival rate, latency is measured from the time each request was scheduled to be sent rather than the time it was actually sent, so that a server
+ * that stalls is not hidden by the generator falling behind its schedule.
+ *
+ * Options are given as --name=value (see the README); any other arguments are passed to the application (for example --queryExecutionSlots=4).
+ *
+ */
+@Slf4j
+public final class LoadTest {
+
+	private static final String DEFAULT_WORKLOAD = "/foodmart-workload.json";
+	private static final String SEQUENCE_PLACEHOLDER = "${sequence}";
+	private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+	/**
+	 * One kind of request in the workload mix
+	 */
+	@Getter
+	public static final class WorkloadItem {
+		@JsonProperty("Name")
+		private String name;
+		@JsonProperty("Weight")
+		private int weight = 1;
+		@JsonProperty("Method")
+		private String method;
+		@JsonProperty("Path")
+		private String path;
+		@JsonProperty("Headers")
+		private Map<String, String> headers = Collections.emptyMap();
+		@JsonProperty("Body")
+		private JsonNode body;
+	}
+
+	/**
+	 * The outcomes of one kind of request
+	 */
+	@Getter
+	static final class ItemStats {
+		private final Histogram latencyMicros = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder cached = new LongAdder();
+	}
+
+	private final String baseUrl;
+	private final List<WorkloadItem> workload;
+	private final int[] cumulativeWeights;
+	private final int concurrency;
+	private final double rate;
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * Create a load test
+	 * @param baseUrl the URL of the service, without a trailing slash
+	 * @param workload the mix of requests to send
+	 * @param concurrency the number of requests that may be outstanding at once
+	 * @param rate the number of requests to send per second, or 0 to send them as fast as the concurrency allows
+	 */
+	public LoadTest(String baseUrl, List<WorkloadItem> workload, int concurrency, double rate) {
+		if (workload.isEmpty()) {
+			throw new IllegalArgumentException("The workload must contain at least one request");
+		}
+		this.baseUrl = baseUrl;
+		this.workload = workload;
+		this.concurrency = concurrency;
+		this.rate = rate;
+		cumulativeWeights = new int[workload.size()];
+		int total = 0;
+		for (int i=0;i < workload.size();i++) {
+			total += Math.max(0, workload.get(i).getWeight());
+			cumulativeWeights[i] = total;
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException("At least one request in the workload must have a positive weight");
+		}
+	}
+
+	/**
+	 * Send requests for the specified time
+	 * @param durationSeconds how long to send requests
+	 * @return the outcomes of the requests, by workload item name, in workload order
+	 */
+	public Map<String, ItemStats> run(int durationSeconds) throws InterruptedException {
+
+		Map<String, ItemStats> stats = new LinkedHashMap<>();
+		for (WorkloadItem item : workload) {
+			stats.putIfAbsent(item.getName(), new ItemStats());
+		}
+
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService workers = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread t = new Thread(r, "load-test-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+
+		long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+		if (rate > 0) {
+			long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+			long start = System.nanoTime();
+			for (long i=0;;i++) {
+				long intendedStart = start + i * periodNanos;
+				if (intendedStart - end >= 0) {
+					break;
+				}
+				long delay;
+				while ((delay = intendedStart - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(delay);
+				}
+				workers.execute(() -> send(pick(), intendedStart, stats));
+			}
+		} else {
+			for (int i=0;i < concurrency;i++) {
+				workers.execute(() -> {
+					while (System.nanoTime() - end < 0) {
+						send(pick(), System.nanoTime(), stats);
+					}
+				});
+			}
+		}
+
+		workers.shutdown();
+		workers.awaitTermination(1, TimeUnit.HOURS);
+		return stats;
+
+	}
+
+	private WorkloadItem pick() {
+		int r = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i=0;i < cumulativeWeights.length;i++) {
+			if (r < cumulativeWeights[i]) {
+				return workload.get(i);
+			}
+		}
+		throw new IllegalStateException();
+	}
+
+	private void send(WorkloadItem item, long startNanos, Map<String, ItemStats> stats) {
+		ItemStats itemStats = stats.get(item.getName());
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + item.getPath()).openConnection();
+			connection.setRequestMethod(item.getMethod() != null ? item.getMethod() : item.getBody() != null ? "POST" : "GET");
+			item.getHeaders().forEach(connection::setRequestProperty);
+			if (item.getBody() != null) {
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/json");
+				String body = item.getBody().toString().replace(SEQUENCE_PLACEHOLDER, String.valueOf(sequence.incrementAndGet()));
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(body.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			int status = connection.getResponseCode();
+			// read the whole response so that the latency includes its transfer, and so that the connection can be reused
+			try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				if (in != null) {
+					byte[] buffer = new byte[8192];
+					while (in.read(buffer) != -1) {
+					}
+				}
+			}
+			if (status >= 400) {
+				log.debug(item.getName() + " returned status " + status);
+				itemStats.errors.increment();
+				return;
+			}
+			if (connection.getHeaderField("mondrian-rest-cached-result") != null) {
+				itemStats.cached.increment();
+			}
+			itemStats.latencyMicros.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos)));
+		} catch (IOException e) {
+			log.debug(item.getName() + " failed: " + e.getMessage());
+			itemStats.errors.increment();
+		}
+	}
+
+	/**
+	 * Summarize the outcomes of a run, one entry per workload item plus a total
+	 * @param stats the outcomes
+	 * @param durationSeconds the length of the run
+	 * @return the summaries
+	 */
+	static List<Map<String, Object>> summarize(Map<String, ItemStats> stats, int durationSeconds) {
+		List<Map<String, Object>> ret = new ArrayList<>();
+		Histogram total = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+		long totalErrors = 0;
+		long totalCached = 0;
+		for (Map.Entry<String, ItemStats> entry : stats.entrySet()) {
+			ItemStats itemStats = entry.getValue();
+			total.add(itemStats.latencyMicros);
+			totalErrors += itemStats.errors.sum();
+			totalCached += itemStats.cached.sum();
+			ret.add(summarize(entry.getKey(), itemStats.latencyMicros, itemStats.errors.sum(), itemStats.cached.sum(), durationSeconds));
+		}
+		ret.add(summarize("total", total, totalErrors, totalCached, durationSeconds));
+		return ret;
+	}
+
+	private static Map<String, Object> summarize(String name, Histogram latencyMicros, long errors, long cached, int durationSeconds) {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("name", name);
+		ret.put("requests", latencyMicros.getTotalCount());
+		ret.put("errors", errors);
+		ret.put("cached", cached);
+		ret.put("requestsPerSecond", (double) latencyMicros.getTotalCount() / durationSeconds);
+		ret.put("p50Millis", latencyMicros.getValueAtPercentile(50) / 1000.0);
+		ret.put("p90Millis", latencyMicros.getValueAtPercentile(90) / 1000.0);
+		ret.put("p99Millis", latencyMicros.getValueAtPercentile(99) / 1000.0);
+		ret.put("p999Millis", latencyMicros.getValueAtPercentile(99.9) / 1000.0);
+		ret.put("maxMillis", latencyMicros.getMaxValue() / 1000.0);
+		return ret;
+	}
+
+	static String format(List<Map<String, Object>> summaries) {
+		StringBuilder sb = new StringBuilder(String.format("%-30s %9s %7s %7s %9s %9s %9s %9s %9s %9s%n",
+				"request", "count", "errors", "cached", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+		for (Map<String, Object> s : summaries) {
+			sb.append(String.format("%-30s %9d %7d %7d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n", s.get("name"), s.get("requests"), s.get("errors"), s.get("cached"),
+					s.get("requestsPerSecond"), s.get("p50Millis"), s.get("p90Millis"), s.get("p99Millis"), s.get("p999Millis"), s.get("maxMillis")));
+		}
+		return sb.toString();
+	}
+
+	static List<WorkloadItem> readWorkload(String fileName) throws IOException {
+		try (InputStream in = fileName == null ? LoadTest.class.getResourceAsStream(DEFAULT_WORKLOAD) : new FileInputStream(fileName)) {
+			return new ObjectMapper().readValue(in, new TypeReference<List<WorkloadItem>>() {});
+		}
+	}
+
+	public static void main(String... args) throws Exception {
+
+		int concurrency = 8;
+		double rate = 0;
+		int durationSeconds = 60;
+		int warmUpSeconds = 10;
+		String workloadFileName = null;
+		String url = null;
+		String reportFileName = null;
+		String connectionsDirectory = null;
+		List<String> applicationArgs = new ArrayList<>();
+
+		for (String arg : args) {
+			String[] nameValue = arg.replaceFirst("^--", "").split("=", 2);
+			String value = nameValue.length > 1 ? nameValue[1] : "";
+			switch (nameValue[0]) {
+				case "concurrency": concurrency = Integer.parseInt(value); break;
+				case "rate": rate = Double.parseDouble(value); break;
+				case "duration": durationSeconds = Integer.parseInt(value); break;
+				case "warmUp": warmUpSeconds = Integer.parseInt(value); break;
+				case "workload": workloadFileName = value; break;
+				case "url": url = value.replaceFirst("/$", ""); break;
+				case "report": reportFileName = value; break;
+				case "connectionsDirectory": connectionsDirectory = value; break;
+				default: applicationArgs.add(arg);
+			}
+		}
+
+		List<WorkloadItem> workload = readWorkload(workloadFileName);
+
+		ConfigurableApplicationContext context = null;
+		if (url == null) {
+			if (connectionsDirectory != null) {
+				// connection definitions are found by scanning the classpath, so put the directory (for example, one written by SyntheticSchemaGenerator) on it
+				Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] {new File(connectionsDirectory).toURI().toURL()},
+						Thread.currentThread().getContextClassLoader()));
+			}
+			context = new SpringApplicationBuilder(Application.class).properties("server.port=0").run(applicationArgs.toArray(new String[0]));
+			url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+		}
+
+		try {
+
+			LoadTest loadTest = new LoadTest(url, workload, concurrency, rate);
+			String mode = rate > 0 ? rate + " requests/second (at most " + concurrency + " outstanding)" : "concurrency " + concurrency;
+
+			if (warmUpSeconds > 0) {
+				log.info("Warming up for " + warmUpSeconds + " seconds against " + url + " at " + mode);
+				loadTest.run(warmUpSeconds);
+			}
+
+			log.info("Running for " + durationSeconds + " seconds against " + url + " at " + mode);
+			List<Map<String, Object>> summaries = summarize(loadTest.run(durationSeconds), durationSeconds);
+			System.out.println();
+			System.out.print(format(summaries));
+
+			if (reportFileName != null) {
+				Map<String, Object> report = new LinkedHashMap<>();
+				report.put("url", url);
+				report.put("concurrency", concurrency);
+				report.put("rate", rate);
+				report.put("durationSeconds", durationSeconds);
+				report.put("results", summaries);
+				new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(reportFileName), report);
+				log.info("Wrote report to " + reportFileName);
+			}
+
+		} finally {
+			if (context != null) {
+				context.close();
+			}
+		}
+
+		System.exit(0);
+
+	}
+
+}
@@ -16,6 +16,7 @@
  */
 package org.ojbc.mondrian;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -36,7 +37,9 @@ import lombok.ToString;
 @Getter
 @EqualsAndHashCode
 @ToString
-public class AxisWrapper {
+public class AxisWrapper implements Serializable {
+	
+	private static final long serialVersionUID = 540282087439885078L;
 	
 	private List<PositionWrapper> positionWrappers = new ArrayList<>();
 	
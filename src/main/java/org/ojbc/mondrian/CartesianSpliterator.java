@@ -0,0 +1,139 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Lazily enumerates the cartesian product of a set of index ranges (for example, the positions of each axis of a cell set), odometer-style:  the first range
+ * varies slowest and the last varies fastest, which is the same order as {@link MondrianUtils#permuteLists(java.util.List)}.
+ *
+ * Each combination is presented as an array holding one index per range.  To avoid allocating per combination, the same array is passed to the consumer every
+ * time, so consumers must not modify it or hold on to it.  Splitting divides the remaining combinations into two contiguous halves, each with its own array,
+ * so that a large crossjoin can be processed in parallel chunks.
+ *
+ */
+public final class CartesianSpliterator implements Spliterator<int[]> {
+
+	private final int[] sizes;
+	private final int[] indexes;
+	private long next;
+	private final long end;
+
+	/**
+	 * Create a spliterator over all combinations
+	 * @param sizes the number of elements in each range
+	 */
+	public CartesianSpliterator(int[] sizes) {
+		this(sizes.clone(), 0, combinationCount(sizes));
+	}
+
+	private CartesianSpliterator(int[] sizes, long from, long to) {
+		this.sizes = sizes;
+		this.indexes = new int[sizes.length];
+		this.next = from;
+		this.end = to;
+		seek(from);
+	}
+
+	/**
+	 * Get the total number of combinations of the specified ranges
+	 * @param sizes the number of elements in each range
+	 * @return the product of the sizes (1 if there are no ranges)
+	 */
+	public static long combinationCount(int[] sizes) {
+		long ret = 1;
+		for (int size : sizes) {
+			ret *= size;
+		}
+		return ret;
+	}
+
+	/**
+	 * Get the sequence number (in iteration order) of the combination that will be presented next
+	 * @return the sequence number
+	 */
+	public long getNextSequence() {
+		return next;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super int[]> action) {
+		if (next >= end) {
+			return false;
+		}
+		action.accept(indexes);
+		if (++next < end) {
+			increment();
+		}
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super int[]> action) {
+		while (next < end) {
+			action.accept(indexes);
+			if (++next < end) {
+				increment();
+			}
+		}
+	}
+
+	@Override
+	public Spliterator<int[]> trySplit() {
+		long remaining = end - next;
+		if (remaining < 2) {
+			return null;
+		}
+		long mid = next + remaining / 2;
+		CartesianSpliterator prefix = new CartesianSpliterator(sizes, next, mid);
+		next = mid;
+		seek(mid);
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return end - next;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+
+	private void increment() {
+		for (int i=sizes.length-1;i >= 0;i--) {
+			if (++indexes[i] < sizes[i]) {
+				return;
+			}
+			indexes[i] = 0;
+		}
+	}
+
+	private void seek(long sequence) {
+		long remainder = sequence;
+		for (int i=sizes.length-1;i >= 0;i--) {
+			if (sizes[i] > 0) {
+				indexes[i] = (int) (remainder % sizes[i]);
+				remainder /= sizes[i];
+			}
+		}
+	}
+
+}
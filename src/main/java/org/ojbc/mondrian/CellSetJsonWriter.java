@@ -0,0 +1,159 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.olap4j.Cell;
+import org.olap4j.CellSet;
+import org.olap4j.CellSetAxis;
+import org.olap4j.OlapException;
+import org.olap4j.Position;
+import org.olap4j.metadata.Member;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes an olap4j CellSet as json directly to a JsonGenerator, as the cells and positions are read from the cell set.  The output has the same shape as the
+ * json serialization of {@link CellSetWrapper}, but no wrapper objects are built, so memory use does not depend on the size of the result.
+ *
+ */
+public final class CellSetJsonWriter {
+
+	private CellSetJsonWriter() {
+	}
+
+	/**
+	 * Write the cell set.  The generator must have a codec (as generators created by an ObjectMapper do), which is used for the rare cells that contain an error.
+	 * @param cellSet the cell set to write
+	 * @param generator the generator to write to
+	 * @throws IOException if writing fails
+	 */
+	public static void write(CellSet cellSet, JsonGenerator generator) throws IOException {
+
+		generator.writeStartObject();
+
+		int totalCellCount = 1;
+		for (CellSetAxis axis : cellSet.getAxes()) {
+			totalCellCount *= axis.getPositions().size();
+		}
+
+		generator.writeArrayFieldStart("cells");
+		for (int i=0;i < totalCellCount;i++) {
+			writeCell(cellSet.getCell(i), generator);
+		}
+		generator.writeEndArray();
+
+		generator.writeArrayFieldStart("axes");
+		for (CellSetAxis axis : cellSet.getAxes()) {
+			generator.writeStartObject();
+			generator.writeNumberField("ordinal", axis.getAxisOrdinal().axisOrdinal());
+			generator.writeStringField("name", axis.getAxisOrdinal().name());
+			generator.writeArrayFieldStart("positions");
+			for (Position position : axis.getPositions()) {
+				writePosition(position, generator);
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+
+		generator.writeEndObject();
+
+	}
+
+	private static void writeCell(Cell cell, JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("formattedValue", cell.getFormattedValue());
+		Object v = cell.getValue();
+		generator.writeFieldName("value");
+		if (v instanceof Number) {
+			writeNumber((Number) v, generator);
+		} else {
+			generator.writeNull();
+		}
+		generator.writeNumberField("ordinal", cell.getOrdinal());
+		generator.writeArrayFieldStart("coordinates");
+		for (Integer coordinate : cell.getCoordinateList()) {
+			generator.writeNumber(coordinate);
+		}
+		generator.writeEndArray();
+		generator.writeFieldName("error");
+		if (v instanceof OlapException) {
+			generator.writeObject(v);
+		} else {
+			generator.writeNull();
+		}
+		generator.writeEndObject();
+	}
+
+	private static void writeNumber(Number n, JsonGenerator generator) throws IOException {
+		if (n instanceof Double) {
+			generator.writeNumber(n.doubleValue());
+		} else if (n instanceof Integer || n instanceof Short || n instanceof Byte) {
+			generator.writeNumber(n.intValue());
+		} else if (n instanceof Long) {
+			generator.writeNumber(n.longValue());
+		} else if (n instanceof Float) {
+			generator.writeNumber(n.floatValue());
+		} else if (n instanceof BigDecimal) {
+			generator.writeNumber((BigDecimal) n);
+		} else if (n instanceof BigInteger) {
+			generator.writeNumber((BigInteger) n);
+		} else {
+			generator.writeObject(n);
+		}
+	}
+
+	private static void writePosition(Position position, JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		generator.writeArrayFieldStart("memberDimensionNames");
+		for (Member member : position.getMembers()) {
+			generator.writeString(member.getDimension().getName());
+		}
+		generator.writeEndArray();
+		generator.writeArrayFieldStart("memberDimensionCaptions");
+		for (Member member : position.getMembers()) {
+			generator.writeString(member.getDimension().getCaption());
+		}
+		generator.writeEndArray();
+		generator.writeArrayFieldStart("positionMembers");
+		for (Member member : position.getMembers()) {
+			writePositionMember(member, generator);
+		}
+		generator.writeEndArray();
+		generator.writeEndObject();
+	}
+
+	private static void writePositionMember(Member member, JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("memberLevelName", member.getLevel().getUniqueName());
+		generator.writeStringField("memberLevelCaption", member.getLevel().getCaption());
+		generator.writeStringField("memberValue", member.getName());
+		generator.writeFieldName("parentMember");
+		Member parentMember = member.getParentMember();
+		if (parentMember != null) {
+			writePositionMember(parentMember, generator);
+		} else {
+			generator.writeNull();
+		}
+		generator.writeEndObject();
+	}
+
+}
@@ -39,6 +39,15 @@ import lombok.ToString;
 @ToString
 public class CellSetWrapper implements CellSetWrapperType {
 	
+	private static final long serialVersionUID = 8891404519282858110L;
+	
+	// a cell is its wrapper, formatted value, boxed value and coordinate list (plus an entry in the list per axis)
+	private static final int CELL_BYTES = 160;
+	private static final int CELL_COORDINATE_BYTES = 20;
+	// a position is its wrapper and lists, and each of its members (and their parents) a wrapper and three strings
+	private static final int POSITION_BYTES = 150;
+	private static final int POSITION_MEMBER_BYTES = 250;
+	
 	@JsonProperty("cells")
 	private List<CellWrapper> cellWrappers;
 	
@@ -73,5 +82,21 @@ public class CellSetWrapper implements CellSetWrapperType {
 	public List<AxisWrapper> getAxisWrappers() {
 		return Collections.unmodifiableList(axisWrappers);
 	}
+	
+	@Override
+	public long estimateSize() {
+		long ret = (long) cellWrappers.size() * (CELL_BYTES + CELL_COORDINATE_BYTES * axisWrappers.size());
+		for (AxisWrapper axis : axisWrappers) {
+			for (PositionWrapper position : axis.getPositionWrappers()) {
+				ret += POSITION_BYTES;
+				for (PositionMemberWrapper member : position.getPositionMembers()) {
+					for (PositionMemberWrapper m = member;m != null;m = m.getParentMember()) {
+						ret += POSITION_MEMBER_BYTES;
+					}
+				}
+			}
+		}
+		return ret;
+	}
 
 }
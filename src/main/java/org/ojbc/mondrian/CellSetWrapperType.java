@@ -16,10 +16,18 @@
  */
 package org.ojbc.mondrian;
 
+import java.io.Serializable;
+
 /**
- * Marker interface for cell set wrappers that can be cached.
+ * Interface for cell set wrappers that can be cached.  Wrappers are serializable, so that they can be held in the query cache's off-heap and disk tiers.
  *
  */
-public interface CellSetWrapperType {
+public interface CellSetWrapperType extends Serializable {
+
+	/**
+	 * Estimate the heap this result occupies, from the number of its cells, positions and rows (without serializing it)
+	 * @return the approximate size in bytes
+	 */
+	long estimateSize();
 
 }
@@ -16,6 +16,8 @@
  */
 package org.ojbc.mondrian;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -33,7 +35,9 @@ import lombok.ToString;
 @Getter
 @EqualsAndHashCode
 @ToString
-public class CellWrapper {
+public class CellWrapper implements Serializable {
+	
+	private static final long serialVersionUID = -4943597064231030856L;
 	
 	private String formattedValue;
 	private Number value;
@@ -54,7 +58,8 @@ public class CellWrapper {
 			error = (OlapException) v;
 		}
 		ordinal = cell.getOrdinal();
-		coordinates = cell.getCoordinateList();
+		// copied, as the cell's own list is not necessarily serializable
+		coordinates = new ArrayList<>(cell.getCoordinateList());
 	}
 
 	public List<Integer> getCoordinates() {
@@ -0,0 +1,202 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * DataSource decorator that records every SQL statement Mondrian executes:  the time the database took to execute it, the time spent reading its results
+ * (until the statement is closed), and the number of rows read.  Each statement is added to the connection's {@link SqlStatistics}, and, if Mondrian executed
+ * it on behalf of a query with a {@link QueryContext}, attributed to that query (and logged, at debug level, with the query's id and role).
+ *
+ */
+@Slf4j
+final class InstrumentedDataSource implements DataSource {
+
+	private final DataSource delegate;
+	private final SqlStatistics statistics;
+
+	InstrumentedDataSource(DataSource delegate, SqlStatistics statistics) {
+		this.delegate = delegate;
+		this.statistics = statistics;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return wrap(delegate.getConnection());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return wrap(delegate.getConnection(username, password));
+	}
+
+	private Connection wrap(Connection connection) {
+		// Mondrian obtains a connection for each statement, in the thread that executes it
+		QueryContext context = QueryContext.current();
+		return (Connection) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+			Object ret = invoke(connection, method, args);
+			if (ret instanceof Statement) {
+				String sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+				ret = wrap((Statement) ret, new StatementRecorder(context, sql));
+			}
+			return ret;
+		});
+	}
+
+	private static Statement wrap(Statement statement, StatementRecorder recorder) {
+		Class<?> iface = statement instanceof CallableStatement ? CallableStatement.class :
+			statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+		return (Statement) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[] {iface}, (proxy, method, args) -> {
+			String name = method.getName();
+			boolean execute = name.startsWith("execute");
+			if (execute) {
+				recorder.executing(args);
+			}
+			Object ret = invoke(statement, method, args);
+			if (execute) {
+				recorder.executed();
+			}
+			if (ret instanceof ResultSet) {
+				ret = wrap((ResultSet) ret, recorder);
+			} else if (name.equals("close")) {
+				recorder.finish();
+			}
+			return ret;
+		});
+	}
+
+	private static ResultSet wrap(ResultSet resultSet, StatementRecorder recorder) {
+		return (ResultSet) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+			Object ret = invoke(resultSet, method, args);
+			if (Boolean.TRUE.equals(ret) && method.getName().equals("next")) {
+				recorder.rowCount++;
+			}
+			return ret;
+		});
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private final class StatementRecorder {
+
+		private final QueryContext context;
+		private String sql;
+		private long startNanos;
+		private long executedNanos;
+		private long rowCount;
+
+		StatementRecorder(QueryContext context, String sql) {
+			this.context = context;
+			this.sql = sql;
+		}
+
+		void executing(Object[] args) {
+			// a statement that is executed again is recorded once for each execution
+			finish();
+			if (args != null && args.length > 0 && args[0] instanceof String) {
+				sql = (String) args[0];
+			}
+			startNanos = System.nanoTime();
+			executedNanos = 0;
+		}
+
+		void executed() {
+			executedNanos = System.nanoTime();
+		}
+
+		void finish() {
+			if (startNanos == 0) {
+				return;
+			}
+			long now = System.nanoTime();
+			// if execution failed, all the time is execution time
+			long executeNanos = (executedNanos == 0 ? now : executedNanos) - startNanos;
+			long fetchNanos = executedNanos == 0 ? 0 : now - executedNanos;
+			long requestId = context == null ? -1 : context.getRequestId();
+			String mondrianRole = context == null ? null : context.getMondrianRole();
+			statistics.record(sql, executeNanos, fetchNanos, rowCount, requestId, mondrianRole);
+			if (context != null) {
+				context.recordSqlStatement(sql, executeNanos + fetchNanos, rowCount);
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("Query " + requestId + " (role " + mondrianRole + ") executed SQL in " + SqlStatistics.toMillis(executeNanos) + " ms, read " + rowCount +
+						" rows in " + SqlStatistics.toMillis(fetchNanos) + " ms: " + SqlStatistics.fingerprint(sql));
+			}
+			startNanos = 0;
+			rowCount = 0;
+		}
+
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return delegate.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		delegate.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		delegate.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return delegate.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return delegate.getParentLogger();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return iface.isInstance(this) ? iface.cast(this) : delegate.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || delegate.isWrapperFor(iface);
+	}
+
+}
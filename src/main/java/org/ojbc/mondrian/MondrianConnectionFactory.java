@@ -21,6 +21,7 @@ import java.io.InputStream;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -31,11 +32,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.commons.io.IOUtils;
+import org.olap4j.OlapConnection;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.core.io.support.ResourcePatternResolver;
@@ -50,12 +59,20 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 
+import lombok.Getter;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * A factory object that creates olap4j connection objects from json specifications that it finds on the classpath.  Connections are instantiated lazily...that is, no
  * actual connection is made to the underlying relational database until getOlap4jConnection() is called.
+ * 
+ * The factory also manages a pool of ready olap4j connections for each combination of connection and Mondrian role; see {@link #getOlapConnectionPool(String, String)}.
+ * Connections that specify a "JdbcConnectionPool" json property additionally get a pooled JDBC DataSource, which is handed to Mondrian in place of the Jdbc
+ * connection string.
  *
  */
 @Slf4j
@@ -72,6 +89,79 @@ public final class MondrianConnectionFactory {
 		}
 	}
 	
+	/**
+	 * Settings for the pool of olap4j connections maintained for each connection/role, specified by the (optional) "OlapConnectionPool" json property
+	 * of the connection.
+	 */
+	@Getter
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	public static final class OlapConnectionPoolSettings {
+		@JsonProperty("MaxSize")
+		private int maxSize = 20;
+		@JsonProperty("MaxIdleSeconds")
+		private int maxIdleSeconds = 600;
+		@JsonProperty("BorrowTimeoutSeconds")
+		private int borrowTimeoutSeconds = 30;
+		@JsonProperty("ValidateOnBorrow")
+		private boolean validateOnBorrow = true;
+		@JsonProperty("ValidationTimeoutSeconds")
+		private int validationTimeoutSeconds = 5;
+	}
+	
+	/**
+	 * Settings for the pooled JDBC DataSource underneath a connection, specified by the (optional) "JdbcConnectionPool" json property of the connection.  If the
+	 * property is absent, Mondrian manages the relational connections itself.
+	 */
+	@Getter
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	public static final class JdbcConnectionPoolSettings {
+		@JsonProperty("MinSize")
+		private int minSize = 0;
+		@JsonProperty("MaxSize")
+		private int maxSize = 10;
+		@JsonProperty("FetchSize")
+		private Integer fetchSize;
+		@JsonProperty("ReadOnly")
+		private boolean readOnly = false;
+		@JsonProperty("WarmUpCount")
+		private int warmUpCount = 0;
+		@JsonProperty("ValidationQuery")
+		private String validationQuery;
+		@JsonProperty("ConnectionTimeoutSeconds")
+		private int connectionTimeoutSeconds = 30;
+	}
+	
+	/**
+	 * Settings limiting the number of queries that execute at once against a connection, specified by the (optional) "QueryConcurrency" json property of the
+	 * connection.  If the property is absent, the number of concurrent queries is not limited.
+	 */
+	@Getter
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	public static final class QueryConcurrencySettings {
+		@JsonProperty("MaxConcurrent")
+		private int maxConcurrent = 10;
+		@JsonProperty("MaxQueued")
+		private int maxQueued = 50;
+		@JsonProperty("QueueTimeoutSeconds")
+		private int queueTimeoutSeconds = 30;
+		@JsonProperty("RetryAfterSeconds")
+		private int retryAfterSeconds = 5;
+		public QueryConcurrencySettings() {
+		}
+		public QueryConcurrencySettings(int maxConcurrent, int maxQueued, int queueTimeoutSeconds, int retryAfterSeconds) {
+			this.maxConcurrent = maxConcurrent;
+			this.maxQueued = maxQueued;
+			this.queueTimeoutSeconds = queueTimeoutSeconds;
+			this.retryAfterSeconds = retryAfterSeconds;
+		}
+	}
+	
+	@Value
+	private static final class OlapConnectionPoolKey {
+		private String connectionName;
+		private String mondrianRole;
+	}
+	
 	@JsonIgnoreProperties(ignoreUnknown = true)
 	@JsonInclude(Include.NON_NULL)
 	public static final class MondrianConnection {
@@ -91,6 +181,13 @@ public final class MondrianConnectionFactory {
 		private String sourceResourcePath;
 		private boolean isDemo = false;
 		private boolean jdbcDriverClass;
+		@JsonProperty("OlapConnectionPool")
+		private OlapConnectionPoolSettings olapConnectionPoolSettings = new OlapConnectionPoolSettings();
+		@JsonProperty("JdbcConnectionPool")
+		private JdbcConnectionPoolSettings jdbcConnectionPoolSettings;
+		@JsonProperty("QueryConcurrency")
+		private QueryConcurrencySettings queryConcurrencySettings;
+		private String dataSourceName;
 		
 		public boolean isJdbcDriverClass() {
 			return jdbcDriverClass;
@@ -156,6 +253,18 @@ public final class MondrianConnectionFactory {
 		public String getCatalog() {
 			return catalog;
 		}
+		public OlapConnectionPoolSettings getOlapConnectionPoolSettings() {
+			return olapConnectionPoolSettings;
+		}
+		public JdbcConnectionPoolSettings getJdbcConnectionPoolSettings() {
+			return jdbcConnectionPoolSettings;
+		}
+		String getDataSourceName() {
+			return dataSourceName;
+		}
+		public QueryConcurrencySettings getQueryConcurrencySettings() {
+			return queryConcurrencySettings;
+		}
 		@JsonIgnore
 		public Document getMondrianSchemaContentDocument() throws SAXException, IOException, ParserConfigurationException {
 			return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(catalogContent)));
@@ -201,11 +310,17 @@ public final class MondrianConnectionFactory {
 			}
 			
 			Properties props = new Properties();
-			setPropertyValue(props, "Jdbc", jdbcConnectionString);
-			setPropertyValue(props, "JdbcDrivers", jdbcDriver);
+			if (dataSourceName != null) {
+				// credentials are configured on the pool itself; Mondrian ignores DataSource if Jdbc is also specified
+				setPropertyValue(props, "DataSource", dataSourceName);
+				setPropertyValue(props, "PoolNeeded", "false");
+			} else {
+				setPropertyValue(props, "Jdbc", jdbcConnectionString);
+				setPropertyValue(props, "JdbcDrivers", jdbcDriver);
+				setPropertyValue(props, "JdbcUser", jdbcUser);
+				setPropertyValue(props, "JdbcPassword", jdbcPassword);
+			}
 			setPropertyValue(props, "CatalogContent", catalogContent);
-			setPropertyValue(props, "JdbcUser", jdbcUser);
-			setPropertyValue(props, "JdbcPassword", jdbcPassword);
 
 			return DriverManager.getConnection("jdbc:mondrian:", props);
 
@@ -229,6 +344,20 @@ public final class MondrianConnectionFactory {
 				log.warn("Mondrian Schema content (read from catalog URL) is null");
 				ret = false;
 			}
+			if (olapConnectionPoolSettings == null) {
+				olapConnectionPoolSettings = new OlapConnectionPoolSettings();
+			} else if (olapConnectionPoolSettings.maxSize < 1) {
+				log.warn("Olap connection pool max size (specified by json property \"OlapConnectionPool.MaxSize\") must be at least 1");
+				ret = false;
+			}
+			if (jdbcConnectionPoolSettings != null && (jdbcConnectionPoolSettings.maxSize < 1 || jdbcConnectionPoolSettings.minSize > jdbcConnectionPoolSettings.maxSize)) {
+				log.warn("JDBC connection pool sizes (specified by json properties \"JdbcConnectionPool.MinSize\" and \"JdbcConnectionPool.MaxSize\") are invalid");
+				ret = false;
+			}
+			if (queryConcurrencySettings != null && (queryConcurrencySettings.maxConcurrent < 1 || queryConcurrencySettings.maxQueued < 0)) {
+				log.warn("Query concurrency limits (specified by json properties \"QueryConcurrency.MaxConcurrent\" and \"QueryConcurrency.MaxQueued\") are invalid");
+				ret = false;
+			}
 			return ret;
 		}
 		
@@ -241,8 +370,18 @@ public final class MondrianConnectionFactory {
 		
 	}
 	
+	private static final int IDLE_EVICTION_INTERVAL_SECONDS = 30;
+	private static final AtomicInteger FACTORY_COUNTER = new AtomicInteger();
+	
+	private final String dataSourceNamePrefix = "mondrian-rest-" + FACTORY_COUNTER.incrementAndGet() + "-";
+	
 	private List<MondrianConnectionCollection> connectionCollections = new ArrayList<>();
 	private Map<String, MondrianConnection> connections = new HashMap<>();
+	private Map<OlapConnectionPoolKey, OlapConnectionPool> olapConnectionPools = new ConcurrentHashMap<>();
+	private ScheduledExecutorService idleEvictionExecutor;
+	private Map<String, HikariDataSource> jdbcDataSources = new HashMap<>();
+	private Map<String, QueryBulkhead> queryBulkheads = new HashMap<>();
+	private Map<String, SqlStatistics> sqlStatistics = new HashMap<>();
 	
 	/**
 	 * Initialize the factory by scanning the classpath for resources matching the pattern *mondrian-connections.json.
@@ -258,9 +397,19 @@ public final class MondrianConnectionFactory {
 	 * @throws IOException if something goes wrong scanning the classpath or reading resources
 	 */
 	public void init(boolean removeDemoConnections) throws IOException  {
+		init("classpath*:*mondrian-connections.json", removeDemoConnections);
+	}
+	
+	/**
+	 * Initialize the factory from the connection definition resources matching a pattern
+	 * @param resourcePattern the pattern
+	 * @param removeDemoConnections whether to strip out connections where IsDemo=true
+	 * @throws IOException if something goes wrong scanning the classpath or reading resources
+	 */
+	void init(String resourcePattern, boolean removeDemoConnections) throws IOException  {
 		
 		ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
-		Resource[] resources = resolver.getResources("classpath*:*mondrian-connections.json");
+		Resource[] resources = resolver.getResources(resourcePattern);
 		
 		ObjectMapper mapper = new ObjectMapper();
 		TypeReference<Map<String, MondrianConnection>> typeRef = new TypeReference<Map<String, MondrianConnection>>() {};
@@ -296,6 +445,14 @@ public final class MondrianConnectionFactory {
 		
 		Collections.reverse(connectionCollections);
 		
+		idleEvictionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "olap-connection-pool-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		idleEvictionExecutor.scheduleWithFixedDelay(() -> olapConnectionPools.values().forEach(OlapConnectionPool::evictIdle),
+				IDLE_EVICTION_INTERVAL_SECONDS, IDLE_EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+		
 		connectionCollections.forEach(mcc -> {
 			mcc.getConnections().forEach((name, mc) -> {
 				if (connections.containsKey(name)) {
@@ -314,6 +471,75 @@ public final class MondrianConnectionFactory {
 			});
 		});
 		
+		connections.forEach((name, mc) -> {
+			if (mc.getJdbcConnectionPoolSettings() != null) {
+				initJdbcDataSource(name, mc);
+			}
+			if (mc.getQueryConcurrencySettings() != null) {
+				QueryConcurrencySettings settings = mc.getQueryConcurrencySettings();
+				queryBulkheads.put(name, new QueryBulkhead(name, settings));
+				log.info("Limiting connection " + name + " to " + settings.getMaxConcurrent() + " concurrent queries, with up to " + settings.getMaxQueued() + " waiting");
+			}
+		});
+		
+	}
+	
+	private void initJdbcDataSource(String connectionName, MondrianConnection connection) {
+		
+		JdbcConnectionPoolSettings settings = connection.getJdbcConnectionPoolSettings();
+		
+		HikariConfig config = new HikariConfig();
+		config.setPoolName(connectionName);
+		config.setJdbcUrl(connection.getJdbcConnectionString());
+		config.setDriverClassName(connection.getJdbcDriver());
+		config.setUsername(connection.getJdbcUser());
+		config.setPassword(connection.getJdbcPassword());
+		config.setMinimumIdle(settings.getMinSize());
+		config.setMaximumPoolSize(settings.getMaxSize());
+		config.setReadOnly(settings.isReadOnly());
+		config.setConnectionTestQuery(settings.getValidationQuery());
+		config.setConnectionTimeout(TimeUnit.SECONDS.toMillis(settings.getConnectionTimeoutSeconds()));
+		// don't fail startup if the database is unavailable; the pool will keep trying, and queries will fail until it is available
+		config.setInitializationFailTimeout(-1);
+		
+		HikariDataSource hikariDataSource = new HikariDataSource(config);
+		jdbcDataSources.put(connectionName, hikariDataSource);
+		
+		DataSource dataSource = hikariDataSource;
+		if (settings.getFetchSize() != null) {
+			dataSource = new FetchSizeDataSource(dataSource, settings.getFetchSize());
+		}
+		SqlStatistics statistics = new SqlStatistics();
+		sqlStatistics.put(connectionName, statistics);
+		dataSource = new InstrumentedDataSource(dataSource, statistics);
+		
+		String dataSourceName = dataSourceNamePrefix + connectionName;
+		PooledDataSourceResolver.register(dataSourceName, dataSource);
+		connection.dataSourceName = dataSourceName;
+		
+		log.info("Created JDBC connection pool for connection " + connectionName + " with min size " + settings.getMinSize() + " and max size " + settings.getMaxSize());
+		
+		int warmUpCount = Math.min(settings.getWarmUpCount(), settings.getMaxSize());
+		if (warmUpCount > 0) {
+			List<Connection> warmConnections = new ArrayList<>();
+			try {
+				for (int i=0;i < warmUpCount;i++) {
+					warmConnections.add(hikariDataSource.getConnection());
+				}
+				log.info("Warmed up " + warmUpCount + " JDBC connection(s) for connection " + connectionName);
+			} catch (SQLException e) {
+				log.warn("Unable to warm up JDBC connection pool for connection " + connectionName + ": " + e.getMessage());
+			} finally {
+				for (Connection c : warmConnections) {
+					try {
+						c.close();
+					} catch (SQLException e) {
+						log.debug("Exception returning warm-up connection to pool", e);
+					}
+				}
+			}
+		}
+		
 	}
 	
 	List<MondrianConnectionCollection> getConnectionCollections() {
@@ -328,5 +554,72 @@ public final class MondrianConnectionFactory {
 	public Map<String, MondrianConnection> getConnections() {
 		return Collections.unmodifiableMap(connections);
 	}
+	
+	/**
+	 * Get the pool of olap4j connections for the specified connection and Mondrian role, creating it if necessary.  Connections borrowed from the pool already
+	 * have the role set, and must be released back to the pool when the caller is finished with them.
+	 * @param connectionName the name of the connection, as specified in the .json
+	 * @param mondrianRole the Mondrian role for connections in the pool, or null for unrestricted access
+	 * @return the pool, or null if there is no connection with the specified name
+	 */
+	public OlapConnectionPool getOlapConnectionPool(String connectionName, String mondrianRole) {
+		MondrianConnection connection = connections.get(connectionName);
+		if (connection == null) {
+			return null;
+		}
+		return olapConnectionPools.computeIfAbsent(new OlapConnectionPoolKey(connectionName, mondrianRole), key -> {
+			String poolName = connectionName + (mondrianRole == null ? "" : "/" + mondrianRole);
+			log.info("Creating olap connection pool " + poolName + " with max size " + connection.getOlapConnectionPoolSettings().getMaxSize());
+			return new OlapConnectionPool(poolName, () -> {
+				OlapConnection olapConnection = connection.getOlap4jConnection().unwrap(OlapConnection.class);
+				if (mondrianRole != null) {
+					olapConnection.setRoleName(mondrianRole);
+				}
+				return olapConnection;
+			}, connection.getOlapConnectionPoolSettings());
+		});
+	}
+	
+	/**
+	 * Get the bulkhead that limits concurrent query execution against the specified connection
+	 * @param connectionName the name of the connection, as specified in the .json
+	 * @return the bulkhead, or null if the connection does not limit concurrent queries (or does not exist)
+	 */
+	public QueryBulkhead getQueryBulkhead(String connectionName) {
+		return queryBulkheads.get(connectionName);
+	}
+	
+	/**
+	 * Get the bulkheads of all connections that limit concurrent query execution
+	 * @return the bulkheads, by connection name
+	 */
+	public Map<String, QueryBulkhead> getQueryBulkheads() {
+		return Collections.unmodifiableMap(queryBulkheads);
+	}
+	
+	/**
+	 * Get the statistics of the SQL statements Mondrian has executed against the database of each connection that has a "JdbcConnectionPool"
+	 * @return the statistics, by connection name
+	 */
+	public Map<String, SqlStatistics> getSqlStatistics() {
+		return Collections.unmodifiableMap(sqlStatistics);
+	}
+	
+	/**
+	 * Close all olap connection pools and JDBC data sources managed by this factory, and stop evicting idle connections.
+	 */
+	public void close() {
+		if (idleEvictionExecutor != null) {
+			idleEvictionExecutor.shutdownNow();
+		}
+		olapConnectionPools.values().forEach(OlapConnectionPool::close);
+		olapConnectionPools.clear();
+		jdbcDataSources.forEach((name, dataSource) -> {
+			PooledDataSourceResolver.unregister(dataSourceNamePrefix + name);
+			dataSource.close();
+		});
+		jdbcDataSources.clear();
+		sqlStatistics.clear();
+	}
 
 }
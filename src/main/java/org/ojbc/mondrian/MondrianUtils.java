@@ -45,25 +45,26 @@ public class MondrianUtils {
 		return ret.toString();
 	}
 	
+	/**
+	 * Get every combination of one element from each of the specified lists, with the first list varying slowest.  This materializes the whole cartesian
+	 * product; callers that only need to visit the combinations should use {@link CartesianSpliterator} over the list sizes instead.
+	 * @param lists the lists to combine
+	 * @return the combinations
+	 */
 	public static final <T> List<List<T>> permuteLists(List<List<T>> lists) {
+		int[] sizes = new int[lists.size()];
+		for (int i=0;i < sizes.length;i++) {
+			sizes[i] = lists.get(i).size();
+		}
 		List<List<T>> ret = new ArrayList<>();
-		permuteLists(ret, new ArrayList<T>(), lists);
-		return ret;
-	}
-	
-	private static final <T> void permuteLists(List<List<T>> accum, List<T> current, List<List<T>> lists) {
-
-		lists.get(current.size()).forEach(element -> {
-			List<T> copy = new ArrayList<>();
-			copy.addAll(current);
-			copy.add(element);
-			if (copy.size() < lists.size()) {
-				permuteLists(accum, copy, lists);
-			} else {
-				accum.add(copy);
+		new CartesianSpliterator(sizes).forEachRemaining(indexes -> {
+			List<T> combination = new ArrayList<>(indexes.length);
+			for (int i=0;i < indexes.length;i++) {
+				combination.add(lists.get(i).get(indexes[i]));
 			}
+			ret.add(combination);
 		});
-
+		return ret;
 	}
 
 }
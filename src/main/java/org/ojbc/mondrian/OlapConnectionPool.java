@@ -0,0 +1,216 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.olap4j.OlapConnection;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A bounded pool of ready-to-use olap4j connections.  All connections in a pool share the same Mondrian connection definition and the same Mondrian role, so that
+ * a borrowed connection can be used immediately without any per-request setup.  Idle connections are handed out most-recently-used first, and connections that
+ * sit idle for longer than the configured maximum idle time are closed by {@link #evictIdle()}.
+ *
+ */
+@Slf4j
+public final class OlapConnectionPool {
+
+	/**
+	 * Source of new connections for the pool.
+	 */
+	public static interface OlapConnectionSupplier {
+		public OlapConnection get() throws SQLException;
+	}
+
+	private static final class IdleConnection {
+		private final OlapConnection connection;
+		private final long idleSince;
+		IdleConnection(OlapConnection connection) {
+			this.connection = connection;
+			this.idleSince = System.currentTimeMillis();
+		}
+	}
+
+	private final String name;
+	private final OlapConnectionSupplier supplier;
+	private final MondrianConnectionFactory.OlapConnectionPoolSettings settings;
+	private final Semaphore permits;
+	private final BlockingDeque<IdleConnection> idleConnections = new LinkedBlockingDeque<>();
+	private volatile boolean closed = false;
+
+	/**
+	 * Create a pool
+	 * @param name the name of the pool, used in log and exception messages
+	 * @param supplier the source of new connections
+	 * @param settings the pool settings (size, timeouts, validation)
+	 */
+	public OlapConnectionPool(String name, OlapConnectionSupplier supplier, MondrianConnectionFactory.OlapConnectionPoolSettings settings) {
+		this.name = name;
+		this.supplier = supplier;
+		this.settings = settings;
+		this.permits = new Semaphore(settings.getMaxSize(), true);
+	}
+
+	/**
+	 * Borrow a connection from the pool, opening a new one if no valid idle connection is available.  Callers must hand the connection back via
+	 * {@link #release(OlapConnection)} (or {@link #invalidate(OlapConnection)} if it should not be reused) when finished with it.
+	 * @return the connection
+	 * @throws SQLException if the pool is exhausted for longer than the borrow timeout, or if a new connection cannot be opened
+	 */
+	public OlapConnection borrow() throws SQLException {
+
+		if (closed) {
+			throw new SQLException("Olap connection pool " + name + " is closed");
+		}
+
+		boolean acquired = false;
+		try {
+			acquired = permits.tryAcquire(settings.getBorrowTimeoutSeconds(), TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection from olap connection pool " + name, e);
+		}
+
+		if (!acquired) {
+			throw new SQLTransientConnectionException("Timed out after " + settings.getBorrowTimeoutSeconds() +
+					" seconds waiting for a connection from olap connection pool " + name + " (max size " + settings.getMaxSize() + ")");
+		}
+
+		try {
+			IdleConnection idleConnection = null;
+			while ((idleConnection = idleConnections.pollFirst()) != null) {
+				if (!settings.isValidateOnBorrow() || isValid(idleConnection.connection)) {
+					return idleConnection.connection;
+				}
+				log.debug("Discarding invalid connection from olap connection pool " + name);
+				closeQuietly(idleConnection.connection);
+			}
+			log.debug("Opening new connection for olap connection pool " + name);
+			return supplier.get();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+
+	}
+
+	/**
+	 * Return a borrowed connection to the pool so that it can be reused.
+	 * @param connection the connection, as returned by {@link #borrow()}
+	 */
+	public void release(OlapConnection connection) {
+		try {
+			if (closed || connection.isClosed()) {
+				closeQuietly(connection);
+			} else {
+				idleConnections.offerFirst(new IdleConnection(connection));
+			}
+		} catch (SQLException e) {
+			closeQuietly(connection);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Return a borrowed connection that should not be reused (for example, because it failed in a way that suggests it is broken).  The connection is closed.
+	 * @param connection the connection, as returned by {@link #borrow()}
+	 */
+	public void invalidate(OlapConnection connection) {
+		try {
+			closeQuietly(connection);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Close connections that have been idle longer than the configured maximum idle time.
+	 * @return the number of connections closed
+	 */
+	public int evictIdle() {
+		long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(settings.getMaxIdleSeconds());
+		List<IdleConnection> expired = new ArrayList<>();
+		for (IdleConnection idleConnection : idleConnections) {
+			if (idleConnection.idleSince < cutoff) {
+				expired.add(idleConnection);
+			}
+		}
+		int ret = 0;
+		for (IdleConnection idleConnection : expired) {
+			// a concurrent borrow may have taken the connection in the meantime, in which case remove() returns false and we leave it alone
+			if (idleConnections.remove(idleConnection)) {
+				closeQuietly(idleConnection.connection);
+				ret++;
+			}
+		}
+		if (ret > 0) {
+			log.debug("Evicted " + ret + " idle connection(s) from olap connection pool " + name);
+		}
+		return ret;
+	}
+
+	/**
+	 * Close the pool and all idle connections in it.  Connections that are currently borrowed are closed when they are released.
+	 */
+	public void close() {
+		closed = true;
+		IdleConnection idleConnection = null;
+		while ((idleConnection = idleConnections.pollFirst()) != null) {
+			closeQuietly(idleConnection.connection);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getIdleCount() {
+		return idleConnections.size();
+	}
+
+	public int getActiveCount() {
+		return settings.getMaxSize() - permits.availablePermits();
+	}
+
+	private boolean isValid(OlapConnection connection) {
+		try {
+			return !connection.isClosed() && connection.isValid(settings.getValidationTimeoutSeconds());
+		} catch (SQLException | RuntimeException e) {
+			log.debug("Validation of pooled connection failed for olap connection pool " + name, e);
+			return false;
+		}
+	}
+
+	private static void closeQuietly(OlapConnection connection) {
+		try {
+			connection.close();
+		} catch (SQLException | RuntimeException e) {
+			log.debug("Exception closing pooled olap connection", e);
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.InitialContext;
+import javax.sql.DataSource;
+
+import mondrian.spi.DataSourceResolver;
+
+/**
+ * Mondrian DataSourceResolver that resolves the names of the pooled data sources built by {@link MondrianConnectionFactory}.  Mondrian instantiates the resolver
+ * itself (it is registered via the mondrian.spi.dataSourceResolverClass property in mondrian.properties), so the data sources are kept in a static registry.
+ * Names that are not registered are looked up in JNDI, which is Mondrian's default behavior.
+ *
+ */
+public class PooledDataSourceResolver implements DataSourceResolver {
+
+	private static final Map<String, DataSource> DATA_SOURCES = new ConcurrentHashMap<>();
+
+	static void register(String dataSourceName, DataSource dataSource) {
+		DATA_SOURCES.put(dataSourceName, dataSource);
+	}
+
+	static void unregister(String dataSourceName) {
+		DATA_SOURCES.remove(dataSourceName);
+	}
+
+	@Override
+	public DataSource lookup(String dataSourceName) throws Exception {
+		DataSource ret = DATA_SOURCES.get(dataSourceName);
+		if (ret == null) {
+			ret = (DataSource) new InitialContext().lookup(dataSourceName);
+		}
+		return ret;
+	}
+
+}
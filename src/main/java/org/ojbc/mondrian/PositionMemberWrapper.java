@@ -16,6 +16,8 @@
  */
 package org.ojbc.mondrian;
 
+import java.io.Serializable;
+
 import org.olap4j.metadata.Member;
 
 import lombok.EqualsAndHashCode;
@@ -25,7 +27,9 @@ import lombok.ToString;
 @Getter
 @EqualsAndHashCode
 @ToString
-public class PositionMemberWrapper {
+public class PositionMemberWrapper implements Serializable {
+
+	private static final long serialVersionUID = -1828573601549762205L;
 
 	private String memberLevelName;
 	private String memberLevelCaption;
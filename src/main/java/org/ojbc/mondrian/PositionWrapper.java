@@ -16,6 +16,7 @@
  */
 package org.ojbc.mondrian;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -33,7 +34,9 @@ import lombok.ToString;
 @Getter
 @EqualsAndHashCode
 @ToString
-public class PositionWrapper {
+public class PositionWrapper implements Serializable {
+	
+	private static final long serialVersionUID = 8730696893975947880L;
 	
 	private List<String> memberDimensionNames;
 	private List<String> memberDimensionCaptions;
@@ -0,0 +1,225 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Limits the number of queries that execute at once against a single connection (or in a single lane), so that slow queries cannot tie up every request thread.  Queries beyond
+ * the limit wait (in arrival order) in a bounded queue; a query that finds the queue full, or that waits longer than the queue timeout, is rejected.
+ *
+ */
+@Slf4j
+public final class QueryBulkhead {
+
+	private final String name;
+	private final MondrianConnectionFactory.QueryConcurrencySettings settings;
+	private final Semaphore permits;
+	private final AtomicInteger waiting = new AtomicInteger();
+	private final AtomicLong admittedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong timedOutCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+
+	/**
+	 * Create a bulkhead
+	 * @param name the name of the connection (or lane), used in log and exception messages
+	 * @param settings the concurrency limits
+	 */
+	public QueryBulkhead(String name, MondrianConnectionFactory.QueryConcurrencySettings settings) {
+		this.name = name;
+		this.settings = settings;
+		this.permits = new Semaphore(settings.getMaxConcurrent(), true);
+	}
+
+	/**
+	 * Wait for permission to execute a query.  Callers that are admitted must call {@link #release()} when the query finishes.
+	 * @throws QueryRejectedException if the wait queue is full, or if the queue timeout passes before the query is admitted
+	 * @throws SQLException if interrupted while waiting
+	 */
+	public void acquire() throws SQLException {
+
+		if (tryAcquire()) {
+			return;
+		}
+
+		joinQueue();
+
+		long start = System.nanoTime();
+		boolean acquired = false;
+		try {
+			acquired = permits.tryAcquire(settings.getQueueTimeoutSeconds(), TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting to execute a query against " + name, e);
+		} finally {
+			leaveQueue(System.nanoTime() - start, acquired);
+		}
+
+		if (!acquired) {
+			throw timedOut();
+		}
+
+		admittedCount.incrementAndGet();
+
+	}
+
+	/**
+	 * Take permission to execute a query if it is available now, without waiting.  Callers that are admitted must call {@link #release()} when the query finishes.
+	 * @return true if the query was admitted
+	 */
+	public boolean tryAcquire() {
+		if (permits.tryAcquire()) {
+			admittedCount.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Whether a query could be admitted now without waiting
+	 * @return true if a permit is available
+	 */
+	public boolean isAvailable() {
+		return permits.availablePermits() > 0;
+	}
+
+	/**
+	 * Count a query that waits elsewhere (in the fair query scheduler) for a permit from {@link #tryAcquire()} as waiting in this bulkhead's queue.  Callers
+	 * that join the queue must call {@link #leaveQueue(long, boolean)} when they stop waiting.
+	 * @throws QueryRejectedException if the wait queue is full
+	 */
+	public void joinQueue() throws QueryRejectedException {
+		if (waiting.incrementAndGet() > settings.getMaxQueued()) {
+			waiting.decrementAndGet();
+			rejectedCount.incrementAndGet();
+			log.warn("Rejecting query on " + name + ", " + settings.getMaxConcurrent() + " queries are executing and " + settings.getMaxQueued() +
+					" are waiting");
+			throw new QueryRejectedException("Too many queries are executing against " + name, settings.getRetryAfterSeconds());
+		}
+	}
+
+	/**
+	 * Stop counting a query as waiting in this bulkhead's queue
+	 * @param waitNanos how long the query waited
+	 * @param admitted whether the query was admitted (only the waits of admitted queries count towards the average)
+	 */
+	public void leaveQueue(long waitNanos, boolean admitted) {
+		waiting.decrementAndGet();
+		if (admitted) {
+			totalWaitNanos.addAndGet(waitNanos);
+		}
+	}
+
+	/**
+	 * Count a query that waited longer than the queue timeout
+	 * @return the exception with which to reject the query
+	 */
+	public QueryRejectedException timedOut() {
+		timedOutCount.incrementAndGet();
+		log.warn("Rejecting query on " + name + " after it waited " + settings.getQueueTimeoutSeconds() + " seconds to execute");
+		return new QueryRejectedException("Timed out after " + settings.getQueueTimeoutSeconds() + " seconds waiting to execute a query against " + name,
+				settings.getRetryAfterSeconds());
+	}
+
+	/**
+	 * Release the permission obtained by {@link #acquire()}, admitting the next waiting query (if any).
+	 */
+	public void release() {
+		permits.release();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxConcurrent() {
+		return settings.getMaxConcurrent();
+	}
+
+	public int getMaxQueued() {
+		return settings.getMaxQueued();
+	}
+
+	public int getQueueTimeoutSeconds() {
+		return settings.getQueueTimeoutSeconds();
+	}
+
+	/**
+	 * Get the number of queries currently executing
+	 * @return the count
+	 */
+	public int getActiveCount() {
+		return settings.getMaxConcurrent() - permits.availablePermits();
+	}
+
+	/**
+	 * Get the number of queries currently waiting to execute
+	 * @return the count
+	 */
+	public int getQueueDepth() {
+		return waiting.get();
+	}
+
+	/**
+	 * Get the number of queries admitted for execution since startup
+	 * @return the count
+	 */
+	public long getAdmittedCount() {
+		return admittedCount.get();
+	}
+
+	/**
+	 * Get the number of queries rejected since startup because the wait queue was full
+	 * @return the count
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Get the number of queries rejected since startup because they waited longer than the queue timeout
+	 * @return the count
+	 */
+	public long getTimedOutCount() {
+		return timedOutCount.get();
+	}
+
+	/**
+	 * Get the total time queries admitted since startup spent waiting in the queue
+	 * @return the time in milliseconds
+	 */
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+	}
+
+	/**
+	 * Get the average time queries admitted since startup spent waiting in the queue (queries admitted without waiting count as zero)
+	 * @return the time in milliseconds
+	 */
+	public double getAverageWaitMillis() {
+		long admitted = admittedCount.get();
+		return admitted == 0 ? 0 : totalWaitNanos.get() / 1000000.0 / admitted;
+	}
+
+}
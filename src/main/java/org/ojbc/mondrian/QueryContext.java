@@ -0,0 +1,141 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.olap4j.OlapStatement;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import mondrian.server.Execution;
+import mondrian.server.Locus;
+
+/**
+ * Identifies the query on whose behalf Mondrian is executing SQL, so that the SQL statements can be attributed to it.  A context is attached to the olap4j
+ * statement executing the query; Mondrian's SQL execution threads find it through Mondrian's Locus (which identifies the statement they are working for).
+ *
+ */
+@Getter
+public final class QueryContext {
+
+	// contexts of the queries executing now, keyed by Mondrian's statement
+	private static final Map<Object, QueryContext> ACTIVE_CONTEXTS = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of SQL statements whose details are kept for each query (all statements are counted)
+	 */
+	public static final int MAX_SQL_STATEMENTS = 100;
+
+	private final long requestId;
+	private final String connectionName;
+	private final String mondrianRole;
+	private final QueryProfile profile;
+	private final AtomicLong sqlCount = new AtomicLong();
+	@Getter(AccessLevel.NONE) private final List<QueryProfile.SqlStatementProfile> sqlStatements;
+	@Getter(AccessLevel.NONE) private Object mondrianStatement;
+
+	/**
+	 * Create a context
+	 * @param requestId the id of the query (as listed by the running query admin endpoint)
+	 * @param connectionName the connection the query executes against
+	 * @param mondrianRole the Mondrian role the query executes with, or null
+	 * @param profile the profile to record the query's execution in, or null if the query is not being profiled
+	 * @param collectSqlStatements whether to keep the details of the SQL statements executed for the query (they are counted either way)
+	 */
+	public QueryContext(long requestId, String connectionName, String mondrianRole, QueryProfile profile, boolean collectSqlStatements) {
+		this.requestId = requestId;
+		this.connectionName = connectionName;
+		this.mondrianRole = mondrianRole;
+		this.profile = profile;
+		this.sqlStatements = collectSqlStatements ? Collections.synchronizedList(new ArrayList<>()) : null;
+	}
+
+	/**
+	 * Attach the context to the statement that is about to execute the query.  The caller must call {@link #detach()} once the statement has executed and
+	 * been closed.
+	 * @param statement the statement (from a Mondrian olap connection)
+	 */
+	public void attach(OlapStatement statement) throws SQLException {
+		mondrian.server.Statement s = statement.unwrap(mondrian.server.Statement.class);
+		if (profile != null) {
+			profile.enable(s);
+		}
+		mondrianStatement = s;
+		ACTIVE_CONTEXTS.put(s, this);
+	}
+
+	public void detach() {
+		if (mondrianStatement != null) {
+			ACTIVE_CONTEXTS.remove(mondrianStatement, this);
+		}
+	}
+
+	/**
+	 * Get the number of SQL statements executed for the query so far
+	 * @return the count
+	 */
+	public long getSqlCount() {
+		return sqlCount.get();
+	}
+
+	/**
+	 * Get the SQL statements executed for the query so far (the first {@link #MAX_SQL_STATEMENTS} of them)
+	 * @return the statements, or null if the context was created without collecting them
+	 */
+	public List<QueryProfile.SqlStatementProfile> getSqlStatements() {
+		if (sqlStatements == null) {
+			return null;
+		}
+		synchronized (sqlStatements) {
+			return new ArrayList<>(sqlStatements);
+		}
+	}
+
+	void recordSqlStatement(String sql, long durationNanos, long rowCount) {
+		long count = sqlCount.incrementAndGet();
+		if (sqlStatements == null && profile == null) {
+			return;
+		}
+		QueryProfile.SqlStatementProfile statement = new QueryProfile.SqlStatementProfile(sql, SqlStatistics.toMillis(durationNanos), rowCount);
+		if (sqlStatements != null && count <= MAX_SQL_STATEMENTS) {
+			sqlStatements.add(statement);
+		}
+		if (profile != null) {
+			profile.addSqlStatement(statement);
+		}
+	}
+
+	/**
+	 * Get the context of the query on whose behalf Mondrian is doing work in the current thread
+	 * @return the context, or null if the current thread is not working for a query with an attached context
+	 */
+	static QueryContext current() {
+		if (ACTIVE_CONTEXTS.isEmpty() || Locus.isEmpty()) {
+			return null;
+		}
+		Execution execution = Locus.peek().execution;
+		return execution == null ? null : ACTIVE_CONTEXTS.get(execution.getMondrianStatement());
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import lombok.Getter;
+import lombok.Value;
+
+/**
+ * The profile of a single query execution:  the SQL statements Mondrian issued on the query's behalf (for connections with a "JdbcConnectionPool", since only
+ * then does Mondrian's SQL pass through a DataSource owned by the service), and Mondrian's own account of the query (its plan, and the time spent in each of
+ * its components).  A profile is recorded by passing it to the {@link QueryContext} of the query.
+ *
+ */
+@Getter
+public final class QueryProfile {
+
+	/**
+	 * A SQL statement issued by Mondrian
+	 */
+	@Value
+	public static final class SqlStatementProfile {
+		private String sql;
+		private double durationMillis;
+		private long rowCount;
+	}
+
+	private final List<SqlStatementProfile> sqlStatements = new CopyOnWriteArrayList<>();
+	private volatile String plan;
+	private volatile List<String> mondrianTiming;
+
+	/**
+	 * Have Mondrian report its plan and timing for the statement's execution to this profile
+	 */
+	void enable(mondrian.server.Statement statement) {
+		statement.enableProfiling((plan, timing) -> {
+			this.plan = plan;
+			this.mondrianTiming = Arrays.asList(timing.toString().trim().split("\\s*\\n\\s*"));
+		});
+	}
+
+	void addSqlStatement(SqlStatementProfile statement) {
+		sqlStatements.add(statement);
+	}
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Getter;
+
+/**
+ * Aggregate statistics of the SQL statements Mondrian has executed against one connection's database, grouped by fingerprint (the statement's text with
+ * literal values replaced by placeholders, so that statements that differ only in the members they constrain are counted together).  The number of distinct
+ * fingerprints remembered is bounded; when a new fingerprint arrives and the bound has been reached, the fingerprint with the least total time is forgotten.
+ *
+ */
+public final class SqlStatistics {
+
+	public static final int DEFAULT_MAX_FINGERPRINTS = 1000;
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+	public static enum Ordering {
+
+		TOTAL_TIME(Comparator.comparingLong(StatementStatistics::getTotalNanos)),
+		EXECUTION_TIME(Comparator.comparingLong(StatementStatistics::getTotalExecuteNanos)),
+		MAX_TIME(Comparator.comparingLong(StatementStatistics::getMaxNanos)),
+		COUNT(Comparator.comparingLong(StatementStatistics::getExecutionCount)),
+		ROWS(Comparator.comparingLong(StatementStatistics::getRowCount));
+
+		private final Comparator<StatementStatistics> comparator;
+
+		private Ordering(Comparator<StatementStatistics> comparator) {
+			this.comparator = comparator;
+		}
+
+		public static Ordering forName(String name) {
+			for (Ordering ordering : values()) {
+				if (ordering.name().replace("_", "").equalsIgnoreCase(name.trim().replace("_", ""))) {
+					return ordering;
+				}
+			}
+			throw new IllegalArgumentException("Unknown SQL statement ordering " + name + ", must be totalTime, executionTime, maxTime, count or rows");
+		}
+
+	}
+
+	/**
+	 * Statistics of the statements with one fingerprint
+	 */
+	@Getter
+	public static final class StatementStatistics {
+
+		private final String fingerprint;
+		private long executionCount;
+		@JsonIgnore private long totalExecuteNanos;
+		@JsonIgnore private long totalFetchNanos;
+		@JsonIgnore private long maxNanos;
+		private long rowCount;
+		private long lastExecutedTime;
+		private long lastRequestId = -1;
+		private final Set<String> mondrianRoles = new TreeSet<>();
+
+		StatementStatistics(String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+
+		private StatementStatistics(StatementStatistics other) {
+			fingerprint = other.fingerprint;
+			executionCount = other.executionCount;
+			totalExecuteNanos = other.totalExecuteNanos;
+			totalFetchNanos = other.totalFetchNanos;
+			maxNanos = other.maxNanos;
+			rowCount = other.rowCount;
+			lastExecutedTime = other.lastExecutedTime;
+			lastRequestId = other.lastRequestId;
+			mondrianRoles.addAll(other.mondrianRoles);
+		}
+
+		synchronized void record(long executeNanos, long fetchNanos, long rows, long requestId, String mondrianRole) {
+			executionCount++;
+			totalExecuteNanos += executeNanos;
+			totalFetchNanos += fetchNanos;
+			maxNanos = Math.max(maxNanos, executeNanos + fetchNanos);
+			rowCount += rows;
+			lastExecutedTime = System.currentTimeMillis();
+			if (requestId >= 0) {
+				lastRequestId = requestId;
+			}
+			if (mondrianRole != null) {
+				mondrianRoles.add(mondrianRole);
+			}
+		}
+
+		synchronized StatementStatistics snapshot() {
+			return new StatementStatistics(this);
+		}
+
+		@JsonIgnore
+		public long getTotalNanos() {
+			return totalExecuteNanos + totalFetchNanos;
+		}
+
+		@JsonProperty("totalExecuteMillis")
+		public double getTotalExecuteMillis() {
+			return toMillis(totalExecuteNanos);
+		}
+
+		@JsonProperty("totalFetchMillis")
+		public double getTotalFetchMillis() {
+			return toMillis(totalFetchNanos);
+		}
+
+		@JsonProperty("averageMillis")
+		public double getAverageMillis() {
+			return executionCount == 0 ? 0 : toMillis(getTotalNanos() / executionCount);
+		}
+
+		@JsonProperty("maxMillis")
+		public double getMaxMillis() {
+			return toMillis(maxNanos);
+		}
+
+	}
+
+	private final Map<String, StatementStatistics> statistics = new ConcurrentHashMap<>();
+	private final int maxFingerprints;
+
+	public SqlStatistics() {
+		this(DEFAULT_MAX_FINGERPRINTS);
+	}
+
+	/**
+	 * Create statistics
+	 * @param maxFingerprints the number of distinct fingerprints to remember
+	 */
+	public SqlStatistics(int maxFingerprints) {
+		this.maxFingerprints = maxFingerprints;
+	}
+
+	/**
+	 * Record the execution of a statement
+	 * @param sql the text of the statement
+	 * @param executeNanos the time the database took to execute the statement (until it returned the first results)
+	 * @param fetchNanos the time from then until the statement was closed (reading the results)
+	 * @param rows the number of rows read
+	 * @param requestId the id of the query the statement was executed for, or -1 if not known
+	 * @param mondrianRole the Mondrian role of that query, or null
+	 */
+	public void record(String sql, long executeNanos, long fetchNanos, long rows, long requestId, String mondrianRole) {
+		String fingerprint = fingerprint(sql);
+		StatementStatistics s = statistics.get(fingerprint);
+		if (s == null) {
+			if (statistics.size() >= maxFingerprints) {
+				evict();
+			}
+			s = statistics.computeIfAbsent(fingerprint, StatementStatistics::new);
+		}
+		s.record(executeNanos, fetchNanos, rows, requestId, mondrianRole);
+	}
+
+	private synchronized void evict() {
+		while (statistics.size() >= maxFingerprints) {
+			statistics.values().stream().min(Comparator.comparingLong(StatementStatistics::getTotalNanos))
+				.ifPresent(s -> statistics.remove(s.getFingerprint()));
+		}
+	}
+
+	/**
+	 * Get the statistics of the statements that rank highest by some measure
+	 * @param ordering the measure
+	 * @param limit the number of fingerprints to return
+	 * @return the statistics (copies), highest first
+	 */
+	public List<StatementStatistics> getTopStatements(Ordering ordering, int limit) {
+		List<StatementStatistics> ret = new ArrayList<>();
+		for (StatementStatistics s : statistics.values()) {
+			ret.add(s.snapshot());
+		}
+		return ret.stream().sorted(ordering.comparator.reversed()).limit(limit).collect(Collectors.toList());
+	}
+
+	/**
+	 * Get the number of distinct fingerprints remembered
+	 * @return the count
+	 */
+	public int size() {
+		return statistics.size();
+	}
+
+	/**
+	 * Forget all statistics
+	 */
+	public void clear() {
+		statistics.clear();
+	}
+
+	/**
+	 * Compute the fingerprint of a SQL statement:  string and numeric literals are replaced by ?, whitespace is collapsed, and lists of placeholders (such as
+	 * the values of an IN predicate) are collapsed to a single (...).  Quoted identifiers are left as they are.
+	 * @param sql the statement
+	 * @return the fingerprint
+	 */
+	public static String fingerprint(String sql) {
+		if (sql == null) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(sql.length());
+		int length = sql.length();
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (c == '\'') {
+				// string literal, with '' as an escaped quote
+				i++;
+				while (i < length) {
+					if (sql.charAt(i) == '\'') {
+						if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+							i += 2;
+							continue;
+						}
+						break;
+					}
+					i++;
+				}
+				i++;
+				sb.append('?');
+			} else if (c == '"') {
+				int end = sql.indexOf('"', i + 1);
+				end = end < 0 ? length : end + 1;
+				sb.append(sql, i, end);
+				i = end;
+			} else if (Character.isDigit(c) && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))) {
+				while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.' || sql.charAt(i) == 'E' || sql.charAt(i) == 'e')) {
+					i++;
+				}
+				sb.append('?');
+			} else {
+				sb.append(c);
+				i++;
+			}
+		}
+		String ret = WHITESPACE.matcher(sb.toString().trim()).replaceAll(" ");
+		return PLACEHOLDER_LIST.matcher(ret).replaceAll("(...)");
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '"' || c == '.';
+	}
+
+	static double toMillis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+
+}
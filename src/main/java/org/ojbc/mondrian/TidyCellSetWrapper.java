@@ -16,15 +16,20 @@
  */
 package org.ojbc.mondrian;
 
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
 
-import org.olap4j.Cell;
 import org.olap4j.CellSet;
 import org.olap4j.CellSetAxis;
 import org.olap4j.Position;
@@ -32,20 +37,141 @@ import org.olap4j.metadata.Level;
 import org.olap4j.metadata.Member;
 import org.olap4j.metadata.Member.Type;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Wrapper object for tidied cell sets.
+ * 
+ * Each row of a tidy cell set holds the values of every (non-All) level of the members at one combination of axis positions, plus one value per measure.  Cells
+ * that differ only in their measure are merged into the same row.  Rows are kept internally as arrays indexed by column, and exposed as maps by {@link #getValues()}.
  *
  */
 @Slf4j
 public class TidyCellSetWrapper implements CellSetWrapperType {
 	
+	private static final long serialVersionUID = -1634345698353814711L;
+	
 	private static final String MEASURES_LEVEL_UNIQUE_NAME = "[Measures].[MeasuresLevel]";
-	private static final String HASH_KEY = ".H";
-	private static final String ORDER_KEY = ".O";
 	
-	private List<Map<String, Object>> values = new ArrayList<>();
+	/**
+	 * Marks a column that has no value in a row (as opposed to a null value), so that the column is left out of the row's map.  An enum constant, so that it is
+	 * still the same instance after the wrapper has been serialized and deserialized.
+	 */
+	private static enum Missing { VALUE }
+	private static final Object MISSING = Missing.VALUE;
+	
+	// a row is its array (and its entry in the list of rows); level values are shared between rows, so a value costs its reference and, typically, a boxed number
+	private static final int ROW_BYTES = 24;
+	private static final int VALUE_BYTES = 20;
+	
+	private List<String> columnNames = new ArrayList<>();
+	private List<Object[]> rows = new ArrayList<>();
+	private transient Map<String, Integer> columnIndexes;
+	
+	/**
+	 * The levels and measure of each position on one axis, computed once per position rather than once per cell
+	 */
+	private static final class AxisLayout {
+		
+		private final int positionCount;
+		private final int[][] levelColumns;
+		private final String[][] levelValues;
+		private final String[] measureNames;
+		private final int[] measureColumns;
+		private final int[] levelTupleIds;
+		private int levelTupleCount;
+		
+		AxisLayout(List<Position> positions, Map<String, Integer> columnIndexes, Map<String, String> levelNames) {
+			
+			positionCount = positions.size();
+			levelColumns = new int[positionCount][];
+			levelValues = new String[positionCount][];
+			measureNames = new String[positionCount];
+			measureColumns = new int[positionCount];
+			levelTupleIds = new int[positionCount];
+			
+			Map<List<Object>, Integer> levelTuples = new HashMap<>();
+			List<String> names = new ArrayList<>();
+			List<String> values = new ArrayList<>();
+			
+			int i = 0;
+			for (Position position : positions) {
+				names.clear();
+				values.clear();
+				String measureName = null;
+				for (Member member : position.getMembers()) {
+					Member m = member;
+					while (m != null) {
+						if (m.getMemberType() != Type.ALL) {
+							Level level = m.getLevel();
+							String uniqueName = level.getUniqueName();
+							if (MEASURES_LEVEL_UNIQUE_NAME.equals(uniqueName)) {
+								measureName = m.getName();
+							} else {
+								names.add(uniqueName);
+								values.add(m.getName());
+								levelNames.putIfAbsent(uniqueName, level.getName());
+							}
+						}
+						m = m.getParentMember();
+					}
+				}
+				int[] columns = new int[names.size()];
+				for (int j=0;j < columns.length;j++) {
+					columns[j] = columnIndexes.computeIfAbsent(names.get(j), k -> columnIndexes.size());
+				}
+				levelColumns[i] = columns;
+				levelValues[i] = values.toArray(new String[values.size()]);
+				measureNames[i] = measureName;
+				List<Object> tuple = new ArrayList<>(columns.length * 2);
+				for (int j=0;j < columns.length;j++) {
+					tuple.add(columns[j]);
+					tuple.add(levelValues[i][j]);
+				}
+				levelTupleIds[i] = levelTuples.computeIfAbsent(tuple, k -> levelTuples.size());
+				i++;
+			}
+			
+			levelTupleCount = Math.max(levelTuples.size(), 1);
+			
+		}
+		
+		/**
+		 * Assign measure columns, which is done after level columns have been assigned for all axes so that measures come last
+		 */
+		void assignMeasureColumns(Map<String, Integer> columnIndexes) {
+			for (int i=0;i < positionCount;i++) {
+				measureColumns[i] = measureNames[i] == null ? -1 : columnIndexes.computeIfAbsent(measureNames[i], k -> columnIndexes.size());
+			}
+		}
+		
+		/**
+		 * Replace column indexes with the indexes of the (possibly renamed and merged) output columns
+		 */
+		void remapColumns(int[] mapping) {
+			for (int i=0;i < positionCount;i++) {
+				int[] columns = levelColumns[i];
+				for (int j=0;j < columns.length;j++) {
+					columns[j] = mapping[columns[j]];
+				}
+				if (measureColumns[i] != -1) {
+					measureColumns[i] = mapping[measureColumns[i]];
+				}
+			}
+		}
+		
+		boolean hasPositionWithoutMeasure() {
+			for (String measureName : measureNames) {
+				if (measureName == null) {
+					return true;
+				}
+			}
+			return positionCount == 0;
+		}
+		
+	}
 	
 	/**
 	 * Initialize this wrapper
@@ -57,139 +183,255 @@ public class TidyCellSetWrapper implements CellSetWrapperType {
 		
 		log.debug("Start of init");
 		
-		List<Map<String, Object>> positionIntersectionList = buildPositionIntersectionList(cellSet);
-		values = reducePositionIntersectionList(positionIntersectionList);
+		List<CellSetAxis> axes = cellSet.getAxes();
+		int axisCount = axes.size();
+		
+		// level columns first, then measure columns, each in order of first appearance
+		Map<String, Integer> columnIndexes = new LinkedHashMap<>();
+		Map<String, String> levelNames = new HashMap<>();
+		AxisLayout[] layouts = new AxisLayout[axisCount];
+		for (int a=0;a < axisCount;a++) {
+			layouts[a] = new AxisLayout(axes.get(a).getPositions(), columnIndexes, levelNames);
+		}
+		boolean everyAxisHasPositionWithoutMeasure = true;
+		for (int a=0;a < axisCount;a++) {
+			layouts[a].assignMeasureColumns(columnIndexes);
+			everyAxisHasPositionWithoutMeasure &= layouts[a].hasPositionWithoutMeasure();
+		}
+		// cells with no measure on any axis get stored under a null column name, as they always have been
+		if (everyAxisHasPositionWithoutMeasure) {
+			columnIndexes.computeIfAbsent(null, k -> columnIndexes.size());
+		}
 		
 		if (dimensionNameTranslationMap == null) {
 			dimensionNameTranslationMap = new HashMap<>();
 		}
 		
-		if (simplifyNames) {
-			List<Map<String, Object>> newValues = new ArrayList<>();
-			for (Map<String, Object> rowMap : values) {
-				Map<String, Object> translatedMap = new HashMap<>();
-				for (String key : rowMap.keySet()) {
-					String value = dimensionNameTranslationMap.get(key);
-					if (value == null) {
-						value = getLevelNameForUniqueName(cellSet, key);
-					}
-					translatedMap.put(value, rowMap.get(key));
+		// Work out the output name of each column up front.  If several columns end up with the same name, they share one output column, and the value
+		// written last takes precedence, matching the behavior of putting the renamed values into a map.
+		Map<String, Integer> outputIndexes = new LinkedHashMap<>();
+		int[] outputColumns = new int[columnIndexes.size()];
+		int c = 0;
+		for (String key : columnIndexes.keySet()) {
+			String name = key;
+			if (simplifyNames) {
+				name = dimensionNameTranslationMap.get(key);
+				if (name == null) {
+					name = levelNames.getOrDefault(key, key);
 				}
-				newValues.add(translatedMap);
 			}
-			values = newValues;
+			outputColumns[c++] = outputIndexes.computeIfAbsent(name, k -> outputIndexes.size());
+		}
+		for (AxisLayout layout : layouts) {
+			layout.remapColumns(outputColumns);
 		}
+		int noMeasureColumn = everyAxisHasPositionWithoutMeasure ? outputColumns[columnIndexes.get(null)] : -1;
 		
-	}
-
-	private String getLevelNameForUniqueName(CellSet cellSet, String levelUniqueName) {
-		for (CellSetAxis axis : cellSet.getAxes()) {
-			for (Position position : axis.getPositions()) {
-				for (Member member : position.getMembers()) {
-					Member m = member;
-					while (m != null) {
-						if (m.getMemberType() != Type.ALL) {
-							Level level = m.getLevel();
-							if (level.getUniqueName().equals(levelUniqueName)) {
-								return level.getName();
-							}
+		int width = outputIndexes.size();
+		
+		// A row is identified by the tuple of level values from each axis.  Level tuples are numbered per axis, so a row key is a mixed-radix number over the
+		// per-axis tuple counts.  Since each axis has at least as many positions as distinct tuples, the key space is no larger than the number of cells.
+		int cellCount = 1;
+		int keySpace = 1;
+		for (int a=0;a < axisCount;a++) {
+			cellCount *= layouts[a].positionCount;
+			keySpace *= layouts[a].levelTupleCount;
+		}
+		
+		rows = new ArrayList<>();
+		
+		if (cellCount > 0) {
+			
+			int[] rowIndexByKey = new int[keySpace];
+			Arrays.fill(rowIndexByKey, -1);
+			
+			int[] ordinalStrides = new int[axisCount];
+			int[] keyStrides = new int[axisCount];
+			int ordinalStride = 1;
+			int keyStride = 1;
+			for (int a=0;a < axisCount;a++) {
+				ordinalStrides[a] = ordinalStride;
+				keyStrides[a] = keyStride;
+				ordinalStride *= layouts[a].positionCount;
+				keyStride *= layouts[a].levelTupleCount;
+			}
+			
+			// visit combinations with the first axis outermost, which determines the row order
+			int[] sizes = new int[axisCount];
+			for (int a=0;a < axisCount;a++) {
+				sizes[a] = layouts[a].positionCount;
+			}
+			new CartesianSpliterator(sizes).forEachRemaining(positionIndexes -> {
+				
+				int ordinal = 0;
+				int key = 0;
+				int measureColumn = noMeasureColumn;
+				for (int a=0;a < axisCount;a++) {
+					int p = positionIndexes[a];
+					ordinal += p * ordinalStrides[a];
+					key += layouts[a].levelTupleIds[p] * keyStrides[a];
+					if (layouts[a].measureColumns[p] != -1) {
+						measureColumn = layouts[a].measureColumns[p];
+					}
+				}
+				
+				Object[] row = null;
+				int rowIndex = rowIndexByKey[key];
+				if (rowIndex == -1) {
+					row = new Object[width];
+					Arrays.fill(row, MISSING);
+					for (int a=0;a < axisCount;a++) {
+						int p = positionIndexes[a];
+						int[] levelColumns = layouts[a].levelColumns[p];
+						String[] levelValues = layouts[a].levelValues[p];
+						for (int j=0;j < levelColumns.length;j++) {
+							row[levelColumns[j]] = levelValues[j];
 						}
-						m = m.getParentMember();
 					}
+					rowIndexByKey[key] = rows.size();
+					rows.add(row);
+				} else {
+					row = rows.get(rowIndex);
 				}
-			}
+				
+				row[measureColumn] = cellSet.getCell(ordinal).getValue();
+				
+			});
+			
 		}
-		return levelUniqueName;
+		
+		columnNames = new ArrayList<>(outputIndexes.keySet());
+		this.columnIndexes = null;
+		
 	}
 
 	public void init(CellSet cellSet) {
 		init(cellSet, false, null);
 	}
-
-	private List<Map<String, Object>> reducePositionIntersectionList(List<Map<String, Object>> positionIntersectionList) {
-		
-		Map<Object, Map<String, Object>> reducedMap = new HashMap<>();
-		
-		positionIntersectionList.forEach(map -> {
-			Object hashKey = map.get(HASH_KEY);
-			if (reducedMap.containsKey(hashKey)) {
-				String measureName = (String) map.get(MEASURES_LEVEL_UNIQUE_NAME);
-				reducedMap.get(hashKey).put(measureName, map.get(measureName));
-			} else {
-				map.remove(MEASURES_LEVEL_UNIQUE_NAME);
-				reducedMap.put(hashKey, map);
+	
+	public List<Map<String, Object>> getValues() {
+		return new RowList();
+	}
+	
+	@Override
+	public long estimateSize() {
+		return (long) rows.size() * (ROW_BYTES + VALUE_BYTES * columnNames.size());
+	}
+	
+	@JsonProperty("values")
+	void setValues(List<Map<String, Object>> values) {
+		Map<String, Integer> indexes = new LinkedHashMap<>();
+		for (Map<String, Object> value : values) {
+			for (String key : value.keySet()) {
+				indexes.computeIfAbsent(key, k -> indexes.size());
 			}
-		});
-		
-		List<Map<String, Object>> ret = reducedMap.values().stream().collect(Collectors.toList());
-		ret.sort(new Comparator<Map<String, Object>>() {
-			@SuppressWarnings("unchecked")
-			@Override
-			public int compare(Map<String, Object> o1, Map<String, Object> o2) {
-				return ((Comparable<Integer>) o1.get(ORDER_KEY)).compareTo((Integer) o2.get(ORDER_KEY));
+		}
+		rows = new ArrayList<>(values.size());
+		for (Map<String, Object> value : values) {
+			Object[] row = new Object[indexes.size()];
+			Arrays.fill(row, MISSING);
+			value.forEach((k, v) -> row[indexes.get(k)] = v);
+			rows.add(row);
+		}
+		columnNames = new ArrayList<>(indexes.keySet());
+		columnIndexes = null;
+	}
+	
+	private Map<String, Integer> getColumnIndexes() {
+		Map<String, Integer> ret = columnIndexes;
+		if (ret == null) {
+			ret = new HashMap<>();
+			for (int i=0;i < columnNames.size();i++) {
+				ret.put(columnNames.get(i), i);
 			}
-		});
-		
-		ret.forEach(row -> {
-			row.remove(HASH_KEY);
-			row.remove(ORDER_KEY);
-		});
-		
+			columnIndexes = ret;
+		}
 		return ret;
-		
 	}
-
-	private List<Map<String, Object>> buildPositionIntersectionList(CellSet cellSet) {
+	
+	/**
+	 * Read-only list view of the rows, presenting each row as a map
+	 */
+	private final class RowList extends AbstractList<Map<String, Object>> implements RandomAccess {
+		@Override
+		public Map<String, Object> get(int index) {
+			return new RowMap(rows.get(index));
+		}
+		@Override
+		public int size() {
+			return rows.size();
+		}
+	}
+	
+	/**
+	 * Read-only map view of a row, from column name to value, omitting columns that have no value in the row
+	 */
+	private final class RowMap extends AbstractMap<String, Object> {
 		
-		List<Map<String, Object>> ret = new ArrayList<>();
+		private final Object[] row;
 		
-		List<List<Position>> positionLists = cellSet.getAxes().stream().map(axis -> axis.getPositions()).collect(Collectors.toList());
-		positionLists = MondrianUtils.permuteLists(positionLists);
+		RowMap(Object[] row) {
+			this.row = row;
+		}
 		
-		int valueIndex = 0;
-		for (List<Position> positionList : positionLists) {
-			
-			Cell cell = cellSet.getCell(positionList.toArray(new Position[0]));
-			Map<String, Object> map = new HashMap<>();
-			
-			for (Position position : positionList) {
-				List<Member> members = position.getMembers();
-				for (Member member : members) {
-					map.putAll(getHierarchyMap(member));
-				}
+		@Override
+		public Object get(Object key) {
+			Integer index = getColumnIndexes().get(key);
+			if (index == null) {
+				return null;
 			}
-			
-			String measureValue = (String) map.get(MEASURES_LEVEL_UNIQUE_NAME);
-			map.remove(MEASURES_LEVEL_UNIQUE_NAME);
-			map.put(HASH_KEY, map.hashCode());
-			map.put(MEASURES_LEVEL_UNIQUE_NAME, measureValue);
-
-			map.put(measureValue, cell.getValue());
-			map.put(ORDER_KEY, valueIndex++);
-			ret.add(map);
-			
+			Object ret = row[index];
+			return ret == MISSING ? null : ret;
 		}
 		
-		return ret;
+		@Override
+		public boolean containsKey(Object key) {
+			Integer index = getColumnIndexes().get(key);
+			return index != null && row[index] != MISSING;
+		}
 		
-	}
-	
-	private Map<String, String> getHierarchyMap(Member member) {
-		Map<String, String> ret = new HashMap<>();
-		Member m = member;
-		while (m != null) {
-			if (m.getMemberType() != Type.ALL) {
-				String uniqueName = m.getLevel().getUniqueName();
-				String value = m.getName();
-				ret.put(uniqueName, value);
-			}
-			m = m.getParentMember();
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			return new AbstractSet<Entry<String, Object>>() {
+				@Override
+				public Iterator<Entry<String, Object>> iterator() {
+					return new Iterator<Entry<String, Object>>() {
+						private int next = advance(0);
+						private int advance(int from) {
+							int i = from;
+							while (i < row.length && row[i] == MISSING) {
+								i++;
+							}
+							return i;
+						}
+						@Override
+						public boolean hasNext() {
+							return next < row.length;
+						}
+						@Override
+						public Entry<String, Object> next() {
+							if (next >= row.length) {
+								throw new NoSuchElementException();
+							}
+							Entry<String, Object> ret = new SimpleImmutableEntry<>(columnNames.get(next), row[next]);
+							next = advance(next + 1);
+							return ret;
+						}
+					};
+				}
+				@Override
+				public int size() {
+					int ret = 0;
+					for (Object value : row) {
+						if (value != MISSING) {
+							ret++;
+						}
+					}
+					return ret;
+				}
+			};
 		}
-		return ret;
-	}
-	
-	public List<Map<String, Object>> getValues() {
-		return Collections.unmodifiableList(values);
+		
 	}
 	
 }
@@ -64,6 +64,7 @@ public class BearerTokenRequestAuthorizer implements RequestAuthorizer {
 					if (role != null) {
 						ret.authorized = true;
 						ret.mondrianRole = role;
+						ret.schedulingWeight = RequestAuthorizer.AuthorizerUtil.getSchedulingWeight(connectionMappings);
 						if (role.equals(ALL_ACCESS_ROLE_NAME)) {
 							ret.mondrianRole = null;
 						}
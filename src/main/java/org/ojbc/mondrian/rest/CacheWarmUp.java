@@ -0,0 +1,148 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fills the query cache, when the service starts, by executing the queries that (according to the query log) are most worth caching.  Queries are executed in
+ * the background on a fixed number of threads, and the service reports itself ready once they have all finished.
+ *
+ */
+@Getter
+@Slf4j
+public final class CacheWarmUp {
+
+	public static enum State {
+		DISABLED, RUNNING, COMPLETE
+	}
+
+	/**
+	 * The execution of a query, caching its result
+	 */
+	public static interface Replay {
+		public void replay(QueryRequest queryRequest) throws Exception;
+	}
+
+	@JsonIgnore private final List<QueryRequest> queries;
+	private final int threads;
+	private volatile State state;
+	private final AtomicInteger completed = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private volatile long startTime;
+	private volatile long endTime;
+
+	/**
+	 * Create a warm-up
+	 * @param queries the queries to execute, in order
+	 * @param threads the number of queries to execute at once
+	 */
+	public CacheWarmUp(List<QueryRequest> queries, int threads) {
+		this.queries = queries;
+		this.threads = threads;
+		this.state = queries.isEmpty() ? State.COMPLETE : State.RUNNING;
+	}
+
+	/**
+	 * Create a warm-up that does nothing, for when warm-up is not configured
+	 * @return the warm-up
+	 */
+	public static CacheWarmUp disabled() {
+		CacheWarmUp ret = new CacheWarmUp(Collections.emptyList(), 0);
+		ret.state = State.DISABLED;
+		return ret;
+	}
+
+	/**
+	 * Start executing the queries in the background
+	 * @param replay how to execute (and cache) a query
+	 */
+	public void start(Replay replay) {
+		if (state != State.RUNNING) {
+			return;
+		}
+		startTime = System.currentTimeMillis();
+		log.info("Warming up query cache with " + queries.size() + " queries from the query log");
+		Thread t = new Thread(() -> {
+			AtomicInteger threadCount = new AtomicInteger();
+			ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+				Thread et = new Thread(r, "cache-warm-up-" + threadCount.incrementAndGet());
+				et.setDaemon(true);
+				return et;
+			});
+			for (QueryRequest queryRequest : queries) {
+				executor.execute(() -> {
+					try {
+						replay.replay(queryRequest);
+						completed.incrementAndGet();
+					} catch (Exception e) {
+						failed.incrementAndGet();
+						log.warn("Unable to warm up query cache with query on connection " + queryRequest.getConnectionName() + ": " + e.getMessage());
+					}
+				});
+			}
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			endTime = System.currentTimeMillis();
+			state = State.COMPLETE;
+			log.info("Query cache warm-up complete, " + completed.get() + " queries cached and " + failed.get() + " failed in " + ((endTime - startTime)/1000.0) +
+					" seconds");
+		}, "cache-warm-up");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Whether the service is ready for traffic, as far as the warm-up is concerned
+	 * @return true if the warm-up has finished (or is disabled)
+	 */
+	public boolean isReady() {
+		return state != State.RUNNING;
+	}
+
+	/**
+	 * Get the number of queries to execute
+	 * @return the count
+	 */
+	public int getTotal() {
+		return queries.size();
+	}
+
+	public int getCompleted() {
+		return completed.get();
+	}
+
+	public int getFailed() {
+		return failed.get();
+	}
+
+}
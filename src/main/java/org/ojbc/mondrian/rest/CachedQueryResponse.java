@@ -0,0 +1,172 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.ojbc.mondrian.CellSetWrapperType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A query result as held in the query cache.  Depending on the configured {@link Format}, this is either the result object itself (which is serialized
+ * for each response) or the final, compact json bytes of the response, optionally compressed, which are written to the response as-is.  Each response carries
+ * an estimate of the heap it occupies, by which the query cache can be bounded in bytes rather than entries.
+ *
+ */
+@Getter
+@AllArgsConstructor(access=AccessLevel.PRIVATE)
+public final class CachedQueryResponse implements Serializable {
+
+	private static final long serialVersionUID = -6181960422757213417L;
+
+	/**
+	 * The form in which query results are cached
+	 */
+	public static enum Format {
+
+		OBJECTS(null), JSON(null), GZIP("gzip"), DEFLATE("deflate");
+
+		private final String contentEncoding;
+
+		private Format(String contentEncoding) {
+			this.contentEncoding = contentEncoding;
+		}
+
+		/**
+		 * Parse a format name, case-insensitively
+		 * @param name the name (objects, json, gzip or deflate)
+		 * @return the format
+		 */
+		public static Format forName(String name) {
+			for (Format format : values()) {
+				if (format.name().equalsIgnoreCase(name.trim())) {
+					return format;
+				}
+			}
+			throw new IllegalArgumentException("Unknown query cache format " + name + ", must be one of objects, json, gzip or deflate");
+		}
+
+	}
+
+	// an array's header, and the response object itself
+	private static final int OVERHEAD_BYTES = 48;
+
+	private final CellSetWrapperType result;
+	private final byte[] body;
+	private final String contentEncoding;
+	private final long estimatedSize;
+
+	/**
+	 * Create the cached form of a query result
+	 * @param result the result
+	 * @param format the form in which to cache it
+	 * @param mapper the mapper used to serialize the result, for formats other than objects
+	 * @return the cached response
+	 * @throws IOException if serialization fails
+	 */
+	public static CachedQueryResponse create(CellSetWrapperType result, Format format, ObjectMapper mapper) throws IOException {
+		if (format == Format.OBJECTS) {
+			return new CachedQueryResponse(result, null, null, result.estimateSize() + OVERHEAD_BYTES);
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (OutputStream os = format == Format.GZIP ? new GZIPOutputStream(baos) : format == Format.DEFLATE ? new DeflaterOutputStream(baos) : baos) {
+			mapper.writeValue(os, result);
+		}
+		byte[] body = baos.toByteArray();
+		return new CachedQueryResponse(null, body, format.contentEncoding, body.length + OVERHEAD_BYTES);
+	}
+
+	/**
+	 * Get the approximate amount of heap this response occupies.  For serialized formats this is (close to) exact; for the objects format it is estimated
+	 * from the number of cells, positions and rows in the result.
+	 * @return the size in bytes
+	 */
+	public long getEstimatedSize() {
+		return estimatedSize;
+	}
+
+	/**
+	 * Whether this response holds serialized bytes rather than the result object
+	 * @return true if serialized
+	 */
+	public boolean isSerialized() {
+		return body != null;
+	}
+
+	/**
+	 * Get the serialized body without any content encoding, for clients that do not accept the encoding
+	 * @return the uncompressed json bytes
+	 * @throws IOException if the stored body cannot be decompressed
+	 */
+	public byte[] getUncompressedBody() throws IOException {
+		if (contentEncoding == null) {
+			return body;
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(body.length * 4);
+		try (InputStream is = "gzip".equals(contentEncoding) ? new GZIPInputStream(new ByteArrayInputStream(body)) : new InflaterInputStream(new ByteArrayInputStream(body))) {
+			byte[] buffer = new byte[8192];
+			int n = 0;
+			while ((n = is.read(buffer)) != -1) {
+				baos.write(buffer, 0, n);
+			}
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Whether a client accepts this response's content encoding
+	 * @param acceptEncodingHeader the value of the client's Accept-Encoding header (may be null)
+	 * @return true if the stored body can be sent as-is
+	 */
+	public boolean isAcceptedBy(String acceptEncodingHeader) {
+		if (contentEncoding == null) {
+			return true;
+		}
+		if (acceptEncodingHeader == null) {
+			return false;
+		}
+		for (String coding : acceptEncodingHeader.split(",")) {
+			String[] parts = coding.split(";");
+			String name = parts[0].trim();
+			if (name.equalsIgnoreCase(contentEncoding) || name.equals("*")) {
+				for (int i=1;i < parts.length;i++) {
+					String parameter = parts[i].trim();
+					if (parameter.startsWith("q=") && parameter.substring(2).trim().matches("0(\\.0*)?")) {
+						return false;
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
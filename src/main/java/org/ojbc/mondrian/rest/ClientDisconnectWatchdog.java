@@ -0,0 +1,145 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Notices clients that go away while their queries are still executing, so that the queries can be cancelled rather than run to completion for nobody.  A servlet
+ * container only finds out that a client has disconnected when it writes to it, so once a response has been waiting for a while the watchdog commits it (with
+ * status 200 and a json content type) and then periodically writes and flushes a space, which json parsers ignore; a write that fails means the client is gone.
+ * Responses that are ready before the first check are not affected.  Because a committed response can no longer change its status or headers, a request whose
+ * response has been committed this way reports any error in the body only.
+ *
+ */
+@Slf4j
+final class ClientDisconnectWatchdog {
+
+	private final ScheduledExecutorService executor;
+	private final long intervalMillis;
+
+	/**
+	 * Create a watchdog
+	 * @param intervalMillis how long a response waits before it is first checked, and how often it is checked after that
+	 */
+	ClientDisconnectWatchdog(long intervalMillis) {
+		if (intervalMillis <= 0) {
+			throw new IllegalArgumentException("The check interval must be positive");
+		}
+		this.intervalMillis = intervalMillis;
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "client-disconnect-watchdog");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Start watching a response.  The caller must stop the watch before it writes anything to the response itself.
+	 * @param response the response
+	 * @param onDisconnect what to do if the client has gone away (called at most once, on the watchdog's thread)
+	 * @return the watch
+	 */
+	Watch watch(HttpServletResponse response, Runnable onDisconnect) {
+		Watch ret = new Watch(response, onDisconnect);
+		ret.start(executor.scheduleWithFixedDelay(ret::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS));
+		return ret;
+	}
+
+	void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * The watch over one response
+	 */
+	static final class Watch {
+
+		/**
+		 * A watch that does nothing, for when the watchdog is disabled
+		 */
+		static final Watch NONE = new Watch(null, null);
+
+		private final HttpServletResponse response;
+		private final Runnable onDisconnect;
+		private ScheduledFuture<?> future;
+		private boolean stopped;
+		private boolean disconnected;
+
+		private Watch(HttpServletResponse response, Runnable onDisconnect) {
+			this.response = response;
+			this.onDisconnect = onDisconnect;
+		}
+
+		private synchronized void start(ScheduledFuture<?> future) {
+			this.future = future;
+			if (stopped) {
+				future.cancel(false);
+			}
+		}
+
+		private synchronized void check() {
+			if (stopped) {
+				return;
+			}
+			try {
+				if (!response.isCommitted()) {
+					response.setStatus(HttpStatus.OK.value());
+					response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+				}
+				response.getOutputStream().write(' ');
+				response.flushBuffer();
+			} catch (IOException e) {
+				log.info("Client went away before its response was ready: " + e.getMessage());
+				disconnected = true;
+				stop();
+				onDisconnect.run();
+			}
+		}
+
+		/**
+		 * Stop watching the response.  Once this returns, the watchdog will not write to the response again.
+		 */
+		synchronized void stop() {
+			stopped = true;
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+
+		/**
+		 * Whether the watchdog found that the client had gone away
+		 * @return true if it did
+		 */
+		synchronized boolean isDisconnected() {
+			return disconnected;
+		}
+
+	}
+
+}
@@ -0,0 +1,382 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Shares a fixed number of query execution slots fairly among tokens, so that a consumer submitting many queries at once cannot crowd out everyone else.  Each token
+ * has its own queue, and slots are handed out by deficit round-robin: on each visit a token is credited a quantum of execution time (in proportion to its weight),
+ * and its next query is admitted if the token's credit covers what its queries typically cost.  Tokens are charged the greater of that and what the query actually
+ * cost, so a token whose queries run long is admitted less often than one whose queries are quick, while a token that is alone on the server can use every slot.
+ * A query may also need something besides a slot (such as a permit on its connection); such a query passes a {@link Gate}, and is only admitted when the
+ * gate lets it through, so that queries held up elsewhere do not occupy slots that queries able to execute could use.  A token's queries that are held up are
+ * passed over in favour of its (and other tokens') queries that are not.  A token is forgotten once it has nothing executing or waiting, so a token that comes
+ * back starts over.  Queries are scheduled by the token their request was authorized with; queries without one (such as those authorized by SAML assertion with
+ * the default token strategy, which provides no token) are all scheduled as if they came from a single token.
+ *
+ */
+@Slf4j
+public final class FairQueryScheduler {
+
+	/**
+	 * A slot granted to a query, which must be handed back via {@link FairQueryScheduler#release(Ticket)} when the query finishes
+	 */
+	public static final class Ticket {
+		private final Flow flow;
+		private final Gate gate;
+		private boolean granted;
+		private SQLException failure;
+		private long blockedSince;
+		private long grantTime;
+		private long chargedMillis;
+		private Ticket(Flow flow, Gate gate) {
+			this.flow = flow;
+			this.gate = gate;
+		}
+	}
+
+	/**
+	 * What else a query needs before it may execute, taken (if available) at the moment the query would be admitted.  Gates are called with the scheduler
+	 * locked, so they must not wait.
+	 */
+	public interface Gate {
+
+		/**
+		 * Take what the query needs, if it is available now
+		 * @return true if it was taken, and the query may be admitted; false to leave the query waiting
+		 * @throws SQLException to turn the query away (it stops waiting, and the exception is thrown to the caller of acquire)
+		 */
+		boolean tryEnter() throws SQLException;
+
+	}
+
+	private static final class Flow {
+		private final String token;
+		private int weight;
+		private final Deque<Ticket> waiting = new ArrayDeque<>();
+		private int running;
+		private long deficitMillis;
+		private boolean credited;
+		private double averageCostMillis;
+		private Flow(String token, long initialCostMillis) {
+			this.token = token;
+			this.averageCostMillis = initialCostMillis;
+		}
+		private long estimatedCostMillis() {
+			return Math.max(1, Math.round(averageCostMillis));
+		}
+	}
+
+	private static final double COST_SMOOTHING = 0.2;
+
+	private final int slots;
+	private final long quantumMillis;
+	private final Map<String, Flow> flows = new HashMap<>();
+	private final Deque<Flow> activeFlows = new ArrayDeque<>();
+	private int availableSlots;
+	private boolean warnedOfMissingToken;
+
+	/**
+	 * Create a scheduler
+	 * @param slots the number of queries that may execute at once
+	 * @param quantumMillis the execution time credited to a token of weight 1 on each round
+	 */
+	public FairQueryScheduler(int slots, long quantumMillis) {
+		this.slots = slots;
+		this.availableSlots = slots;
+		this.quantumMillis = quantumMillis;
+	}
+
+	/**
+	 * Wait for a slot in which to execute a query
+	 * @param token the token submitting the query
+	 * @param weight the token's share of execution time, relative to a token of weight 1
+	 * @return the ticket for the slot
+	 * @throws SQLException if interrupted while waiting
+	 */
+	public Ticket acquire(String token, int weight) throws SQLException {
+		return acquire(token, weight, null, 0);
+	}
+
+	/**
+	 * Wait for a slot in which to execute a query that needs to pass a gate as well
+	 * @param token the token submitting the query
+	 * @param weight the token's share of execution time, relative to a token of weight 1
+	 * @param gate the gate the query must pass, or null if it needs nothing besides a slot
+	 * @param blockedTimeoutMillis how long the query may wait once its gate has first held it up, or 0 to wait indefinitely
+	 * @return the ticket for the slot, or null if the query was held up by its gate for longer than blockedTimeoutMillis
+	 * @throws SQLException if interrupted while waiting, or if the gate turned the query away
+	 */
+	public synchronized Ticket acquire(String token, int weight, Gate gate, long blockedTimeoutMillis) throws SQLException {
+
+		if (token == null && !warnedOfMissingToken) {
+			log.warn("Scheduling queries without a token, which share a single token's share of execution slots; with SAML authorization, set " +
+					"samlTokenStrategyBeanName to a strategy that identifies users");
+			warnedOfMissingToken = true;
+		}
+
+		// a token that has been idle starts over, rather than being held back for (or benefiting from) what it did before
+		Flow flow = flows.computeIfAbsent(token, t -> new Flow(t, quantumMillis));
+		flow.weight = Math.max(1, weight);
+
+		Ticket ticket = new Ticket(flow, gate);
+		if (flow.waiting.isEmpty()) {
+			activeFlows.addLast(flow);
+		}
+		flow.waiting.addLast(ticket);
+		dispatch();
+
+		while (!ticket.granted) {
+			if (ticket.failure != null) {
+				throw ticket.failure;
+			}
+			long waitMillis = 0;
+			if (ticket.blockedSince != 0 && blockedTimeoutMillis > 0) {
+				waitMillis = ticket.blockedSince + blockedTimeoutMillis - System.currentTimeMillis();
+				if (waitMillis <= 0) {
+					withdraw(ticket);
+					return null;
+				}
+			}
+			try {
+				wait(waitMillis);
+			} catch (InterruptedException e) {
+				if (ticket.granted) {
+					// whatever the gate took now belongs to the caller, so the caller gets the slot as well, and sees the interrupt afterwards
+					Thread.currentThread().interrupt();
+					break;
+				}
+				withdraw(ticket);
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting to execute a query for token " + token, e);
+			}
+		}
+
+		return ticket;
+
+	}
+
+	private void withdraw(Ticket ticket) {
+		Flow flow = ticket.flow;
+		flow.waiting.remove(ticket);
+		if (flow.waiting.isEmpty()) {
+			activeFlows.remove(flow);
+			flow.credited = false;
+			forgetIfIdle(flow);
+		}
+	}
+
+	private void forgetIfIdle(Flow flow) {
+		if (flow.running == 0 && flow.waiting.isEmpty()) {
+			flows.remove(flow.token);
+		}
+	}
+
+	/**
+	 * Hand back the slot held by a query that has finished, charging its token for any time the query took beyond what was expected
+	 * @param ticket the ticket returned by {@link #acquire(String, int)}
+	 */
+	public synchronized void release(Ticket ticket) {
+		Flow flow = ticket.flow;
+		long costMillis = System.currentTimeMillis() - ticket.grantTime;
+		// the expected cost was charged when the slot was granted; a query that overran it is charged the difference
+		flow.deficitMillis -= Math.max(0, costMillis - ticket.chargedMillis);
+		flow.averageCostMillis += COST_SMOOTHING * (costMillis - flow.averageCostMillis);
+		flow.running--;
+		availableSlots++;
+		forgetIfIdle(flow);
+		dispatch();
+	}
+
+	private void dispatch() {
+
+		boolean notify = false;
+		int unaffordable = 0;
+		int blocked = 0;
+
+		while (availableSlots > 0 && !activeFlows.isEmpty()) {
+			Flow flow = activeFlows.peekFirst();
+			if (!flow.credited) {
+				flow.deficitMillis += quantumMillis * flow.weight;
+				flow.credited = true;
+			}
+			long cost = flow.estimatedCostMillis();
+			if (flow.deficitMillis >= cost) {
+				Ticket ticket = pollAdmissible(flow);
+				// the token's waiters need to see whether their queries were admitted, turned away or held up
+				notify = true;
+				if (flow.waiting.isEmpty() && ticket == null) {
+					// every query the token had waiting was turned away
+					activeFlows.pollFirst();
+					flow.credited = false;
+					forgetIfIdle(flow);
+					continue;
+				}
+				if (ticket == null) {
+					// every query the token has waiting is held up by its gate; the token keeps its credit (without adding to it) until one can go
+					activeFlows.pollFirst();
+					activeFlows.addLast(flow);
+					if (++blocked + unaffordable >= activeFlows.size()) {
+						if (unaffordable == 0) {
+							break;
+						}
+						skipUnaffordableRounds();
+						unaffordable = 0;
+						blocked = 0;
+					}
+					continue;
+				}
+				ticket.granted = true;
+				ticket.grantTime = System.currentTimeMillis();
+				ticket.chargedMillis = cost;
+				flow.deficitMillis -= cost;
+				flow.running++;
+				availableSlots--;
+				unaffordable = 0;
+				blocked = 0;
+				if (flow.waiting.isEmpty()) {
+					activeFlows.pollFirst();
+					flow.credited = false;
+					// credit is not banked while a token has nothing waiting
+					flow.deficitMillis = Math.min(flow.deficitMillis, 0);
+				}
+			} else {
+				activeFlows.pollFirst();
+				flow.credited = false;
+				activeFlows.addLast(flow);
+				if (blocked + ++unaffordable >= activeFlows.size()) {
+					skipUnaffordableRounds();
+					unaffordable = 0;
+					blocked = 0;
+				}
+			}
+		}
+
+		if (notify) {
+			notifyAll();
+		}
+
+	}
+
+	/**
+	 * Take the first of a token's waiting queries that its gate lets through.  Queries that are held up stay where they are, and queries whose gates turn
+	 * them away are removed.
+	 * @return the query, or null if there is none
+	 */
+	private Ticket pollAdmissible(Flow flow) {
+		for (Iterator<Ticket> it = flow.waiting.iterator(); it.hasNext();) {
+			Ticket ticket = it.next();
+			boolean admissible = true;
+			if (ticket.gate != null) {
+				try {
+					admissible = ticket.gate.tryEnter();
+				} catch (SQLException e) {
+					ticket.failure = e;
+					it.remove();
+					continue;
+				}
+			}
+			if (admissible) {
+				it.remove();
+				return ticket;
+			}
+			if (ticket.blockedSince == 0) {
+				ticket.blockedSince = System.currentTimeMillis();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * When no waiting token can afford its next query, credit every token with the rounds it would take for the first of them to afford one, rather than
+	 * going round and round one quantum at a time
+	 */
+	private void skipUnaffordableRounds() {
+		long rounds = Long.MAX_VALUE;
+		for (Flow flow : activeFlows) {
+			long quantum = quantumMillis * flow.weight;
+			long shortfall = flow.estimatedCostMillis() - flow.deficitMillis;
+			// tokens that can afford a query but are held up by its gate do not count
+			if (shortfall > 0) {
+				rounds = Math.min(rounds, (shortfall + quantum - 1) / quantum);
+			}
+		}
+		// the next visit to each token credits one more round
+		rounds--;
+		if (rounds > 0) {
+			for (Flow flow : activeFlows) {
+				flow.deficitMillis += rounds * quantumMillis * flow.weight;
+			}
+			log.debug("Skipped " + rounds + " scheduling rounds in which no waiting token could afford a query");
+		}
+	}
+
+	/**
+	 * Get the number of queries that may execute at once
+	 * @return the number of slots
+	 */
+	public int getSlots() {
+		return slots;
+	}
+
+	/**
+	 * Get the number of queries currently executing
+	 * @return the count
+	 */
+	public synchronized int getRunningCount() {
+		return slots - availableSlots;
+	}
+
+	/**
+	 * Get the number of queries waiting for a slot
+	 * @return the count
+	 */
+	public synchronized int getWaitingCount() {
+		int ret = 0;
+		for (Flow flow : activeFlows) {
+			ret += flow.waiting.size();
+		}
+		return ret;
+	}
+
+	/**
+	 * Get the number of queries waiting for a slot on behalf of a token
+	 * @param token the token
+	 * @return the count
+	 */
+	public synchronized int getWaitingCount(String token) {
+		Flow flow = flows.get(token);
+		return flow == null ? 0 : flow.waiting.size();
+	}
+
+	/**
+	 * Get the number of tokens with queries executing or waiting
+	 * @return the count
+	 */
+	public synchronized int getTokenCount() {
+		return flows.size();
+	}
+
+}
@@ -18,27 +18,47 @@ package org.ojbc.mondrian.rest;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
 import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheEventListenerConfigurationBuilder;
 import org.ehcache.config.builders.CacheManagerBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.core.statistics.DefaultStatisticsService;
+import org.ehcache.event.EventType;
+import org.ojbc.mondrian.CellSetJsonWriter;
 import org.ojbc.mondrian.CellSetWrapper;
 import org.ojbc.mondrian.CellSetWrapperType;
 import org.ojbc.mondrian.CubeWrapper;
@@ -46,17 +66,27 @@ import org.ojbc.mondrian.DimensionWrapper;
 import org.ojbc.mondrian.LevelWrapper;
 import org.ojbc.mondrian.MemberWrapper;
 import org.ojbc.mondrian.MondrianConnectionFactory;
+import org.ojbc.mondrian.OlapConnectionPool;
+import org.ojbc.mondrian.QueryContext;
+import org.ojbc.mondrian.QueryProfile;
+import org.ojbc.mondrian.QueryBulkhead;
+import org.ojbc.mondrian.QueryRejectedException;
 import org.ojbc.mondrian.SchemaWrapper;
+import org.ojbc.mondrian.SqlStatistics;
 import org.ojbc.mondrian.TidyCellSetWrapper;
 import org.olap4j.CellSet;
+import org.olap4j.CellSetAxis;
 import org.olap4j.OlapConnection;
 import org.olap4j.OlapException;
 import org.olap4j.OlapStatement;
 import org.olap4j.metadata.Schema;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -65,9 +95,12 @@ import org.xml.sax.SAXException;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import mondrian.server.MondrianServerRegistry;
 
@@ -79,13 +112,36 @@ import mondrian.server.MondrianServerRegistry;
 @Slf4j
 public class MondrianRestController {
 	
+	private static final String CACHE_WARM_UP_TOKEN = "[Cache Warm-Up]";
+	private static final String SERVER_TIMING_HEADER = "Server-Timing";
+	
 	private MondrianConnectionFactory connectionFactory;
-	private Cache<Integer, CellSetWrapperType> queryCache;
+	private Cache<QueryCacheKey, CachedQueryResponse> queryCache;
+	private final QueryCacheStatistics queryCacheStatistics = new QueryCacheStatistics();
+	private final DefaultStatisticsService cacheStatisticsService = new DefaultStatisticsService();
+	// a rejection or cancellation of the executing query does not apply to the identical queries waiting for it, which try again instead
+	private final SingleFlight<QueryCacheKey, CachedQueryResponse> inFlightQueries =
+			new SingleFlight<>(t -> t instanceof QueryRejectedException || t instanceof QueryCancelledException);
+	private QueryJobRegistry queryJobRegistry;
+	private FairQueryScheduler queryScheduler;
+	private QueryCostModel queryCostModel;
+	private QueryLanes queryLanes;
+	private ExecutorService batchQueryExecutor;
+	private ClientDisconnectWatchdog clientDisconnectWatchdog;
+	private QueryLog queryLog;
+	private SlowQueryLog slowQueryLog;
+	private CacheWarmUp cacheWarmUp;
+	private final RunningQueryRegistry runningQueries = new RunningQueryRegistry();
+	private CachedQueryResponse.Format queryCacheFormat;
 	private Cache<Integer, SchemaWrapper> metadataCache;
+	private QueryMetrics queryMetrics;
 	
    	@Resource(name="${requestAuthorizerBeanName}")
 	private RequestAuthorizer requestAuthorizer;
    	
+	@Autowired
+	private MeterRegistry meterRegistry;
+   	
 	@Value("${removeDemoConnections}")
 	private boolean removeDemoConnections;
 	
@@ -98,9 +154,102 @@ public class MondrianRestController {
 	@Value("${cacheDiskLocation:/tmp}")
 	private String cacheDiskLocation;
 	
+	@Value("${queryExecutionSlots:#{null}}")
+	private Integer queryExecutionSlots;
+	
+	@Value("${fairSchedulingQuantumMillis:#{100}}")
+	private long fairSchedulingQuantumMillis;
+	
+	@Value("${fastLaneThreads:#{null}}")
+	private Integer fastLaneThreads;
+	
+	@Value("${slowLaneThreads:#{4}}")
+	private int slowLaneThreads;
+	
+	@Value("${fastLaneMaxMillis:#{2000}}")
+	private long fastLaneMaxMillis;
+	
+	@Value("${fastLaneMaxCells:#{100000}}")
+	private long fastLaneMaxCells;
+	
+	@Value("${unknownQueryLane:fast}")
+	private String unknownQueryLane;
+	
+	@Value("${queryLaneMaxQueued:#{100}}")
+	private int queryLaneMaxQueued;
+	
+	@Value("${queryLaneQueueTimeoutSeconds:#{60}}")
+	private int queryLaneQueueTimeoutSeconds;
+	
+	@Value("${queryCostHistoryEntries:#{10000}}")
+	private int queryCostHistoryEntries;
+	
+	@Value("${batchQueryThreads:#{8}}")
+	private int batchQueryThreads;
+	
+	@Value("${batchQueryMaxSize:#{100}}")
+	private int batchQueryMaxSize;
+	
+	@Value("${clientDisconnectCheckSeconds:#{10}}")
+	private int clientDisconnectCheckSeconds;
+	
+	@Value("${queryLogFile:#{null}}")
+	private String queryLogFile;
+	
+	@Value("${queryLogMaxEntries:#{1000}}")
+	private int queryLogMaxEntries;
+	
+	@Value("${slowQueryLogFile:#{null}}")
+	private String slowQueryLogFile;
+	
+	@Value("${slowQueryThresholdMillis:#{5000}}")
+	private long slowQueryThresholdMillis;
+	
+	@Value("${slowQueryLogMaxSizeMB:#{10}}")
+	private int slowQueryLogMaxSizeMB;
+	
+	@Value("${slowQueryLogMaxFiles:#{5}}")
+	private int slowQueryLogMaxFiles;
+	
+	@Value("${cacheWarmUpQueries:#{0}}")
+	private int cacheWarmUpQueries;
+	
+	@Value("${cacheWarmUpRankBy:frequency}")
+	private String cacheWarmUpRankBy;
+	
+	@Value("${cacheWarmUpThreads:#{2}}")
+	private int cacheWarmUpThreads;
+	
 	@Value("${queryCacheSizeEntries:#{500}}")
 	private int queryCacheSizeEntries;
 	
+	@Value("${queryCacheFormat:objects}")
+	private String queryCacheFormatName;
+	
+	@Value("${queryCacheMaxSizeMB:#{null}}")
+	private Integer queryCacheMaxSizeMB;
+	
+	@Value("${queryCacheOffHeapTierSize:#{null}}")
+	private Integer queryCacheOffHeapTierSize;
+	
+	@Value("${queryCacheDiskTierSize:#{null}}")
+	private Integer queryCacheDiskTierSize;
+	
+	@Value("${asyncQueryThreads:#{4}}")
+	private int asyncQueryThreads;
+	
+	@Value("${asyncQueryQueueSize:#{100}}")
+	private int asyncQueryQueueSize;
+	
+	@Value("${asyncQueryResultRetentionSeconds:#{600}}")
+	private int asyncQueryResultRetentionSeconds;
+	
+	@Value("${asyncQueryMaxRetainedResults:#{1000}}")
+	private int asyncQueryMaxRetainedResults;
+	
+	@Value("${asyncQueryMaxRetainedResultsMB:#{256}}")
+	private int asyncQueryMaxRetainedResultsMB;
+	
 	@Value("${metadataCacheHeapTierEntries:#{20}}")
 	private int metadataCacheHeapTierEntries;
 	
@@ -111,9 +260,39 @@ public class MondrianRestController {
 	public void init() throws Exception {
 		log.info("Initializing controller, Mondrian version is: " + MondrianServerRegistry.INSTANCE.getVersion().getVersionString());
 		log.info(queryTimeout == null ? "No query timeout specified" : ("Queries will time out after " + queryTimeout + " seconds"));
+		queryCacheFormat = CachedQueryResponse.Format.forName(queryCacheFormatName);
+		log.info("Query results will be cached as " + queryCacheFormat.name().toLowerCase());
 		connectionFactory = new MondrianConnectionFactory();
 		connectionFactory.init(removeDemoConnections);
 		initCache();
+		queryJobRegistry = new QueryJobRegistry(asyncQueryThreads, asyncQueryQueueSize, asyncQueryResultRetentionSeconds, asyncQueryMaxRetainedResults,
+				asyncQueryMaxRetainedResultsMB * 1024L * 1024L);
+		AtomicInteger batchQueryThreadCount = new AtomicInteger();
+		// when every thread is busy and the queue is full, the requesting thread executes the query itself rather than failing it
+		batchQueryExecutor = new ThreadPoolExecutor(batchQueryThreads, batchQueryThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(batchQueryMaxSize), r -> {
+			Thread t = new Thread(r, "batch-query-" + batchQueryThreadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		if (clientDisconnectCheckSeconds > 0) {
+			clientDisconnectWatchdog = new ClientDisconnectWatchdog(TimeUnit.SECONDS.toMillis(clientDisconnectCheckSeconds));
+		}
+		queryCostModel = new QueryCostModel(queryCostHistoryEntries);
+		if (fastLaneThreads != null) {
+			queryLanes = new QueryLanes(queryCostModel,
+					new MondrianConnectionFactory.QueryConcurrencySettings(fastLaneThreads, queryLaneMaxQueued, queryLaneQueueTimeoutSeconds, 5),
+					new MondrianConnectionFactory.QueryConcurrencySettings(slowLaneThreads, queryLaneMaxQueued, queryLaneQueueTimeoutSeconds, 5),
+					fastLaneMaxMillis, fastLaneMaxCells, QueryLanes.Lane.forName(unknownQueryLane));
+			log.info("Queries predicted to take up to " + fastLaneMaxMillis + " ms will execute in a fast lane of " + fastLaneThreads + " threads, others in a slow lane of " +
+					slowLaneThreads + " threads");
+		}
+		if (queryExecutionSlots != null) {
+			queryScheduler = new FairQueryScheduler(queryExecutionSlots, fairSchedulingQuantumMillis);
+			log.info("Queries will be scheduled fairly across tokens, with " + queryExecutionSlots + " executing at once");
+		}
+		initMetrics();
+		initQueryLog();
+		initSlowQueryLog();
 		log.info("Successfully registered request authorizer class " + requestAuthorizer.getClass().getName());
 		boolean pcm = false;
 		Set<String> connectionNames = null;
@@ -141,15 +320,22 @@ public class MondrianRestController {
 			for (String connectionName : connectionFactory.getConnections().keySet()) {
 				log.info("Pre-caching metadata for connection " + connectionName);
 				MondrianConnectionFactory.MondrianConnection connection = connectionFactory.getConnections().get(connectionName);
-				OlapConnection olapConnection = connection.getOlap4jConnection().unwrap(OlapConnection.class);
-				List<String> roles = olapConnection.getAvailableRoleNames();
+				OlapConnectionPool pool = connectionFactory.getOlapConnectionPool(connectionName, null);
+				OlapConnection olapConnection = pool.borrow();
+				List<String> roles = null;
+				try {
+					roles = olapConnection.getAvailableRoleNames();
+				} finally {
+					pool.release(olapConnection);
+				}
+				List<String> finalRoles = roles;
 				new Thread(new Runnable() {
 					@Override
 					public void run() {
 						try {
-							fetchMetadata(connectionName, null, connection);
-							for (String role : roles) {
-								fetchMetadata(connectionName, role, connection);
+							fetchMetadata(connectionName, null, connection, new QueryTimings());
+							for (String role : finalRoles) {
+								fetchMetadata(connectionName, role, connection, new QueryTimings());
 							}
 						} catch(Exception e) {
 							throw new RuntimeException(e);
@@ -160,6 +346,22 @@ public class MondrianRestController {
 		}
 	}
 
+	@PreDestroy
+	public void destroy() {
+		queryJobRegistry.close();
+		batchQueryExecutor.shutdownNow();
+		if (clientDisconnectWatchdog != null) {
+			clientDisconnectWatchdog.close();
+		}
+		if (queryLog != null) {
+			queryLog.close();
+		}
+		if (slowQueryLog != null) {
+			slowQueryLog.close();
+		}
+		connectionFactory.close();
+	}
+
 	public void setRemoveDemoConnections(boolean removeDemoConnections) {
 		this.removeDemoConnections = removeDemoConnections;
 	}
@@ -208,12 +410,24 @@ public class MondrianRestController {
 	@RequestMapping(value="/flushCache", method=RequestMethod.GET)
 	public ResponseEntity<Void> flushCache() {
 		queryCache.clear();
+		queryCacheStatistics.clear();
 		log.info("Query cache flushed");
 		metadataCache.clear();
 		log.info("Metadata cache flushed");
 		return new ResponseEntity<Void>(HttpStatus.OK);
 	}
 	
+	/**
+	 * Readiness probe.  Sets HTTP status 503 until the query cache has been warmed up (if warm-up is configured), 200 after.
+	 * @return json string containing the progress of the query cache warm-up
+	 * @throws Exception
+	 */
+	@RequestMapping(value="/ready", method=RequestMethod.GET, produces="application/json")
+	public ResponseEntity<String> ready() throws Exception {
+		return new ResponseEntity<String>(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(cacheWarmUp),
+				cacheWarmUp.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE);
+	}
+	
 	@RequestMapping(value="/getMetadata", method=RequestMethod.GET, produces="application/json")
 	public ResponseEntity<String> getMetadata(String connectionName, HttpServletRequest request) throws Exception {
 		SchemaWrapperBodyTransformer schemaWrapperBodyTransformer = schemaWrapper -> new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(schemaWrapper);
@@ -238,14 +452,22 @@ public class MondrianRestController {
 	
 	/**
 	 * Submit the specified MDX query to the specified Mondrian connection.  Sets HTTP Status of 500 if the specified connection does not exist or if the query syntax is invalid.
+	 * If the request specifies stream=true (and is not tidy), a result that is not already cached is written directly to the response as it is read from the
+	 * cell set, rather than being built into a wrapper object first; such results are not added to the query cache.  When the query cache holds serialized
+	 * results (queryCacheFormat of json, gzip or deflate), the cached bytes are written directly to the response, compressed if the client accepts it.
+	 * Identical queries that arrive while one is executing share its result rather than executing again.  A query whose client disconnects while it executes is
+	 * cancelled (see {@link ClientDisconnectWatchdog}).
+	 * If the connection limits concurrent queries and too many are already executing and waiting, sets HTTP status 503 with a Retry-After header.
 	 * @param queryRequest the query request (specifies the connection, by name, and the MDX query string)
-	 * @return json string containing the resulting CellSet, or null if no results
+	 * @return json string containing the resulting CellSet, or null if no results (or if the result was streamed)
 	 * @throws Exception
 	 */
 	@RequestMapping(value="/query", method=RequestMethod.POST, produces="application/json", consumes="application/json")
-	public ResponseEntity<String> query(@RequestBody QueryRequest queryRequest, HttpServletRequest request) throws Exception {
+	public ResponseEntity<String> query(@RequestBody QueryRequest queryRequest, HttpServletRequest request, HttpServletResponse response) throws Exception {
 		
+		QueryTimings timings = new QueryTimings();
 		RequestAuthorizer.RequestAuthorizationStatus authorizationStatus = requestAuthorizer.authorizeRequest(request, queryRequest.getConnectionName());
+		timings.mark(QueryTimings.Phase.AUTHORIZATION);
 		
 		if (authorizationStatus.authorized) {
 
@@ -257,18 +479,22 @@ public class MondrianRestController {
 
 			String connectionName = queryRequest.getConnectionName();
 
-			Map<String, String> levelNameTranslationMap = null;
 			QueryRequest.TidyConfig tidyConfig = queryRequest.getTidy();
 			if (tidyConfig != null) {
 				tidy = tidyConfig.isEnabled();
 				simplifyNames = tidyConfig.isSimplifyNames();
-				levelNameTranslationMap = tidyConfig.getLevelNameTranslationMap();
 				if (simplifyNames && !tidy) {
 					log.warn(
 							"Request for simplification of names, but tidy is false.  No simplification is performed on raw CellSetWrappers.");
 				}
 			}
 
+			boolean stream = queryRequest.isStream();
+			if (stream && tidy) {
+				log.debug("Streaming is not supported for tidy results, result will be built before it is written");
+				stream = false;
+			}
+
 			MondrianConnectionFactory.MondrianConnection connection = connectionFactory.getConnections()
 					.get(connectionName);
 			ObjectMapper mapper = new ObjectMapper();
@@ -286,58 +512,58 @@ public class MondrianRestController {
 				String mondrianRoleName = authorizationStatus.mondrianRole;
 				queryRequest.setMondrianRole(mondrianRoleName);
 
-				log.info("Token " + authorizationStatus.token + " with role " + mondrianRoleName +
-						" executing query on connection " + connectionName + " with tidy=" + tidy + ": " + query);
-
-				CellSetWrapperType outputObject = null;
-				boolean querySucceeded = false;
-
-				int cacheKey = queryRequest.getCacheKey();
-
-				if (queryCache.containsKey(cacheKey)) {
+				if (log.isDebugEnabled()) {
+					log.debug("Token " + authorizationStatus.token + " with role " + mondrianRoleName +
+							" executing query on connection " + connectionName + " with tidy=" + tidy + ": " + query);
+				}
 
-					outputObject = queryCache.get(cacheKey);
-					responseHeaders.add("mondrian-rest-cached-result", "true");
-					log.info("Retrieved query result from cache");
-					querySucceeded = true;
+				ClientDisconnectWatchdog.Watch watch = watchClient(response, timings);
+				try {
 
-				} else {
+					if (queryRequest.isProfile()) {
+						body = executeProfiledQuery(queryRequest, authorizationStatus, timings, mapper);
+						watch.stop();
+						responseHeaders.set(SERVER_TIMING_HEADER, timings.getServerTiming());
+						return new ResponseEntity<String>(body, responseHeaders, status);
+					}
 
-					OlapConnection olapConnection = connection.getOlap4jConnection().unwrap(OlapConnection.class);
-					try {
-						if (mondrianRoleName != null) {
-							olapConnection.setRoleName(mondrianRoleName);
-						}
-						OlapStatement statement = olapConnection.createStatement();
-						if (queryTimeout != null) {
-							statement.setQueryTimeout(queryTimeout);
-						}
-						try {
-							CellSet cellSet = statement.executeOlapQuery(query);
-							log.debug("Query succeeded");
-							if (tidy) {
-								TidyCellSetWrapper tcc = new TidyCellSetWrapper();
-								tcc.init(cellSet, simplifyNames, levelNameTranslationMap);
-								outputObject = tcc;
-							} else {
-								outputObject = new CellSetWrapper(cellSet);
-							}
-							queryCache.put(cacheKey, outputObject);
-							querySucceeded = true;
-						} catch (OlapException oe) {
-							body = createOlapExceptionBody(oe, "processing query");
-							status = HttpStatus.valueOf(500);
-						} finally {
-							statement.close();
-						}
-					} finally {
-						olapConnection.close();
+					boolean cached = queryCache.containsKey(queryRequest.getCacheKey());
+					if (stream && !cached) {
+						timings.mark(QueryTimings.Phase.CACHE_LOOKUP);
+						responseHeaders.set(SERVER_TIMING_HEADER, timings.getServerTiming());
+						executeOlapQuery(connectionName, mondrianRoleName, authorizationStatus.token, authorizationStatus.schedulingWeight, query, timings, null, cellSet -> {
+							watch.stop();
+							timings.setResponseBytes(writeStreamingResponse(cellSet, responseHeaders, response));
+							timings.mark(QueryTimings.Phase.SERIALIZATION);
+							return null;
+						});
+						logQuery(queryRequest, authorizationStatus.token, timings.getTotalMillis());
+						return null;
 					}
 
-				}
+					CachedQueryResponse cachedResponse = getQueryResponse(queryRequest, authorizationStatus.token, authorizationStatus.schedulingWeight, responseHeaders, timings);
+					watch.stop();
+					if (cachedResponse.isSerialized()) {
+						responseHeaders.set(SERVER_TIMING_HEADER, timings.getServerTiming());
+						timings.setResponseBytes(writeSerializedResponse(cachedResponse, request, responseHeaders, response));
+						timings.mark(QueryTimings.Phase.SERIALIZATION);
+						return null;
+					}
+					body = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(cachedResponse.getResult());
+					timings.setResponseBytes(getUtf8Length(body));
+					timings.mark(QueryTimings.Phase.SERIALIZATION);
+					responseHeaders.set(SERVER_TIMING_HEADER, timings.getServerTiming());
 
-				if (querySucceeded) {
-					body = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(outputObject);
+				} catch (OlapException oe) {
+					body = createOlapExceptionBody(oe, "processing query");
+					status = HttpStatus.valueOf(500);
+				} catch (QueryRejectedException qre) {
+					body = createQueryRejectedBody(qre);
+					status = HttpStatus.SERVICE_UNAVAILABLE;
+					responseHeaders.set(HttpHeaders.RETRY_AFTER, String.valueOf(qre.getRetryAfterSeconds()));
+				} finally {
+					watch.stop();
+					recordQuery(connectionName, mondrianRoleName, authorizationStatus.token, query, timings);
 				}
 
 			}
@@ -353,9 +579,726 @@ public class MondrianRestController {
 		
 	}
 
+	/**
+	 * Execute a query with profiling enabled, bypassing the query cache (and not sharing execution with identical queries), so that the profile describes an
+	 * actual execution.  The result is not cached.
+	 * @return the result, with the profile added to it as the "profile" property
+	 */
+	private String executeProfiledQuery(QueryRequest queryRequest, RequestAuthorizer.RequestAuthorizationStatus authorizationStatus, QueryTimings timings,
+			ObjectMapper mapper) throws Exception {
+		QueryProfile profile = new QueryProfile();
+		CellSetWrapperType wrapper = executeOlapQuery(queryRequest.getConnectionName(), queryRequest.getMondrianRole(), authorizationStatus.token,
+				authorizationStatus.schedulingWeight, queryRequest.getQuery(), timings, profile, cellSet -> {
+					CellSetWrapperType ret = wrapCellSet(cellSet, queryRequest.getTidy());
+					timings.mark(QueryTimings.Phase.RESULT_CONSTRUCTION);
+					return ret;
+				});
+		ObjectNode result = mapper.valueToTree(wrapper);
+		ObjectNode profileNode = mapper.valueToTree(profile);
+		profileNode.set("phases", mapper.valueToTree(timings.getPhaseMillis()));
+		result.set("profile", profileNode);
+		String body = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(result);
+		timings.setResponseBytes(getUtf8Length(body));
+		timings.mark(QueryTimings.Phase.SERIALIZATION);
+		return body;
+	}
+
+	/**
+	 * Submit several MDX queries at once.  The queries are executed in parallel (those whose results are cached are served from the cache), each authorized as if it
+	 * had been submitted to /query, though authorization is checked only once per connection.  The response is an array with an element for each query, in request
+	 * order, containing its HTTP status, execution time, whether its result came from the cache or from an identical query executing at the same time, and its result
+	 * (or, if it failed, the error /query would have returned).  Each element is written as soon as its query and the queries before it have finished, and a
+	 * failed query does not fail the others.  An element that is null, or that sets stream or profile (neither of which is supported for batched queries), gets
+	 * status 400 without being executed.
+	 * Sets HTTP status 400 if the batch contains more than batchQueryMaxSize queries.
+	 * @param queryRequests the query requests
+	 * @return null (the response is written directly), or a json string containing the error if the batch is too large
+	 * @throws Exception
+	 */
+	@RequestMapping(value="/queryBatch", method=RequestMethod.POST, produces="application/json", consumes="application/json")
+	public ResponseEntity<String> queryBatch(@RequestBody List<QueryRequest> queryRequests, HttpServletRequest request, HttpServletResponse response) throws Exception {
+
+		if (queryRequests.size() > batchQueryMaxSize) {
+			return new ResponseEntity<String>("{\"message\" : \"Batch contains " + queryRequests.size() + " queries, the maximum is " + batchQueryMaxSize + "\"}",
+					HttpStatus.BAD_REQUEST);
+		}
+
+		ObjectMapper mapper = new ObjectMapper();
+		Map<String, RequestAuthorizer.RequestAuthorizationStatus> authorizations = new HashMap<>();
+		List<Future<BatchQueryResult>> results = new ArrayList<>();
+		List<QueryTimings> timings = new ArrayList<>();
+
+		for (QueryRequest queryRequest : queryRequests) {
+			QueryTimings queryTimings = new QueryTimings();
+			timings.add(queryTimings);
+			String invalidMessage = getInvalidBatchQueryMessage(queryRequest);
+			if (invalidMessage != null) {
+				log.warn(invalidMessage);
+				BatchQueryResult invalid = new BatchQueryResult();
+				invalid.status = HttpStatus.BAD_REQUEST;
+				invalid.errorBody = mapper.writeValueAsString(Collections.singletonMap("message", invalidMessage));
+				results.add(CompletableFuture.completedFuture(invalid));
+				continue;
+			}
+			String connectionName = queryRequest.getConnectionName();
+			if (!authorizations.containsKey(connectionName)) {
+				authorizations.put(connectionName, requestAuthorizer.authorizeRequest(request, connectionName));
+			}
+			RequestAuthorizer.RequestAuthorizationStatus authorizationStatus = authorizations.get(connectionName);
+			results.add(batchQueryExecutor.submit(() -> executeBatchQuery(queryRequest, authorizationStatus, queryTimings)));
+		}
+
+		log.info("Executing batch of " + queryRequests.size() + " queries");
+
+		response.setStatus(HttpStatus.OK.value());
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		boolean written = false;
+		try (JsonGenerator generator = mapper.getFactory().createGenerator(response.getOutputStream())) {
+			generator.useDefaultPrettyPrinter();
+			generator.writeStartArray();
+			for (int i = 0; i < results.size(); i++) {
+				BatchQueryResult result = awaitBatchQueryResult(results.get(i), generator);
+				generator.writeStartObject();
+				generator.writeNumberField("index", i);
+				generator.writeStringField("connectionName", queryRequests.get(i) == null ? null : queryRequests.get(i).getConnectionName());
+				generator.writeNumberField("status", result.status.value());
+				generator.writeNumberField("elapsedMillis", result.elapsedMillis);
+				generator.writeBooleanField("cached", result.cached);
+				generator.writeBooleanField("coalesced", result.coalesced);
+				if (result.response != null) {
+					generator.writeFieldName("result");
+					if (result.response.isSerialized()) {
+						generator.writeRawValue(new String(result.response.getUncompressedBody(), StandardCharsets.UTF_8));
+					} else {
+						generator.writeObject(result.response.getResult());
+					}
+				} else if (result.errorBody != null) {
+					generator.writeFieldName("error");
+					generator.writeRawValue(result.errorBody);
+				}
+				generator.writeEndObject();
+				generator.flush();
+			}
+			generator.writeEndArray();
+			written = true;
+		} finally {
+			// if the client went away, don't bother executing queries that have not started yet, and cancel those that are executing
+			results.forEach(result -> result.cancel(false));
+			if (!written) {
+				timings.forEach(QueryTimings::abandon);
+			}
+		}
+
+		return null;
+
+	}
+
+	private static String getInvalidBatchQueryMessage(QueryRequest queryRequest) {
+		if (queryRequest == null) {
+			return "Batch element is not a query";
+		}
+		if (queryRequest.isStream()) {
+			return "Streaming (stream) is not supported for batched queries";
+		}
+		if (queryRequest.isProfile()) {
+			return "Profiling (profile) is not supported for batched queries";
+		}
+		return null;
+	}
+
+	/**
+	 * Wait for a batched query to finish.  While waiting, a space is written to the response every clientDisconnectCheckSeconds, so that a client that has gone
+	 * away is noticed (as an IOException) rather than the batch executing to completion for nobody; see {@link ClientDisconnectWatchdog}.
+	 */
+	private BatchQueryResult awaitBatchQueryResult(Future<BatchQueryResult> result, JsonGenerator generator) throws Exception {
+		if (clientDisconnectCheckSeconds <= 0) {
+			return result.get();
+		}
+		while (true) {
+			try {
+				return result.get(clientDisconnectCheckSeconds, TimeUnit.SECONDS);
+			} catch (TimeoutException te) {
+				generator.writeRaw(' ');
+				generator.flush();
+			}
+		}
+	}
+
+	private BatchQueryResult executeBatchQuery(QueryRequest queryRequest, RequestAuthorizer.RequestAuthorizationStatus authorizationStatus, QueryTimings timings) {
+
+		BatchQueryResult ret = new BatchQueryResult();
+		long start = System.currentTimeMillis();
+		String connectionName = queryRequest.getConnectionName();
+
+		try {
+			if (!authorizationStatus.authorized) {
+				log.warn(authorizationStatus.message);
+				ret.status = HttpStatus.FORBIDDEN;
+			} else if (!connectionFactory.getConnections().containsKey(connectionName)) {
+				String missingConnectionErrorMessage = "Query submitted for connection that does not exist: " + connectionName;
+				log.warn(missingConnectionErrorMessage);
+				ret.status = HttpStatus.NOT_FOUND;
+				ret.errorBody = new ObjectMapper().writeValueAsString(Collections.singletonMap("message", missingConnectionErrorMessage));
+			} else {
+				queryRequest.setMondrianRole(authorizationStatus.mondrianRole);
+				log.debug("Token " + authorizationStatus.token + " with role " + authorizationStatus.mondrianRole + " executing batched query on connection " +
+						connectionName + ": " + queryRequest.getQuery());
+				HttpHeaders responseHeaders = new HttpHeaders();
+				try {
+					ret.response = getQueryResponse(queryRequest, authorizationStatus.token, authorizationStatus.schedulingWeight, responseHeaders, timings);
+				} finally {
+					recordQuery(connectionName, queryRequest.getMondrianRole(), authorizationStatus.token, queryRequest.getQuery(), timings);
+				}
+				ret.cached = responseHeaders.containsKey("mondrian-rest-cached-result");
+				ret.coalesced = responseHeaders.containsKey("mondrian-rest-coalesced-result");
+				ret.status = HttpStatus.OK;
+			}
+		} catch (Exception e) {
+			try {
+				if (e instanceof OlapException) {
+					ret.status = HttpStatus.INTERNAL_SERVER_ERROR;
+					ret.errorBody = createOlapExceptionBody((OlapException) e, "processing batched query");
+				} else if (e instanceof QueryRejectedException) {
+					ret.status = HttpStatus.SERVICE_UNAVAILABLE;
+					ret.errorBody = createQueryRejectedBody((QueryRejectedException) e);
+				} else {
+					log.warn("Batched query failed", e);
+					ret.status = HttpStatus.INTERNAL_SERVER_ERROR;
+					ret.errorBody = new ObjectMapper().writeValueAsString(Collections.singletonMap("message", e.getMessage()));
+				}
+			} catch (JsonProcessingException jpe) {
+				log.error("Unable to create error body for batched query", jpe);
+			}
+		}
+
+		ret.elapsedMillis = System.currentTimeMillis() - start;
+		return ret;
+
+	}
+
+	/**
+	 * Submit the specified MDX query for asynchronous execution.  The response (with status 202) contains the job's id and status, and its Location header is the url
+	 * of the job's status; poll that until the status is SUCCEEDED or FAILED, then fetch the result from /query/jobs/{id}/result.  Results are kept for
+	 * asyncQueryResultRetentionSeconds after the query finishes.  Sets HTTP status 503 if too many asynchronous queries are already waiting to execute.
+	 * @param queryRequest the query request (specifies the connection, by name, and the MDX query string)
+	 * @return json string containing the job's status
+	 * @throws Exception
+	 */
+	@RequestMapping(value="/query/async", method=RequestMethod.POST, produces="application/json", consumes="application/json")
+	public ResponseEntity<String> submitAsyncQuery(@RequestBody QueryRequest queryRequest, HttpServletRequest request) throws Exception {
+
+		String connectionName = queryRequest.getConnectionName();
+		RequestAuthorizer.RequestAuthorizationStatus authorizationStatus = requestAuthorizer.authorizeRequest(request, connectionName);
+
+		if (!authorizationStatus.authorized) {
+			log.warn(authorizationStatus.message);
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+
+		if (!connectionFactory.getConnections().containsKey(connectionName)) {
+			String missingConnectionErrorMessage = "Query submitted for connection that does not exist: " + connectionName;
+			log.warn(missingConnectionErrorMessage);
+			return new ResponseEntity<String>("{\"message\" : \"" + missingConnectionErrorMessage + "\"}", HttpStatus.NOT_FOUND);
+		}
+
+		queryRequest.setMondrianRole(authorizationStatus.mondrianRole);
+		QueryJob job = new QueryJob(queryRequest, authorizationStatus.token, authorizationStatus.schedulingWeight);
+
+		log.info("Token " + authorizationStatus.token + " with role " + authorizationStatus.mondrianRole +
+				" submitting asynchronous query " + job.getId() + " on connection " + connectionName + ": " + queryRequest.getQuery());
+
+		if (!queryJobRegistry.submit(job, this::runQueryJob)) {
+			log.warn("Asynchronous query rejected, too many queries are waiting to execute");
+			return new ResponseEntity<String>("{\"message\" : \"Too many asynchronous queries are waiting to execute\"}", HttpStatus.SERVICE_UNAVAILABLE);
+		}
+
+		HttpHeaders responseHeaders = new HttpHeaders();
+		responseHeaders.setLocation(URI.create(request.getContextPath() + "/query/jobs/" + job.getId()));
+		return new ResponseEntity<String>(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(job), responseHeaders, HttpStatus.ACCEPTED);
+
+	}
+
+	/**
+	 * Get the status of an asynchronous query job.  Sets HTTP status 404 if there is no such job (or its result has expired).
+	 * @param id the job's id
+	 * @return json string containing the job's status and elapsed execution time
+	 * @throws Exception
+	 */
+	@RequestMapping(value="/query/jobs/{id}", method=RequestMethod.GET, produces="application/json")
+	public ResponseEntity<String> getQueryJob(@PathVariable String id, HttpServletRequest request) throws Exception {
+		QueryJob job = queryJobRegistry.getJob(id);
+		HttpStatus accessStatus = checkQueryJobAccess(job, request);
+		if (accessStatus != HttpStatus.OK) {
+			return new ResponseEntity<>(accessStatus);
+		}
+		return new ResponseEntity<String>(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(job), HttpStatus.OK);
+	}
+
+	/**
+	 * Get the result of an asynchronous query job.  The result has the same form as the response from /query; it is written directly to the response.  If the
+	 * query is still executing, sets HTTP status 202 and returns the job's status; if the query failed, returns the error as /query would have.
+	 * @param id the job's id
+	 * @return json string containing the job's status or error, or null if the result was written to the response
+	 * @throws Exception
+	 */
+	@RequestMapping(value="/query/jobs/{id}/result", method=RequestMethod.GET, produces="application/json")
+	public ResponseEntity<String> getQueryJobResult(@PathVariable String id, HttpServletRequest request, HttpServletResponse response) throws Exception {
+		QueryJob job = queryJobRegistry.getJob(id);
+		HttpStatus accessStatus = checkQueryJobAccess(job, request);
+		if (accessStatus != HttpStatus.OK) {
+			return new ResponseEntity<>(accessStatus);
+		}
+		if (!job.isFinished()) {
+			return new ResponseEntity<String>(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(job), HttpStatus.ACCEPTED);
+		}
+		if (job.getStatus() == QueryJob.Status.FAILED) {
+			return new ResponseEntity<String>(job.getErrorBody(), HttpStatus.valueOf(job.getErrorStatus()));
+		}
+		CachedQueryResponse cachedResponse = job.getResult();
+		if (cachedResponse.isSerialized()) {
+			writeSerializedResponse(cachedResponse, request, new HttpHeaders(), response);
+		} else {
+			response.setStatus(HttpStatus.OK.value());
+			response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(response.getOutputStream(), cachedResponse.getResult());
+		}
+		return null;
+	}
+
+	private HttpStatus checkQueryJobAccess(QueryJob job, HttpServletRequest request) throws Exception {
+		if (job == null) {
+			return HttpStatus.NOT_FOUND;
+		}
+		RequestAuthorizer.RequestAuthorizationStatus authorizationStatus = requestAuthorizer.authorizeRequest(request, job.getConnectionName());
+		if (!authorizationStatus.authorized) {
+			log.warn(authorizationStatus.message);
+			return HttpStatus.FORBIDDEN;
+		}
+		if (!Objects.equals(authorizationStatus.mondrianRole, job.getMondrianRole())) {
+			log.warn("Token " + authorizationStatus.token + " with role " + authorizationStatus.mondrianRole + " attempted to access query job " + job.getId() +
+					" submitted with a different role");
+			return HttpStatus.FORBIDDEN;
+		}
+		return HttpStatus.OK;
+	}
+
+	private void runQueryJob(QueryJob job) {
+		try {
+			QueryTimings timings = new QueryTimings();
+			try {
+				job.succeed(getQueryResponse(job.getQueryRequest(), job.getToken(), job.getSchedulingWeight(), new HttpHeaders(), timings));
+			} finally {
+				recordQuery(job.getConnectionName(), job.getMondrianRole(), job.getToken(), job.getQueryRequest().getQuery(), timings);
+			}
+			log.info("Asynchronous query " + job.getId() + " finished in " + (job.getElapsedMillis()/1000.0) + " seconds");
+		} catch (Throwable e) {
+			// including Errors (such as running out of memory wrapping a huge result), which would otherwise leave the job running forever
+			String body = null;
+			try {
+				if (e instanceof OlapException) {
+					body = createOlapExceptionBody((OlapException) e, "processing asynchronous query " + job.getId());
+				} else if (e instanceof QueryRejectedException) {
+					job.fail(HttpStatus.SERVICE_UNAVAILABLE.value(), createQueryRejectedBody((QueryRejectedException) e));
+					return;
+				} else {
+					log.warn("Asynchronous query " + job.getId() + " failed", e);
+					body = new ObjectMapper().writeValueAsString(Collections.singletonMap("message", e.getMessage()));
+				}
+			} catch (JsonProcessingException jpe) {
+				log.error("Unable to create error body for asynchronous query " + job.getId(), jpe);
+			}
+			job.fail(500, body);
+		}
+	}
+
+	/**
+	 * List the queries that are currently executing, on connections for which the request has unrestricted access (that is, is authorized with no Mondrian role).
+	 * @return json string containing the running queries, longest-running first
+	 * @throws Exception
+	 */
+	@RequestMapping(value="/admin/runningQueries", method=RequestMethod.GET, produces="application/json")
+	public ResponseEntity<String> getRunningQueries(HttpServletRequest request) throws Exception {
+		List<RunningQuery> visibleQueries = new ArrayList<>();
+		for (RunningQuery runningQuery : runningQueries.getRunningQueries()) {
+			if (isQueryAdministrator(request, runningQuery.getConnectionName())) {
+				visibleQueries.add(runningQuery);
+			}
+		}
+		return new ResponseEntity<String>(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(visibleQueries), HttpStatus.OK);
+	}
+
+	/**
+	 * Cancel a running query.  The request must have unrestricted access to the query's connection.  Sets HTTP status 404 if no query with the id is running.
+	 * @param id the id of the query, as listed by /admin/runningQueries
+	 * @return json string containing the cancelled query
+	 * @throws Exception
+	 */
+	@RequestMapping(value="/admin/runningQueries/{id}/cancel", method=RequestMethod.POST, produces="application/json")
+	public ResponseEntity<String> cancelRunningQuery(@PathVariable long id, HttpServletRequest request) throws Exception {
+		RunningQuery runningQuery = runningQueries.getRunningQuery(id);
+		if (runningQuery == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		if (!isQueryAdministrator(request, runningQuery.getConnectionName())) {
+			log.warn("Request without unrestricted access to connection " + runningQuery.getConnectionName() + " attempted to cancel query " + id);
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		log.info("Cancelling query " + id + " on connection " + runningQuery.getConnectionName() + " after " + (runningQuery.getElapsedMillis()/1000.0) + " seconds");
+		runningQuery.cancel();
+		return new ResponseEntity<String>(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(runningQuery), HttpStatus.OK);
+	}
+
+	/**
+	 * Report the concurrency limits and usage of connections that limit concurrent queries (and for which the request has unrestricted access): the number of
+	 * queries executing and waiting, the number admitted and rejected since startup, and the average time admitted queries waited to execute.
+	 * @return json string containing the statistics for each connection
+	 * @throws Exception
+	 */
+	@RequestMapping(value="/admin/queryConcurrency", method=RequestMethod.GET, produces="application/json")
+	public ResponseEntity<String> getQueryConcurrency(HttpServletRequest request) throws Exception {
+		List<QueryBulkhead> visibleBulkheads = new ArrayList<>();
+		for (QueryBulkhead bulkhead : connectionFactory.getQueryBulkheads().values()) {
+			if (isQueryAdministrator(request, bulkhead.getName())) {
+				visibleBulkheads.add(bulkhead);
+			}
+		}
+		return new ResponseEntity<String>(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(visibleBulkheads), HttpStatus.OK);
+	}
+
+	/**
+	 * Report the SQL statements Mondrian has executed against the databases of connections that have a JdbcConnectionPool (and for which the request has
+	 * unrestricted access), grouped by fingerprint (the statement with its literal values replaced by placeholders) and ranked by the specified measure.  For
+	 * each fingerprint, the report gives the number of executions, the total time the database took to execute them and the total time spent reading their
+	 * results, the average and maximum time, the number of rows read, and the Mondrian roles and (most recent) id of the queries that caused them.
+	 * @param connectionName the connection to report (optional; all visible connections are reported if omitted)
+	 * @param orderBy the measure to rank by: totalTime (the default), executionTime, maxTime, count or rows
+	 * @param limit the number of fingerprints to report for each connection (default 20)
+	 * @return json string containing the statements, by connection
+	 * @throws Exception
+	 */
+	@RequestMapping(value="/admin/topSql", method=RequestMethod.GET, produces="application/json")
+	public ResponseEntity<String> getTopSql(String connectionName, String orderBy, Integer limit, HttpServletRequest request) throws Exception {
+		SqlStatistics.Ordering ordering;
+		try {
+			ordering = orderBy == null ? SqlStatistics.Ordering.TOTAL_TIME : SqlStatistics.Ordering.forName(orderBy);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<String>("{\"message\" : \"" + e.getMessage() + "\"}", HttpStatus.BAD_REQUEST);
+		}
+		Map<String, List<SqlStatistics.StatementStatistics>> ret = new TreeMap<>();
+		for (Map.Entry<String, SqlStatistics> entry : connectionFactory.getSqlStatistics().entrySet()) {
+			if ((connectionName == null || connectionName.equals(entry.getKey())) && isQueryAdministrator(request, entry.getKey())) {
+				ret.put(entry.getKey(), entry.getValue().getTopStatements(ordering, limit == null ? 20 : limit));
+			}
+		}
+		return new ResponseEntity<String>(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(ret), HttpStatus.OK);
+	}
+
+	/**
+	 * Report the statistics of the query and metadata caches: hits, misses, puts, removals and evictions, and the entries and bytes held in each tier.  For
+	 * connections for which the request has unrestricted access, also report the number of cached query results and the heap they are estimated to occupy,
+	 * and the largest and most frequently served results.  Sets HTTP status 403 if the request does not have unrestricted access to any connection.
+	 * @param limit the number of largest and most frequently served results to report (default 10)
+	 * @return json string containing the statistics
+	 * @throws Exception
+	 */
+	@RequestMapping(value="/admin/cacheStatistics", method=RequestMethod.GET, produces="application/json")
+	public ResponseEntity<String> getCacheStatistics(Integer limit, HttpServletRequest request) throws Exception {
+		Set<String> visibleConnections = new HashSet<>();
+		for (String connectionName : connectionFactory.getConnections().keySet()) {
+			if (isQueryAdministrator(request, connectionName)) {
+				visibleConnections.add(connectionName);
+			}
+		}
+		if (visibleConnections.isEmpty()) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		int entryLimit = limit == null ? 10 : limit;
+		ObjectMapper mapper = new ObjectMapper();
+		ObjectNode queryCacheNode = mapper.valueToTree(QueryCacheStatistics.CacheSummary.of(cacheStatisticsService.getCacheStatistics("query-cache")));
+		if (queryCacheMaxSizeMB != null) {
+			queryCacheNode.put("maxEstimatedSize", queryCacheMaxSizeMB * 1024L * 1024L);
+			queryCacheNode.put("estimatedSize", queryCacheStatistics.getEstimatedSize());
+			queryCacheNode.put("sizeEvictions", queryCacheStatistics.getSizeEvictionCount());
+		}
+		queryCacheNode.set("connections", mapper.valueToTree(queryCacheStatistics.getConnectionStatistics(visibleConnections::contains)));
+		queryCacheNode.set("largestEntries",
+				mapper.valueToTree(queryCacheStatistics.getTopEntries(QueryCacheStatistics.Ordering.SIZE, visibleConnections::contains, entryLimit)));
+		queryCacheNode.set("mostHitEntries",
+				mapper.valueToTree(queryCacheStatistics.getTopEntries(QueryCacheStatistics.Ordering.HITS, visibleConnections::contains, entryLimit)));
+		ObjectNode ret = mapper.createObjectNode();
+		ret.set("queryCache", queryCacheNode);
+		ret.set("metadataCache", mapper.valueToTree(QueryCacheStatistics.CacheSummary.of(cacheStatisticsService.getCacheStatistics("metadata-cache"))));
+		return new ResponseEntity<String>(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(ret), HttpStatus.OK);
+	}
+
+	private boolean isQueryAdministrator(HttpServletRequest request, String connectionName) throws Exception {
+		RequestAuthorizer.RequestAuthorizationStatus authorizationStatus = requestAuthorizer.authorizeRequest(request, connectionName);
+		return authorizationStatus.authorized && authorizationStatus.mondrianRole == null;
+	}
+
+	/**
+	 * Get the result of a query from the cache, or by executing it (sharing the execution of any identical query that is already running)
+	 */
+	private CachedQueryResponse getQueryResponse(QueryRequest queryRequest, String token, int schedulingWeight, HttpHeaders responseHeaders, QueryTimings timings) throws Exception {
+
+		QueryCacheKey cacheKey = queryRequest.getCacheKey();
+		CachedQueryResponse cachedResponse = queryCache.get(cacheKey);
+		timings.mark(QueryTimings.Phase.CACHE_LOOKUP);
+
+		if (cachedResponse != null) {
+			queryCacheStatistics.hit(cacheKey);
+			timings.setCached(true);
+			responseHeaders.add("mondrian-rest-cached-result", "true");
+			log.debug("Retrieved query result from cache");
+			logQuery(queryRequest, token, -1);
+			return cachedResponse;
+		}
+
+		long start = System.currentTimeMillis();
+		// identical queries that arrive while this one is executing wait for it, rather than executing it again
+		SingleFlight.Outcome<CachedQueryResponse> outcome;
+		try {
+			outcome = inFlightQueries.execute(cacheKey, queryTimeout == null ? 0 : TimeUnit.SECONDS.toMillis(queryTimeout), () -> {
+				CachedQueryResponse ret = queryCache.get(cacheKey);
+				if (ret == null) {
+					ret = executeOlapQuery(queryRequest.getConnectionName(), queryRequest.getMondrianRole(), token, schedulingWeight, queryRequest.getQuery(), timings, null,
+							cellSet -> {
+								CellSetWrapperType wrapper = wrapCellSet(cellSet, queryRequest.getTidy());
+								timings.mark(QueryTimings.Phase.RESULT_CONSTRUCTION);
+								CachedQueryResponse response = CachedQueryResponse.create(wrapper, queryCacheFormat, new ObjectMapper());
+								timings.mark(QueryTimings.Phase.SERIALIZATION);
+								return response;
+							});
+					cacheQueryResponse(queryRequest, ret);
+					timings.mark(QueryTimings.Phase.CACHE_LOOKUP);
+				}
+				return ret;
+			});
+		} catch (TimeoutException e) {
+			throw new OlapException("Query timeout of " + queryTimeout + " seconds reached while waiting for an identical query", e);
+		}
+		if (outcome.isCoalesced()) {
+			timings.mark(QueryTimings.Phase.COALESCED);
+			responseHeaders.add("mondrian-rest-coalesced-result", "true");
+			log.debug("Received query result from identical in-flight query (" + inFlightQueries.getCoalescedCount() + " coalesced since startup)");
+		}
+		logQuery(queryRequest, token, outcome.isCoalesced() ? -1 : System.currentTimeMillis() - start);
+		return outcome.getValue();
+
+	}
+
+	/**
+	 * Put a query result in the cache, then (if the cache is bounded in bytes) remove the least recently used results until the cache is within its bound.  A
+	 * result larger than the bound is not cached at all.
+	 */
+	private void cacheQueryResponse(QueryRequest queryRequest, CachedQueryResponse response) {
+		QueryCacheKey cacheKey = queryRequest.getCacheKey();
+		if (queryCacheMaxSizeMB == null) {
+			queryCache.put(cacheKey, response);
+			queryCacheStatistics.put(cacheKey, queryRequest, response);
+			return;
+		}
+		long maxSize = queryCacheMaxSizeMB * 1024L * 1024L;
+		if (response.getEstimatedSize() > maxSize) {
+			log.warn("Not caching query result of estimated size " + response.getEstimatedSize() + " bytes, which exceeds the query cache size of " +
+					queryCacheMaxSizeMB + " MB");
+			return;
+		}
+		queryCache.put(cacheKey, response);
+		queryCacheStatistics.put(cacheKey, queryRequest, response);
+		queryCacheStatistics.evict(maxSize, queryCache::remove);
+	}
+
+	/**
+	 * Record the timings of a query in the metrics, and (if it was slow) the slow query log
+	 */
+	private void recordQuery(String connectionName, String mondrianRole, String token, String query, QueryTimings timings) {
+		queryMetrics.recordQuery(connectionName, query, timings);
+		if (slowQueryLog != null) {
+			slowQueryLog.record(connectionName, mondrianRole, token, query, timings);
+		}
+	}
+
+	private void logQuery(QueryRequest queryRequest, String token, long durationMillis) {
+		// replayed queries were logged when they were first submitted
+		if (queryLog != null && !CACHE_WARM_UP_TOKEN.equals(token)) {
+			queryLog.append(queryRequest, durationMillis);
+		}
+	}
+
+	private <T> T executeOlapQuery(String connectionName, String mondrianRoleName, String token, int schedulingWeight, String query, QueryTimings timings,
+			QueryProfile profile, CellSetHandler<T> cellSetHandler) throws Exception {
+		RunningQuery runningQuery = runningQueries.register(connectionName, mondrianRoleName, token, query);
+		timings.setRunningQuery(runningQuery);
+		QueryBulkhead bulkhead = connectionFactory.getQueryBulkhead(connectionName);
+		QueryBulkhead laneBulkhead = null;
+		if (queryLanes != null) {
+			QueryLanes.Lane lane = queryLanes.route(connectionName, query);
+			runningQuery.setLane(lane);
+			laneBulkhead = queryLanes.getBulkhead(lane);
+		}
+		QueryAdmission admission = null;
+		try {
+			admission = QueryAdmission.acquire(queryScheduler, token, schedulingWeight, laneBulkhead, bulkhead);
+			timings.mark(QueryTimings.Phase.QUEUE);
+			runningQuery.setPhase(RunningQuery.Phase.WAITING_FOR_CONNECTION);
+			OlapConnectionPool pool = connectionFactory.getOlapConnectionPool(connectionName, mondrianRoleName);
+			OlapConnection olapConnection = pool.borrow();
+			// a connection whose query failed or was cancelled may be left in a bad state, so it is discarded rather than handed to the next borrower
+			boolean reusable = false;
+			try {
+				OlapStatement statement = olapConnection.createStatement();
+				if (profile == null && slowQueryLog != null) {
+					// capture the plan of queries that are expected to end up in the slow query log
+					QueryCostModel.QueryCost cost = queryCostModel.predict(connectionName, query);
+					if (cost != null && slowQueryLog.isSlow(cost.getDurationMillis())) {
+						profile = new QueryProfile();
+					}
+				}
+				// the SQL statements themselves are only of interest to the slow query log
+				QueryContext queryContext = new QueryContext(runningQuery.getId(), connectionName, mondrianRoleName, profile, slowQueryLog != null);
+				queryContext.attach(statement);
+				timings.setQueryContext(queryContext);
+				long executionStart = -1;
+				boolean costRecorded = false;
+				try {
+					if (queryTimeout != null) {
+						statement.setQueryTimeout(queryTimeout);
+					}
+					runningQuery.setStatement(statement);
+					runningQuery.setPhase(RunningQuery.Phase.EXECUTING);
+					timings.mark(QueryTimings.Phase.CONNECTION_ACQUISITION);
+					executionStart = System.currentTimeMillis();
+					CellSet cellSet;
+					try {
+						cellSet = statement.executeOlapQuery(query);
+					} catch (SQLException e) {
+						if (runningQuery.isCancelled() && !(e instanceof QueryCancelledException)) {
+							throw new QueryCancelledException("Query " + runningQuery.getId() + " was cancelled", e);
+						}
+						throw e;
+					}
+					log.debug("Query succeeded");
+					timings.mark(QueryTimings.Phase.EXECUTION);
+					timings.setCellCount(getCellCount(cellSet));
+					timings.setCubeName(cellSet.getMetaData().getCube().getName());
+					runningQuery.setPhase(RunningQuery.Phase.PROCESSING_RESULT);
+					T ret;
+					try {
+						ret = cellSetHandler.handleCellSet(cellSet);
+					} catch (IOException ioe) {
+						// most likely the client went away while the result was being written, so make sure Mondrian abandons any work still under way
+						log.info("Writing the result of query " + runningQuery.getId() + " failed, cancelling it: " + ioe.getMessage());
+						runningQuery.cancel();
+						throw ioe;
+					}
+					// SQL statements are only seen for connections whose JDBC connections the service provides
+					long sqlCount = connectionFactory.getSqlStatistics().containsKey(connectionName) ? queryContext.getSqlCount() : -1;
+					queryCostModel.record(connectionName, query, System.currentTimeMillis() - executionStart, timings.getCellCount(), sqlCount);
+					costRecorded = true;
+					reusable = !runningQuery.isCancelled();
+					return ret;
+				} finally {
+					if (executionStart >= 0 && !costRecorded) {
+						// a query that timed out, was cancelled or failed took at least this long, which is worth knowing when it is next routed to a lane
+						queryCostModel.recordIncomplete(connectionName, query, System.currentTimeMillis() - executionStart);
+					}
+					try {
+						statement.close();
+					} finally {
+						queryContext.detach();
+					}
+				}
+			} finally {
+				if (reusable) {
+					pool.release(olapConnection);
+				} else {
+					pool.invalidate(olapConnection);
+				}
+			}
+		} finally {
+			if (admission != null) {
+				admission.release();
+			}
+			timings.setRunningQuery(null);
+			runningQueries.unregister(runningQuery);
+		}
+	}
+
+	private static long getCellCount(CellSet cellSet) {
+		long ret = 1;
+		for (CellSetAxis axis : cellSet.getAxes()) {
+			ret *= axis.getPositionCount();
+		}
+		return ret;
+	}
+
+	private CellSetWrapperType wrapCellSet(CellSet cellSet, QueryRequest.TidyConfig tidyConfig) {
+		if (tidyConfig != null && tidyConfig.isEnabled()) {
+			TidyCellSetWrapper tcc = new TidyCellSetWrapper();
+			tcc.init(cellSet, tidyConfig.isSimplifyNames(), tidyConfig.getLevelNameTranslationMap());
+			return tcc;
+		}
+		return new CellSetWrapper(cellSet);
+	}
+
+	private ClientDisconnectWatchdog.Watch watchClient(HttpServletResponse response, QueryTimings timings) {
+		return clientDisconnectWatchdog == null ? ClientDisconnectWatchdog.Watch.NONE : clientDisconnectWatchdog.watch(response, timings::abandon);
+	}
+
+	private long writeStreamingResponse(CellSet cellSet, HttpHeaders responseHeaders, HttpServletResponse response) throws IOException {
+		response.setStatus(HttpStatus.OK.value());
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		responseHeaders.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+		CountingOutputStream out = new CountingOutputStream(response.getOutputStream());
+		try (JsonGenerator generator = new ObjectMapper().getFactory().createGenerator(out)) {
+			CellSetJsonWriter.write(cellSet, generator);
+		}
+		return out.getByteCount();
+	}
+
+	private long writeSerializedResponse(CachedQueryResponse cachedResponse, HttpServletRequest request, HttpHeaders responseHeaders, HttpServletResponse response) throws IOException {
+		response.setStatus(HttpStatus.OK.value());
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		responseHeaders.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+		byte[] body = cachedResponse.getBody();
+		if (cachedResponse.getContentEncoding() != null) {
+			response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			// a response that has already been committed (by the client disconnect watchdog) can no longer be given a Content-Encoding header
+			if (!response.isCommitted() && cachedResponse.isAcceptedBy(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+				response.setHeader(HttpHeaders.CONTENT_ENCODING, cachedResponse.getContentEncoding());
+			} else {
+				body = cachedResponse.getUncompressedBody();
+			}
+		}
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+		return body.length;
+	}
+
+	private static long getUtf8Length(String s) {
+		long ret = 0;
+		for (int i=0;i < s.length();i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				ret++;
+			} else if (c < 0x800) {
+				ret += 2;
+			} else if (Character.isHighSurrogate(c)) {
+				ret += 4;
+				i++;
+			} else {
+				ret += 3;
+			}
+		}
+		return ret;
+	}
+
 	private ResponseEntity<String> handleMetadataRequest(String connectionName, HttpServletRequest request, SchemaWrapperBodyTransformer schemaWrapperBodyTransformer) throws Exception, JsonProcessingException {
 		
+		QueryTimings timings = new QueryTimings();
 		RequestAuthorizer.RequestAuthorizationStatus authorizationStatus = requestAuthorizer.authorizeRequest(request, connectionName);
+		timings.mark(QueryTimings.Phase.AUTHORIZATION);
 		
 		if (authorizationStatus.authorized) {
 			
@@ -372,8 +1315,10 @@ public class MondrianRestController {
 				status = HttpStatus.NOT_FOUND;
 			} else {
 				try {
-					SchemaWrapper schemaWrapper = getCachedMetadata(connectionName, mondrianRole, responseHeaders, connection);
+					SchemaWrapper schemaWrapper = getCachedMetadata(connectionName, mondrianRole, responseHeaders, connection, timings);
 					body = schemaWrapperBodyTransformer.transformSchemaWrapper(schemaWrapper);
+					timings.setResponseBytes(getUtf8Length(body));
+					timings.mark(QueryTimings.Phase.SERIALIZATION);
 				} catch (OlapException oe) {
 					body = createOlapExceptionBody(oe, "retrieving metadata");
 					status = HttpStatus.valueOf(500);
@@ -382,6 +1327,8 @@ public class MondrianRestController {
 					bodyMap.put("message", e.getMessage());
 					body = new ObjectMapper().writeValueAsString(bodyMap);
 					status = HttpStatus.valueOf(500);
+				} finally {
+					queryMetrics.recordMetadata(connectionName, timings);
 				}
 			}
 
@@ -396,35 +1343,51 @@ public class MondrianRestController {
 		
 	}
 	
-	private SchemaWrapper getCachedMetadata(String connectionName, String mondrianRole, HttpHeaders responseHeaders, MondrianConnectionFactory.MondrianConnection connection) throws Exception {
+	private SchemaWrapper getCachedMetadata(String connectionName, String mondrianRole, HttpHeaders responseHeaders, MondrianConnectionFactory.MondrianConnection connection,
+			QueryTimings timings) throws Exception {
 		SchemaWrapper schemaWrapper = null;
 		int metadataCacheKey = getMetadataCacheKey(connectionName, mondrianRole);
 		if (metadataCache.containsKey(metadataCacheKey)) {
 			schemaWrapper = metadataCache.get(metadataCacheKey);
+			timings.mark(QueryTimings.Phase.CACHE_LOOKUP);
+			timings.setCached(true);
 			responseHeaders.add("mondrian-rest-cached-result", "true");
 		} else {
-			schemaWrapper = fetchMetadata(connectionName, mondrianRole, connection);
+			timings.mark(QueryTimings.Phase.CACHE_LOOKUP);
+			schemaWrapper = fetchMetadata(connectionName, mondrianRole, connection, timings);
 		}
 		return schemaWrapper;
 	}
 
-	private SchemaWrapper fetchMetadata(String connectionName, String mondrianRole, MondrianConnectionFactory.MondrianConnection connection) throws SQLException, OlapException, SAXException, IOException, ParserConfigurationException {
+	private SchemaWrapper fetchMetadata(String connectionName, String mondrianRole, MondrianConnectionFactory.MondrianConnection connection, QueryTimings timings)
+			throws SQLException, OlapException, SAXException, IOException, ParserConfigurationException {
 
 		long startTime = System.currentTimeMillis();
 		log.info("Fetching metadata for connection " + connectionName + " and role " + mondrianRole);
 
-		OlapConnection olapConnection = connection.getOlap4jConnection().unwrap(OlapConnection.class);
+		OlapConnectionPool pool = connectionFactory.getOlapConnectionPool(connectionName, mondrianRole);
+		OlapConnection olapConnection = pool.borrow();
+		timings.mark(QueryTimings.Phase.CONNECTION_ACQUISITION);
 
-		if (mondrianRole != null) {
-			olapConnection.setRoleName(mondrianRole);
+		SchemaWrapper schemaWrapper = null;
+		boolean reusable = false;
+		try {
+			Schema schema = olapConnection.getOlapSchema();
+			schemaWrapper = new SchemaWrapper(schema, connectionName, connection.getMondrianSchemaContentDocument());
+			reusable = true;
+		} finally {
+			if (reusable) {
+				pool.release(olapConnection);
+			} else {
+				pool.invalidate(olapConnection);
+			}
 		}
-
-		Schema schema = olapConnection.getOlapSchema();
-		SchemaWrapper schemaWrapper = new SchemaWrapper(schema, connectionName, connection.getMondrianSchemaContentDocument());
+		timings.mark(QueryTimings.Phase.RESULT_CONSTRUCTION);
 
 		int key = getMetadataCacheKey(connectionName, mondrianRole);
 
 		metadataCache.put(key, schemaWrapper);
+		timings.mark(QueryTimings.Phase.CACHE_LOOKUP);
 		
 		log.info("Metadata fetch for connection " + connectionName + " and role " + mondrianRole + " finished in " + ((System.currentTimeMillis() - startTime)/1000.0) + " seconds.");
 		
@@ -440,6 +1403,13 @@ public class MondrianRestController {
 		return key;
 	}
 	
+	private String createQueryRejectedBody(QueryRejectedException qre) throws JsonProcessingException {
+		Map<String, Object> errorBodyMap = new HashMap<>();
+		errorBodyMap.put("message", qre.getMessage());
+		errorBodyMap.put("retryAfterSeconds", qre.getRetryAfterSeconds());
+		return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(errorBodyMap);
+	}
+	
 	private String createOlapExceptionBody(OlapException oe, String exceptionContext) throws JsonProcessingException {
 		ObjectMapper exceptionObjectMapper = new ObjectMapper();
 		log.warn("OlapException occurred " + exceptionContext + ".  Stack trace follows (if debug logging).");
@@ -458,24 +1428,98 @@ public class MondrianRestController {
 		return exceptionObjectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(errorBodyMap);
 	}
 	
+	private void initMetrics() {
+		queryMetrics = new QueryMetrics(meterRegistry);
+		queryMetrics.registerQueryExecution(runningQueries, inFlightQueries, queryCostModel);
+		connectionFactory.getQueryBulkheads().values().forEach(queryMetrics::registerBulkhead);
+		if (queryLanes != null) {
+			for (QueryLanes.Lane lane : QueryLanes.Lane.values()) {
+				queryMetrics.registerBulkhead(queryLanes.getBulkhead(lane));
+			}
+		}
+		if (queryScheduler != null) {
+			queryMetrics.registerScheduler(queryScheduler);
+		}
+		queryMetrics.registerCache("query-cache", cacheStatisticsService.getCacheStatistics("query-cache"));
+		queryMetrics.registerCache("metadata-cache", cacheStatisticsService.getCacheStatistics("metadata-cache"));
+		queryMetrics.registerQueryCache(queryCacheStatistics);
+	}
+	
+	private void initQueryLog() throws IOException {
+		cacheWarmUp = CacheWarmUp.disabled();
+		if (queryLogFile == null) {
+			return;
+		}
+		queryLog = new QueryLog(new File(queryLogFile), queryLogMaxEntries);
+		log.info("Logging queries to " + queryLogFile);
+		if (cacheWarmUpQueries > 0) {
+			List<QueryRequest> queries = queryLog.getTopQueries(cacheWarmUpQueries, QueryLog.Ranking.forName(cacheWarmUpRankBy)).stream()
+				.filter(queryRequest -> connectionFactory.getConnections().containsKey(queryRequest.getConnectionName()))
+				.collect(Collectors.toList());
+			cacheWarmUp = new CacheWarmUp(queries, Math.max(1, cacheWarmUpThreads));
+			cacheWarmUp.start(queryRequest -> getQueryResponse(queryRequest, CACHE_WARM_UP_TOKEN, 1, new HttpHeaders(), new QueryTimings()));
+		}
+	}
+	
+	private void initSlowQueryLog() {
+		if (slowQueryLogFile == null) {
+			return;
+		}
+		slowQueryLog = new SlowQueryLog(new File(slowQueryLogFile), slowQueryThresholdMillis, slowQueryLogMaxSizeMB * 1024L * 1024L, slowQueryLogMaxFiles);
+		log.info("Logging queries that take at least " + slowQueryThresholdMillis + " ms to " + slowQueryLogFile);
+	}
+	
 	private void initCache() throws IOException {
 		File cacheDir = new File(cacheDiskLocation, "mondrian-rest-object-cache");
 		if (cacheDir.exists()) {
 			FileUtils.deleteDirectory(cacheDir);
 		}
+		if (queryCacheMaxSizeMB != null && (queryCacheOffHeapTierSize != null || queryCacheDiskTierSize != null)) {
+			// results in the off-heap and disk tiers are copies, which the estimate of the heap occupied by results does not account for
+			throw new IllegalArgumentException("queryCacheMaxSizeMB bounds the heap occupied by cached query results, and cannot be combined with " +
+					"queryCacheOffHeapTierSize or queryCacheDiskTierSize");
+		}
+		ResourcePoolsBuilder queryCachePools = ResourcePoolsBuilder.heap(queryCacheSizeEntries);
+		if (queryCacheOffHeapTierSize != null) {
+			queryCachePools = queryCachePools.offheap(queryCacheOffHeapTierSize, MemoryUnit.MB);
+		}
+		if (queryCacheDiskTierSize != null) {
+			queryCachePools = queryCachePools.disk(queryCacheDiskTierSize, MemoryUnit.MB);
+		}
+		log.info("Query cache will hold up to " + queryCacheSizeEntries + " results on heap" +
+				(queryCacheMaxSizeMB == null ? "" : (", and results of up to " + queryCacheMaxSizeMB + " MB (estimated) in total")) +
+				(queryCacheOffHeapTierSize == null ? "" : (", with an off-heap tier of " + queryCacheOffHeapTierSize + " MB")) +
+				(queryCacheDiskTierSize == null ? "" : (", with a disk tier of " + queryCacheDiskTierSize + " MB")));
 		CacheManager cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
 				.with(CacheManagerBuilder.persistence(cacheDir))
+				.using(cacheStatisticsService)
 				.withCache("query-cache",
-						CacheConfigurationBuilder.newCacheConfigurationBuilder(Integer.class, CellSetWrapperType.class, ResourcePoolsBuilder.heap(queryCacheSizeEntries)))
+						CacheConfigurationBuilder.newCacheConfigurationBuilder(QueryCacheKey.class, CachedQueryResponse.class, queryCachePools)
+								// synchronous, so that the statistics of an entry are forgotten before the same key can be cached again
+								.withService(CacheEventListenerConfigurationBuilder.newEventListenerConfiguration(queryCacheStatistics,
+										EventType.EVICTED, EventType.EXPIRED, EventType.REMOVED).synchronous().ordered()))
 				.withCache("metadata-cache",
 						CacheConfigurationBuilder.newCacheConfigurationBuilder(Integer.class, SchemaWrapper.class,
 								ResourcePoolsBuilder.heap(metadataCacheHeapTierEntries).disk(metadataCacheDiskTierSize, MemoryUnit.MB)))
 				.build();
 		cacheManager.init();
-		queryCache = cacheManager.getCache("query-cache", Integer.class, CellSetWrapperType.class);
+		queryCache = cacheManager.getCache("query-cache", QueryCacheKey.class, CachedQueryResponse.class);
 		metadataCache = cacheManager.getCache("metadata-cache", Integer.class, SchemaWrapper.class);
 	}
 	
+	private static final class BatchQueryResult {
+		private HttpStatus status;
+		private long elapsedMillis;
+		private boolean cached;
+		private boolean coalesced;
+		private CachedQueryResponse response;
+		private String errorBody;
+	}
+
+	private static interface CellSetHandler<T> {
+		public T handleCellSet(CellSet cellSet) throws Exception;
+	}
+
 	private static interface SchemaWrapperBodyTransformer {
 		public String transformSchemaWrapper(SchemaWrapper schemaWrapper) throws Exception;
 	}
@@ -0,0 +1,186 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.ojbc.mondrian.QueryBulkhead;
+
+/**
+ * The permission a query needs before it may execute: a slot from the fair scheduler, a place in its lane, and a place on its connection.  When queries are
+ * scheduled, the scheduler admits a query only once its lane and connection can take it as well, so that queries waiting for a busy connection do not hold
+ * slots (or lane places) that queries on other connections could be using, and so that the scheduler, rather than the first-come-first-served bulkheads,
+ * decides which token's query goes next.  Queries that are held up count as waiting in the queue of the bulkhead that held them up, and are rejected as they
+ * would have been had they waited there.  Without a scheduler, a query waits for its lane and then for its connection, so that a query waiting for its lane
+ * does not hold a connection permit that a query in the other lane could be using.
+ *
+ */
+final class QueryAdmission {
+
+	private final FairQueryScheduler scheduler;
+	private final FairQueryScheduler.Ticket ticket;
+	private final QueryBulkhead laneBulkhead;
+	private final QueryBulkhead connectionBulkhead;
+
+	private QueryAdmission(FairQueryScheduler scheduler, FairQueryScheduler.Ticket ticket, QueryBulkhead laneBulkhead, QueryBulkhead connectionBulkhead) {
+		this.scheduler = scheduler;
+		this.ticket = ticket;
+		this.laneBulkhead = laneBulkhead;
+		this.connectionBulkhead = connectionBulkhead;
+	}
+
+	/**
+	 * Wait for permission to execute a query.  Callers that are admitted must call {@link #release()} when the query finishes.
+	 * @param scheduler the fair scheduler, or null if queries are not scheduled
+	 * @param token the token submitting the query
+	 * @param schedulingWeight the token's scheduling weight
+	 * @param laneBulkhead the bulkhead of the query's lane, or null if queries are not separated into lanes
+	 * @param connectionBulkhead the bulkhead of the query's connection, or null if the connection has no concurrency limit
+	 * @return the admission
+	 * @throws org.ojbc.mondrian.QueryRejectedException if a bulkhead rejects the query
+	 * @throws SQLException if interrupted while waiting
+	 */
+	static QueryAdmission acquire(FairQueryScheduler scheduler, String token, int schedulingWeight, QueryBulkhead laneBulkhead,
+			QueryBulkhead connectionBulkhead) throws SQLException {
+		if (scheduler == null) {
+			acquireBulkheads(laneBulkhead, connectionBulkhead);
+			return new QueryAdmission(null, null, laneBulkhead, connectionBulkhead);
+		}
+		if (laneBulkhead == null && connectionBulkhead == null) {
+			return new QueryAdmission(scheduler, scheduler.acquire(token, schedulingWeight), null, null);
+		}
+		BulkheadGate gate = new BulkheadGate(laneBulkhead, connectionBulkhead);
+		FairQueryScheduler.Ticket ticket = null;
+		try {
+			ticket = scheduler.acquire(token, schedulingWeight, gate, gate.getTimeoutMillis());
+		} finally {
+			gate.leaveQueues(ticket != null);
+		}
+		if (ticket == null) {
+			throw gate.blockedBy.timedOut();
+		}
+		return new QueryAdmission(scheduler, ticket, laneBulkhead, connectionBulkhead);
+	}
+
+	private static void acquireBulkheads(QueryBulkhead laneBulkhead, QueryBulkhead connectionBulkhead) throws SQLException {
+		boolean laneAcquired = false;
+		boolean admitted = false;
+		try {
+			if (laneBulkhead != null) {
+				laneBulkhead.acquire();
+				laneAcquired = true;
+			}
+			if (connectionBulkhead != null) {
+				connectionBulkhead.acquire();
+			}
+			admitted = true;
+		} finally {
+			if (!admitted && laneAcquired) {
+				laneBulkhead.release();
+			}
+		}
+	}
+
+	/**
+	 * Hand back everything obtained by {@link #acquire(FairQueryScheduler, String, int, QueryBulkhead, QueryBulkhead)}
+	 */
+	void release() {
+		try {
+			if (connectionBulkhead != null) {
+				connectionBulkhead.release();
+			}
+			if (laneBulkhead != null) {
+				laneBulkhead.release();
+			}
+		} finally {
+			// the scheduler looks for queries to admit once the permits are back
+			if (ticket != null) {
+				scheduler.release(ticket);
+			}
+		}
+	}
+
+	/**
+	 * Lets a scheduled query through only when both its lane and its connection have a permit for it
+	 */
+	private static final class BulkheadGate implements FairQueryScheduler.Gate {
+
+		private final QueryBulkhead laneBulkhead;
+		private final QueryBulkhead connectionBulkhead;
+		private final List<QueryBulkhead> queued = new ArrayList<>();
+		private final long start = System.nanoTime();
+		private QueryBulkhead blockedBy;
+
+		private BulkheadGate(QueryBulkhead laneBulkhead, QueryBulkhead connectionBulkhead) {
+			this.laneBulkhead = laneBulkhead;
+			this.connectionBulkhead = connectionBulkhead;
+		}
+
+		@Override
+		public boolean tryEnter() throws SQLException {
+			// scheduled queries only take these permits here, with the scheduler locked, so permits that are available now can be taken
+			if (laneBulkhead != null && !laneBulkhead.isAvailable()) {
+				return hold(laneBulkhead);
+			}
+			if (connectionBulkhead != null && !connectionBulkhead.isAvailable()) {
+				return hold(connectionBulkhead);
+			}
+			if (laneBulkhead != null && !laneBulkhead.tryAcquire()) {
+				return hold(laneBulkhead);
+			}
+			if (connectionBulkhead != null && !connectionBulkhead.tryAcquire()) {
+				if (laneBulkhead != null) {
+					laneBulkhead.release();
+				}
+				return hold(connectionBulkhead);
+			}
+			return true;
+		}
+
+		private boolean hold(QueryBulkhead bulkhead) throws SQLException {
+			blockedBy = bulkhead;
+			if (!queued.contains(bulkhead)) {
+				bulkhead.joinQueue();
+				queued.add(bulkhead);
+			}
+			return false;
+		}
+
+		private long getTimeoutMillis() {
+			long ret = Long.MAX_VALUE;
+			for (QueryBulkhead bulkhead : Arrays.asList(laneBulkhead, connectionBulkhead)) {
+				if (bulkhead != null) {
+					ret = Math.min(ret, TimeUnit.SECONDS.toMillis(bulkhead.getQueueTimeoutSeconds()));
+				}
+			}
+			// a timeout of 0 would mean waiting indefinitely
+			return Math.max(1, ret);
+		}
+
+		private void leaveQueues(boolean admitted) {
+			for (QueryBulkhead bulkhead : queued) {
+				bulkhead.leaveQueue(System.nanoTime() - start, admitted);
+			}
+		}
+
+	}
+
+}
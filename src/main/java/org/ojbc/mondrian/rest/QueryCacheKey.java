@@ -0,0 +1,226 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Key for cached query results.  The key is built from a canonical form of everything that affects the result (connection, Mondrian role, tidy settings, and
+ * the MDX text with insignificant differences normalized away), and identified by the SHA-256 digest of that canonical form.  Equality also compares the
+ * canonical form itself, so a digest collision can never return another request's result.
+ *
+ */
+public final class QueryCacheKey implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Set<String> MDX_KEYWORDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			"AND", "AS", "AXIS", "CALCULATED", "CASE", "CELL", "CHAPTERS", "COLUMNS", "DIMENSION", "ELSE", "EMPTY", "END", "FROM", "IN", "IS", "MEMBER", "NON",
+			"NOT", "NULL", "ON", "OR", "PAGES", "PROPERTIES", "ROWS", "SECTIONS", "SELECT", "SET", "THEN", "WHEN", "WHERE", "WITH", "XOR")));
+
+	private static final String DELIMITERS = ",(){};";
+
+	private final String canonicalForm;
+	private final byte[] digest;
+	private final int hashCode;
+
+	QueryCacheKey(String canonicalForm) {
+		this.canonicalForm = canonicalForm;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(canonicalForm.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		hashCode = (digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16 | (digest[2] & 0xff) << 8 | (digest[3] & 0xff);
+	}
+
+	/**
+	 * Create the cache key for a query request.  The request's mondrianRole must already be set.
+	 * @param queryRequest the request
+	 * @return the key
+	 */
+	public static QueryCacheKey forRequest(QueryRequest queryRequest) {
+		StringBuilder sb = new StringBuilder();
+		appendField(sb, queryRequest.getConnectionName());
+		appendField(sb, queryRequest.getMondrianRole());
+		QueryRequest.TidyConfig tidy = queryRequest.getTidy();
+		if (tidy == null || !tidy.isEnabled()) {
+			appendField(sb, "raw");
+		} else if (!tidy.isSimplifyNames()) {
+			// the translation map is only applied when names are simplified
+			appendField(sb, "tidy");
+		} else {
+			appendField(sb, "tidy-simplified");
+			Map<String, String> levelNameTranslationMap = tidy.getLevelNameTranslationMap();
+			if (levelNameTranslationMap != null) {
+				for (Map.Entry<String, String> entry : new TreeMap<>(levelNameTranslationMap).entrySet()) {
+					appendField(sb, entry.getKey());
+					appendField(sb, entry.getValue());
+				}
+			}
+		}
+		appendField(sb, normalizeMdx(queryRequest.getQuery()));
+		return new QueryCacheKey(sb.toString());
+	}
+
+	private static void appendField(StringBuilder sb, String value) {
+		// length-prefixed, so that no combination of field values can produce the same canonical form as another
+		if (value == null) {
+			sb.append("-1:");
+		} else {
+			sb.append(value.length()).append(':').append(value);
+		}
+	}
+
+	/**
+	 * Normalize MDX text so that trivially different spellings of the same query produce the same text.  Comments are removed, whitespace is collapsed (and
+	 * removed entirely next to commas, parentheses, braces and semicolons), and keywords are upper-cased.  Bracketed identifiers and string literals are kept
+	 * exactly as written.
+	 * @param mdx the MDX text
+	 * @return the normalized text
+	 */
+	static String normalizeMdx(String mdx) {
+
+		if (mdx == null) {
+			return null;
+		}
+
+		StringBuilder sb = new StringBuilder(mdx.length());
+		boolean pendingSpace = false;
+		int n = mdx.length();
+		int i = 0;
+
+		while (i < n) {
+
+			char ch = mdx.charAt(i);
+
+			if (Character.isWhitespace(ch)) {
+				pendingSpace = true;
+				i++;
+				continue;
+			}
+
+			if ((ch == '-' || ch == '/') && i + 1 < n && mdx.charAt(i + 1) == ch) {
+				while (i < n && mdx.charAt(i) != '\n' && mdx.charAt(i) != '\r') {
+					i++;
+				}
+				pendingSpace = true;
+				continue;
+			}
+
+			if (ch == '/' && i + 1 < n && mdx.charAt(i + 1) == '*') {
+				int end = mdx.indexOf("*/", i + 2);
+				i = end == -1 ? n : end + 2;
+				pendingSpace = true;
+				continue;
+			}
+
+			if (pendingSpace && sb.length() > 0 && DELIMITERS.indexOf(sb.charAt(sb.length() - 1)) == -1 && DELIMITERS.indexOf(ch) == -1) {
+				sb.append(' ');
+			}
+			pendingSpace = false;
+
+			if (ch == '[' || ch == '"' || ch == '\'') {
+				// bracketed identifier or string literal, where the closing character is escaped by doubling it
+				char close = ch == '[' ? ']' : ch;
+				int start = i++;
+				while (i < n) {
+					if (mdx.charAt(i) == close) {
+						if (i + 1 < n && mdx.charAt(i + 1) == close) {
+							i += 2;
+							continue;
+						}
+						i++;
+						break;
+					}
+					i++;
+				}
+				sb.append(mdx, start, i);
+			} else if (Character.isLetter(ch) || ch == '_') {
+				int start = i;
+				while (i < n && (Character.isLetterOrDigit(mdx.charAt(i)) || mdx.charAt(i) == '_')) {
+					i++;
+				}
+				String word = mdx.substring(start, i);
+				String upper = word.toUpperCase();
+				// a word adjacent to a dot is part of a compound identifier, and is left alone even if it looks like a keyword
+				int previous = sb.length() - 1;
+				while (previous >= 0 && sb.charAt(previous) == ' ') {
+					previous--;
+				}
+				boolean afterDot = previous >= 0 && sb.charAt(previous) == '.';
+				int next = i;
+				while (next < n && Character.isWhitespace(mdx.charAt(next))) {
+					next++;
+				}
+				boolean beforeDot = next < n && mdx.charAt(next) == '.';
+				sb.append(MDX_KEYWORDS.contains(upper) && !afterDot && !beforeDot ? upper : word);
+			} else {
+				sb.append(ch);
+				i++;
+			}
+
+		}
+
+		return sb.toString();
+
+	}
+
+	/**
+	 * Get the digest identifying this key, as a hex string
+	 * @return the digest
+	 */
+	public String getDigest() {
+		StringBuilder sb = new StringBuilder(digest.length * 2);
+		for (byte b : digest) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof QueryCacheKey)) {
+			return false;
+		}
+		QueryCacheKey other = (QueryCacheKey) obj;
+		return Arrays.equals(digest, other.digest) && canonicalForm.equals(other.canonicalForm);
+	}
+
+	@Override
+	public String toString() {
+		return getDigest();
+	}
+
+}
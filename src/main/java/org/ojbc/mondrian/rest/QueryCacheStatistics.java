@@ -0,0 +1,306 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.ehcache.core.statistics.CacheStatistics;
+import org.ehcache.core.statistics.TierStatistics;
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.CacheEventListener;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Value;
+
+/**
+ * Per-entry statistics of the query cache: which connection and role each cached result belongs to, its estimated size, and how often it has been served.
+ * Ehcache counts hits and misses only for the cache as a whole, so entries are tracked here as they are added and served; registered as a listener on the
+ * cache, this forgets entries as the cache evicts, expires or removes them.
+ *
+ * Ehcache bounds a heap tier by entry count (or by walking each entry's object graph), so the estimated size of each entry is also tracked here, along with
+ * the order in which entries were last used, and used to remove the least recently used entries when the cache's total estimated size exceeds a limit.
+ *
+ */
+public final class QueryCacheStatistics implements CacheEventListener<QueryCacheKey, CachedQueryResponse> {
+
+	public static enum Ordering {
+
+		SIZE(Comparator.comparingLong(EntryStatistics::getEstimatedSize)),
+		HITS(Comparator.comparingLong(EntryStatistics::getHitCount));
+
+		private final Comparator<EntryStatistics> comparator;
+
+		private Ordering(Comparator<EntryStatistics> comparator) {
+			this.comparator = comparator;
+		}
+
+	}
+
+	/**
+	 * Statistics of one cached query result
+	 */
+	@Getter
+	public static final class EntryStatistics {
+
+		private final String cacheKey;
+		private final String connectionName;
+		private final String mondrianRole;
+		private final String query;
+		private final long estimatedSize;
+		private final long createdTime = System.currentTimeMillis();
+		@JsonIgnore private final LongAdder hits = new LongAdder();
+		private volatile long lastHitTime;
+		// position in the order in which entries were last put or served
+		@JsonIgnore private volatile long accessSequence;
+		@JsonIgnore @Getter(AccessLevel.NONE) private final QueryCacheKey key;
+		// the cached result, so that removing the entry to make room does not remove a result that has replaced it since
+		@JsonIgnore @Getter(AccessLevel.NONE) private final CachedQueryResponse response;
+
+		EntryStatistics(QueryCacheKey key, QueryRequest queryRequest, CachedQueryResponse response) {
+			this.key = key;
+			this.response = response;
+			this.cacheKey = key.getDigest();
+			this.connectionName = queryRequest.getConnectionName();
+			this.mondrianRole = queryRequest.getMondrianRole();
+			this.query = queryRequest.getQuery();
+			this.estimatedSize = response.getEstimatedSize();
+		}
+
+		@JsonProperty("hitCount")
+		public long getHitCount() {
+			return hits.sum();
+		}
+
+	}
+
+	/**
+	 * The number of entries and estimated heap occupied by the results of one connection's queries
+	 */
+	@Value
+	public static class ConnectionStatistics {
+		long entryCount;
+		long estimatedSize;
+	}
+
+	/**
+	 * Ehcache's statistics of a whole cache, and of each of its tiers
+	 */
+	@Value
+	public static class CacheSummary {
+
+		long hits;
+		long misses;
+		float hitPercentage;
+		long puts;
+		long removals;
+		long evictions;
+		long expirations;
+		Map<String, TierSummary> tiers;
+
+		public static CacheSummary of(CacheStatistics statistics) {
+			Map<String, TierSummary> tiers = new TreeMap<>();
+			for (Map.Entry<String, TierStatistics> entry : statistics.getTierStatistics().entrySet()) {
+				TierStatistics tier = entry.getValue();
+				tiers.put(entry.getKey(), new TierSummary(tier.getMappings(), tier.getOccupiedByteSize(), tier.getAllocatedByteSize(), tier.getEvictions()));
+			}
+			return new CacheSummary(statistics.getCacheHits(), statistics.getCacheMisses(), statistics.getCacheHitPercentage(), statistics.getCachePuts(),
+					statistics.getCacheRemovals(), statistics.getCacheEvictions(), statistics.getCacheExpirations(), tiers);
+		}
+
+	}
+
+	/**
+	 * Ehcache's statistics of one tier (heap, off-heap or disk) of a cache.  Byte sizes are -1 for tiers sized by entry count.
+	 */
+	@Value
+	public static class TierSummary {
+		long mappings;
+		long occupiedByteSize;
+		long allocatedByteSize;
+		long evictions;
+	}
+
+	private final Map<QueryCacheKey, EntryStatistics> entries = new ConcurrentHashMap<>();
+	private final AtomicLong estimatedSize = new AtomicLong();
+	private final AtomicLong sizeEvictionCount = new AtomicLong();
+	private final AtomicLong accessSequence = new AtomicLong();
+	// the keys of entries by when they were last used, least recent first; concurrent hits on an entry can leave it behind under an earlier sequence number too
+	private final ConcurrentSkipListMap<Long, QueryCacheKey> useOrder = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Track a result that has been put in the cache
+	 */
+	public void put(QueryCacheKey key, QueryRequest queryRequest, CachedQueryResponse response) {
+		EntryStatistics entry = new EntryStatistics(key, queryRequest, response);
+		estimatedSize.addAndGet(entry.getEstimatedSize());
+		forget(entries.put(key, entry));
+		touch(entry);
+	}
+
+	private void touch(EntryStatistics entry) {
+		long previous = entry.accessSequence;
+		long next = accessSequence.incrementAndGet();
+		entry.accessSequence = next;
+		useOrder.put(next, entry.key);
+		if (previous != 0) {
+			useOrder.remove(previous, entry.key);
+		}
+	}
+
+	private void forget(EntryStatistics entry) {
+		if (entry != null) {
+			estimatedSize.addAndGet(-entry.getEstimatedSize());
+			useOrder.remove(entry.accessSequence, entry.key);
+		}
+	}
+
+	/**
+	 * Count a request served from the cache
+	 */
+	public void hit(QueryCacheKey key) {
+		EntryStatistics entry = entries.get(key);
+		if (entry != null) {
+			entry.hits.increment();
+			entry.lastHitTime = System.currentTimeMillis();
+			touch(entry);
+		}
+	}
+
+	/**
+	 * Forget all entries, when the cache is cleared (which does not raise events)
+	 */
+	public void clear() {
+		for (QueryCacheKey key : new ArrayList<>(entries.keySet())) {
+			forget(entries.remove(key));
+		}
+		useOrder.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public void onEvent(CacheEvent<? extends QueryCacheKey, ? extends CachedQueryResponse> event) {
+		switch (event.getType()) {
+			case EVICTED:
+			case EXPIRED:
+			case REMOVED:
+				forget(entries.remove(event.getKey()));
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Get the estimated heap occupied by all tracked entries
+	 * @return the size in bytes
+	 */
+	public long getEstimatedSize() {
+		return estimatedSize.get();
+	}
+
+	/**
+	 * Get the number of entries removed by {@link #evict(long, BiPredicate)}
+	 * @return the count
+	 */
+	public long getSizeEvictionCount() {
+		return sizeEvictionCount.get();
+	}
+
+	/**
+	 * Remove entries from the cache to bring its estimated size within a limit: the least recently used (put or served) first.
+	 * @param maxSize the limit, in bytes
+	 * @param remover removes a key from the cache if (and only if) it still maps to the given result, returning whether it did, such as Cache::remove
+	 * @return the number of entries removed
+	 */
+	public synchronized int evict(long maxSize, BiPredicate<QueryCacheKey, CachedQueryResponse> remover) {
+		int ret = 0;
+		long excess = estimatedSize.get() - maxSize;
+		Iterator<Map.Entry<Long, QueryCacheKey>> candidates = useOrder.entrySet().iterator();
+		while (excess > 0 && candidates.hasNext()) {
+			Map.Entry<Long, QueryCacheKey> candidate = candidates.next();
+			EntryStatistics entry = entries.get(candidate.getValue());
+			if (entry == null || entry.accessSequence != candidate.getKey()) {
+				candidates.remove();
+				continue;
+			}
+			if (remover.test(entry.key, entry.response)) {
+				// the cache's removal event has normally forgotten the entry already
+				if (entries.remove(entry.key, entry)) {
+					forget(entry);
+				}
+				excess -= entry.getEstimatedSize();
+				ret++;
+			}
+		}
+		sizeEvictionCount.addAndGet(ret);
+		return ret;
+	}
+
+	/**
+	 * Get the number of entries and estimated heap occupied by each connection's results
+	 * @param connectionFilter the connections to include
+	 * @return the statistics, by connection name
+	 */
+	public Map<String, ConnectionStatistics> getConnectionStatistics(Predicate<String> connectionFilter) {
+		Map<String, long[]> totals = new TreeMap<>();
+		for (EntryStatistics entry : entries.values()) {
+			if (connectionFilter.test(entry.getConnectionName())) {
+				long[] total = totals.computeIfAbsent(entry.getConnectionName(), c -> new long[2]);
+				total[0]++;
+				total[1] += entry.getEstimatedSize();
+			}
+		}
+		Map<String, ConnectionStatistics> ret = new TreeMap<>();
+		totals.forEach((connectionName, total) -> ret.put(connectionName, new ConnectionStatistics(total[0], total[1])));
+		return ret;
+	}
+
+	/**
+	 * Get the top entries by the specified measure, largest first
+	 * @param ordering the measure
+	 * @param connectionFilter the connections whose entries to include
+	 * @param limit the maximum number of entries to return
+	 * @return the entries
+	 */
+	public List<EntryStatistics> getTopEntries(Ordering ordering, Predicate<String> connectionFilter, int limit) {
+		return entries.values().stream()
+				.filter(entry -> connectionFilter.test(entry.getConnectionName()))
+				.sorted(ordering.comparator.reversed())
+				.limit(limit)
+				.collect(Collectors.toList());
+	}
+
+}
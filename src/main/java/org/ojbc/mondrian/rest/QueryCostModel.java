@@ -0,0 +1,130 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * Learns what queries cost to execute, so that the cost of a query can be predicted from previous executions of the same query.  Queries are identified by their
+ * connection and normalized MDX (see {@link QueryCacheKey}), so differences in whitespace, comments and keyword case do not matter.  Costs are smoothed over recent
+ * executions, and only the most recently executed queries are remembered.
+ *
+ */
+public final class QueryCostModel {
+
+	private static final double SMOOTHING = 0.3;
+
+	/**
+	 * The predicted cost of a query
+	 */
+	@Getter
+	public static final class QueryCost {
+		private double durationMillis;
+		private double cellCount;
+		private double sqlCount;
+		private long executionCount;
+		private QueryCost copy() {
+			QueryCost ret = new QueryCost();
+			ret.durationMillis = durationMillis;
+			ret.cellCount = cellCount;
+			ret.sqlCount = sqlCount;
+			ret.executionCount = executionCount;
+			return ret;
+		}
+	}
+
+	private final Map<String, QueryCost> costs;
+
+	/**
+	 * Create a model
+	 * @param maxEntries the number of distinct queries to remember
+	 */
+	public QueryCostModel(int maxEntries) {
+		costs = new LinkedHashMap<String, QueryCost>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, QueryCost> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Predict the cost of a query
+	 * @param connectionName the connection the query executes against
+	 * @param query the MDX query
+	 * @return the predicted cost, or null if the query has not been executed before
+	 */
+	public synchronized QueryCost predict(String connectionName, String query) {
+		QueryCost cost = costs.get(key(connectionName, query));
+		return cost == null ? null : cost.copy();
+	}
+
+	/**
+	 * Record what an execution of a query cost
+	 * @param connectionName the connection the query executed against
+	 * @param query the MDX query
+	 * @param durationMillis how long the query took to execute and produce its result
+	 * @param cellCount the number of cells in the result
+	 * @param sqlCount the number of SQL statements executed for the query, or -1 if not known
+	 */
+	public synchronized void record(String connectionName, String query, long durationMillis, long cellCount, long sqlCount) {
+		QueryCost cost = costs.computeIfAbsent(key(connectionName, query), k -> new QueryCost());
+		if (cost.executionCount == 0) {
+			cost.durationMillis = durationMillis;
+			cost.cellCount = cellCount;
+			cost.sqlCount = Math.max(sqlCount, 0);
+		} else {
+			cost.durationMillis += SMOOTHING * (durationMillis - cost.durationMillis);
+			cost.cellCount += SMOOTHING * (cellCount - cost.cellCount);
+			if (sqlCount >= 0) {
+				cost.sqlCount += SMOOTHING * (sqlCount - cost.sqlCount);
+			}
+		}
+		cost.executionCount++;
+	}
+
+	/**
+	 * Record an execution of a query that did not produce a result (because it timed out, was cancelled, or failed).  The time it ran for is a lower bound on
+	 * what the query costs, so the query's predicted duration is raised to at least that (and never lowered); a query that always times out is therefore
+	 * predicted to be slow rather than remaining unknown.
+	 * @param connectionName the connection the query executed against
+	 * @param query the MDX query
+	 * @param durationMillis how long the query ran before it ended
+	 */
+	public synchronized void recordIncomplete(String connectionName, String query, long durationMillis) {
+		QueryCost cost = costs.computeIfAbsent(key(connectionName, query), k -> new QueryCost());
+		cost.durationMillis = Math.max(cost.durationMillis, durationMillis);
+		cost.executionCount++;
+	}
+
+	/**
+	 * Get the number of distinct queries whose cost is known
+	 * @return the count
+	 */
+	public synchronized int size() {
+		return costs.size();
+	}
+
+	private static String key(String connectionName, String query) {
+		return connectionName + "\n" + QueryCacheKey.normalizeMdx(query);
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Getter;
+
+/**
+ * A query submitted for asynchronous execution, tracking its status and (once finished) its result or error.
+ *
+ */
+@Getter
+public final class QueryJob {
+
+	public static enum Status {
+		QUEUED, RUNNING, SUCCEEDED, FAILED
+	}
+
+	private final String id = UUID.randomUUID().toString();
+	private final String connectionName;
+	@JsonIgnore private final String mondrianRole;
+	@JsonIgnore private final String token;
+	@JsonIgnore private final int schedulingWeight;
+	@JsonIgnore private final QueryRequest queryRequest;
+	private final long submittedTime = System.currentTimeMillis();
+	private volatile Status status = Status.QUEUED;
+	private volatile long startTime;
+	private volatile long endTime;
+	@JsonIgnore private volatile CachedQueryResponse result;
+	@JsonIgnore private volatile int errorStatus;
+	@JsonIgnore private volatile String errorBody;
+
+	QueryJob(QueryRequest queryRequest, String token, int schedulingWeight) {
+		this.queryRequest = queryRequest;
+		this.token = token;
+		this.schedulingWeight = schedulingWeight;
+		this.connectionName = queryRequest.getConnectionName();
+		this.mondrianRole = queryRequest.getMondrianRole();
+	}
+
+	void start() {
+		startTime = System.currentTimeMillis();
+		status = Status.RUNNING;
+	}
+
+	void succeed(CachedQueryResponse result) {
+		this.result = result;
+		endTime = System.currentTimeMillis();
+		status = Status.SUCCEEDED;
+	}
+
+	void fail(int errorStatus, String errorBody) {
+		this.errorStatus = errorStatus;
+		this.errorBody = errorBody;
+		endTime = System.currentTimeMillis();
+		status = Status.FAILED;
+	}
+
+	/**
+	 * Whether the job has finished, successfully or not
+	 * @return true if finished
+	 */
+	@JsonIgnore
+	public boolean isFinished() {
+		Status s = status;
+		return s == Status.SUCCEEDED || s == Status.FAILED;
+	}
+
+	/**
+	 * Get the estimated heap occupied by the job's result
+	 * @return the size in bytes, or 0 if the job has no result
+	 */
+	long getResultSize() {
+		CachedQueryResponse r = result;
+		return r == null ? 0 : r.getEstimatedSize();
+	}
+
+	/**
+	 * Get the time the query has spent executing (so far, if it is still running)
+	 * @return the elapsed time in milliseconds, or 0 if the query has not started
+	 */
+	@JsonProperty("elapsedMillis")
+	public long getElapsedMillis() {
+		if (startTime == 0) {
+			return 0;
+		}
+		return (isFinished() ? endTime : System.currentTimeMillis()) - startTime;
+	}
+
+}
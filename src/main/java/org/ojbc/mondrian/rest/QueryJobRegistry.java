@@ -0,0 +1,176 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs asynchronous query jobs on a fixed pool of threads, and holds on to each job until its result has been retained for the configured time.  So that
+ * retained results cannot exhaust the heap, the number of finished jobs and the total estimated size of their results are also bounded; when a job finishes
+ * and either bound is exceeded, the jobs that finished longest ago are removed.
+ *
+ */
+@Slf4j
+public final class QueryJobRegistry {
+
+	/**
+	 * The work that produces a job's result
+	 */
+	public static interface JobExecution {
+		public void execute(QueryJob job);
+	}
+
+	private final Map<String, QueryJob> jobs = new ConcurrentHashMap<>();
+	private final ExecutorService executor;
+	private final ScheduledExecutorService expiryExecutor;
+	private final long retentionMillis;
+	private final int maxRetainedJobs;
+	private final long maxRetainedBytes;
+
+	/**
+	 * Create a registry
+	 * @param threads the number of queries that may execute at once
+	 * @param queueSize the number of submitted queries that may wait for a thread
+	 * @param retentionSeconds how long a finished job (and its result) is kept
+	 * @param maxRetainedJobs the most finished jobs to keep
+	 * @param maxRetainedBytes the most (estimated) bytes of results to keep
+	 */
+	public QueryJobRegistry(int threads, int queueSize, int retentionSeconds, int maxRetainedJobs, long maxRetainedBytes) {
+		this.maxRetainedJobs = maxRetainedJobs;
+		this.maxRetainedBytes = maxRetainedBytes;
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueSize), r -> {
+			Thread t = new Thread(r, "async-query-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		retentionMillis = TimeUnit.SECONDS.toMillis(retentionSeconds);
+		expiryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "async-query-expiry");
+			t.setDaemon(true);
+			return t;
+		});
+		long expiryInterval = Math.max(1, Math.min(retentionSeconds, 60));
+		expiryExecutor.scheduleWithFixedDelay(this::expireJobs, expiryInterval, expiryInterval, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Submit a job for execution
+	 * @param job the job
+	 * @param execution the work that produces the job's result
+	 * @return true if the job was accepted, false if too many jobs are already waiting
+	 */
+	public boolean submit(QueryJob job, JobExecution execution) {
+		jobs.put(job.getId(), job);
+		try {
+			executor.execute(() -> {
+				job.start();
+				try {
+					execution.execute(job);
+				} finally {
+					if (!job.isFinished()) {
+						// the execution failed without recording it (for example, with an Error), so make sure the job does not appear to run forever
+						job.fail(500, null);
+					}
+					limitRetainedJobs();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			jobs.remove(job.getId());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get a job
+	 * @param id the job's id
+	 * @return the job, or null if there is no such job (or it has expired)
+	 */
+	public QueryJob getJob(String id) {
+		return jobs.get(id);
+	}
+
+	/**
+	 * Remove finished jobs whose retention time has passed
+	 * @return the number of jobs removed
+	 */
+	int expireJobs() {
+		long cutoff = System.currentTimeMillis() - retentionMillis;
+		int count = 0;
+		for (QueryJob job : jobs.values()) {
+			if (job.isFinished() && job.getEndTime() <= cutoff && jobs.remove(job.getId(), job)) {
+				count++;
+			}
+		}
+		if (count > 0) {
+			log.debug("Expired " + count + " asynchronous query jobs");
+		}
+		return count;
+	}
+
+	/**
+	 * Remove the jobs that finished longest ago, until the finished jobs and their results are within the configured bounds
+	 * @return the number of jobs removed
+	 */
+	synchronized int limitRetainedJobs() {
+		List<QueryJob> finished = jobs.values().stream()
+				.filter(QueryJob::isFinished)
+				.sorted(Comparator.comparingLong(QueryJob::getEndTime))
+				.collect(Collectors.toList());
+		int count = finished.size();
+		long bytes = finished.stream().mapToLong(QueryJob::getResultSize).sum();
+		int removed = 0;
+		for (QueryJob job : finished) {
+			if (count <= maxRetainedJobs && bytes <= maxRetainedBytes) {
+				break;
+			}
+			if (jobs.remove(job.getId(), job)) {
+				count--;
+				bytes -= job.getResultSize();
+				removed++;
+			}
+		}
+		if (removed > 0) {
+			log.debug("Removed " + removed + " finished asynchronous query jobs to keep within the retention limits");
+		}
+		return removed;
+	}
+
+	/**
+	 * Stop executing jobs.  Queries that are running are interrupted.
+	 */
+	public void close() {
+		expiryExecutor.shutdownNow();
+		executor.shutdownNow();
+	}
+
+}
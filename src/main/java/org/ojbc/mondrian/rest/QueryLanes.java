@@ -0,0 +1,93 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.ojbc.mondrian.MondrianConnectionFactory;
+import org.ojbc.mondrian.QueryBulkhead;
+
+/**
+ * Separates queries expected to be cheap from those expected to be expensive, so that cheap queries do not wait behind expensive ones.  Each lane has its own
+ * limit on the number of queries executing at once (and its own bounded wait queue).  Queries are routed by their predicted cost; queries that have not been
+ * executed before go to a configurable default lane.
+ *
+ */
+public final class QueryLanes {
+
+	public static enum Lane {
+		FAST, SLOW;
+		public static Lane forName(String name) {
+			for (Lane lane : values()) {
+				if (lane.name().equalsIgnoreCase(name.trim())) {
+					return lane;
+				}
+			}
+			throw new IllegalArgumentException("Unknown query lane " + name + ", must be fast or slow");
+		}
+	}
+
+	private final QueryCostModel costModel;
+	private final Map<Lane, QueryBulkhead> bulkheads = new EnumMap<>(Lane.class);
+	private final long fastLaneMaxMillis;
+	private final long fastLaneMaxCells;
+	private final Lane unknownQueryLane;
+
+	/**
+	 * Create the lanes
+	 * @param costModel the source of predicted query costs
+	 * @param fastLaneSettings the concurrency limits of the fast lane
+	 * @param slowLaneSettings the concurrency limits of the slow lane
+	 * @param fastLaneMaxMillis the longest predicted duration of a query routed to the fast lane
+	 * @param fastLaneMaxCells the largest predicted number of result cells of a query routed to the fast lane
+	 * @param unknownQueryLane the lane for queries whose cost cannot be predicted
+	 */
+	public QueryLanes(QueryCostModel costModel, MondrianConnectionFactory.QueryConcurrencySettings fastLaneSettings,
+			MondrianConnectionFactory.QueryConcurrencySettings slowLaneSettings, long fastLaneMaxMillis, long fastLaneMaxCells, Lane unknownQueryLane) {
+		this.costModel = costModel;
+		bulkheads.put(Lane.FAST, new QueryBulkhead("fast lane", fastLaneSettings));
+		bulkheads.put(Lane.SLOW, new QueryBulkhead("slow lane", slowLaneSettings));
+		this.fastLaneMaxMillis = fastLaneMaxMillis;
+		this.fastLaneMaxCells = fastLaneMaxCells;
+		this.unknownQueryLane = unknownQueryLane;
+	}
+
+	/**
+	 * Choose the lane for a query
+	 * @param connectionName the connection the query executes against
+	 * @param query the MDX query
+	 * @return the lane
+	 */
+	public Lane route(String connectionName, String query) {
+		QueryCostModel.QueryCost cost = costModel.predict(connectionName, query);
+		if (cost == null) {
+			return unknownQueryLane;
+		}
+		return cost.getDurationMillis() <= fastLaneMaxMillis && cost.getCellCount() <= fastLaneMaxCells ? Lane.FAST : Lane.SLOW;
+	}
+
+	/**
+	 * Get the bulkhead that limits concurrent execution in a lane
+	 * @param lane the lane
+	 * @return the bulkhead
+	 */
+	public QueryBulkhead getBulkhead(Lane lane) {
+		return bulkheads.get(lane);
+	}
+
+}
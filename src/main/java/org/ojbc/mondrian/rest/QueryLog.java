@@ -0,0 +1,333 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only log of the queries the service has answered, one json object per line, recording each query's connection, role, normalized MDX, tidy settings
+ * and execution time.  The log is used to find the queries that are most worth having in the query cache when the service starts.  To keep it from growing
+ * without bound, the log is periodically rewritten with one line per distinct query (keeping the most frequent).  Lines are written (and the log compacted) by a
+ * background thread, so requests do not wait for the log; if the thread falls behind by more than a fixed number of lines, further lines are dropped (and
+ * counted) until it catches up.
+ *
+ */
+@Slf4j
+public final class QueryLog {
+
+	private static final int QUEUE_SIZE = 1000;
+
+	/**
+	 * How to choose the queries most worth caching
+	 */
+	public static enum Ranking {
+		FREQUENCY, DURATION;
+		public static Ranking forName(String name) {
+			for (Ranking ranking : values()) {
+				if (ranking.name().equalsIgnoreCase(name.trim())) {
+					return ranking;
+				}
+			}
+			throw new IllegalArgumentException("Unknown query ranking " + name + ", must be frequency or duration");
+		}
+	}
+
+	/**
+	 * A line in the log: one query, or (once the log has been compacted) a summary of all executions of one query
+	 */
+	@Getter
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public static final class Entry {
+		@JsonProperty("time")
+		private long time;
+		@JsonProperty("connectionName")
+		private String connectionName;
+		@JsonProperty("mondrianRole")
+		private String mondrianRole;
+		@JsonProperty("query")
+		private String query;
+		@JsonProperty("tidy")
+		private boolean tidy;
+		@JsonProperty("simplifyNames")
+		private boolean simplifyNames;
+		@JsonProperty("levelNameTranslationMap")
+		private Map<String, String> levelNameTranslationMap;
+		@JsonProperty("durationMillis")
+		private long durationMillis = -1;
+		@JsonProperty("count")
+		private long count = 1;
+		QueryRequest toQueryRequest() {
+			QueryRequest.TidyConfig tidyConfig = tidy ? new QueryRequest.TidyConfig(true, simplifyNames, levelNameTranslationMap) : null;
+			return new QueryRequest(connectionName, query, tidyConfig, false, false, mondrianRole);
+		}
+	}
+
+	private static final class Summary {
+		private final Entry entry;
+		private long count;
+		private long durationSum;
+		private long durationCount;
+		Summary(Entry entry) {
+			this.entry = entry;
+		}
+		void add(Entry e) {
+			count += e.count;
+			if (e.durationMillis >= 0) {
+				// a compacted line carries the average duration of all the executions it summarizes
+				durationSum += e.durationMillis * e.count;
+				durationCount += e.count;
+			}
+		}
+		long getAverageDurationMillis() {
+			return durationCount == 0 ? -1 : durationSum / durationCount;
+		}
+	}
+
+	private final File file;
+	private final int maxEntries;
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong droppedCount = new AtomicLong();
+	private BufferedWriter writer;
+	private int linesSinceCompaction;
+
+	/**
+	 * Open the log, creating it if it does not exist, and compact it
+	 * @param file the log file
+	 * @param maxEntries the number of distinct queries to keep when the log is compacted
+	 * @throws IOException
+	 */
+	public QueryLog(File file, int maxEntries) throws IOException {
+		this.file = file;
+		this.maxEntries = maxEntries;
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		compact();
+		executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+			Thread t = new Thread(r, "query-log");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Record that a query was answered
+	 * @param queryRequest the query request
+	 * @param durationMillis how long the query took to execute, or -1 if it was answered from the cache (or by an identical query executing at the same time)
+	 */
+	public void append(QueryRequest queryRequest, long durationMillis) {
+		Entry entry = new Entry();
+		entry.time = System.currentTimeMillis();
+		entry.connectionName = queryRequest.getConnectionName();
+		entry.mondrianRole = queryRequest.getMondrianRole();
+		entry.query = QueryCacheKey.normalizeMdx(queryRequest.getQuery());
+		QueryRequest.TidyConfig tidyConfig = queryRequest.getTidy();
+		if (tidyConfig != null && tidyConfig.isEnabled()) {
+			entry.tidy = true;
+			entry.simplifyNames = tidyConfig.isSimplifyNames();
+			entry.levelNameTranslationMap = tidyConfig.getLevelNameTranslationMap();
+		}
+		entry.durationMillis = durationMillis;
+		try {
+			executor.execute(() -> write(entry));
+		} catch (RejectedExecutionException e) {
+			if (droppedCount.getAndIncrement() % QUEUE_SIZE == 0) {
+				log.warn("Query log " + file + " is falling behind, " + droppedCount.get() + " lines dropped so far");
+			}
+		}
+	}
+
+	/**
+	 * Get the number of lines dropped because the log was falling behind
+	 * @return the count
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Get the queries most worth caching
+	 * @param n the number of queries
+	 * @param ranking how to rank the queries
+	 * @return the queries, best first
+	 * @throws IOException
+	 */
+	public List<QueryRequest> getTopQueries(int n, Ranking ranking) throws IOException {
+		awaitPendingLines();
+		List<Summary> summaries;
+		synchronized (this) {
+			writer.flush();
+			summaries = summarize();
+		}
+		return summaries.stream()
+			.sorted(comparator(ranking))
+			.limit(n)
+			.map(summary -> summary.entry.toQueryRequest())
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Write the lines already submitted, and stop writing to the log
+	 */
+	public void close() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				log.warn("Unable to close query log " + file + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Wait for the background thread to write the lines submitted so far (it handles them in order, so it is enough to wait for it to handle one more)
+	 */
+	private void awaitPendingLines() {
+		try {
+			executor.submit(() -> {}).get();
+		} catch (RejectedExecutionException e) {
+			// falling behind (or closed), so make do with what has been written
+		} catch (ExecutionException e) {
+			log.warn("Unable to wait for query log " + file + ": " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized void write(Entry entry) {
+		try {
+			writer.write(mapper.writeValueAsString(entry));
+			writer.newLine();
+			if (executor.getQueue().isEmpty()) {
+				writer.flush();
+			}
+			// compact once the log holds (roughly) ten times as many lines as it would after compaction
+			if (++linesSinceCompaction > maxEntries * 10) {
+				compact();
+			}
+		} catch (IOException e) {
+			log.warn("Unable to write to query log " + file + ": " + e.getMessage());
+		}
+	}
+
+	private void compact() throws IOException {
+
+		try {
+
+			if (writer != null) {
+				writer.close();
+			}
+
+			List<Summary> summaries = summarize();
+			summaries.sort(comparator(Ranking.FREQUENCY));
+
+			File compacted = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".compacting");
+			try (BufferedWriter compactedWriter = Files.newBufferedWriter(compacted.toPath(), StandardCharsets.UTF_8)) {
+				for (Summary summary : summaries.subList(0, Math.min(maxEntries, summaries.size()))) {
+					Entry entry = summary.entry;
+					entry.count = summary.count;
+					entry.durationMillis = summary.getAverageDurationMillis();
+					compactedWriter.write(mapper.writeValueAsString(entry));
+					compactedWriter.newLine();
+				}
+			}
+			Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.debug("Compacted query log " + file + " to " + Math.min(maxEntries, summaries.size()) + " distinct queries");
+
+		} finally {
+			// even if compaction failed, keep appending to the (uncompacted) log
+			writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			linesSinceCompaction = 0;
+		}
+
+	}
+
+	private List<Summary> summarize() throws IOException {
+		Map<QueryCacheKey, Summary> summaries = new LinkedHashMap<>();
+		if (file.exists()) {
+			try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+				String line = null;
+				while ((line = reader.readLine()) != null) {
+					if (line.trim().isEmpty()) {
+						continue;
+					}
+					Entry entry = readEntry(line);
+					if (entry != null && entry.connectionName != null && entry.query != null) {
+						summaries.computeIfAbsent(QueryCacheKey.forRequest(entry.toQueryRequest()), k -> new Summary(entry)).add(entry);
+					}
+				}
+			}
+		}
+		return new ArrayList<>(summaries.values());
+	}
+
+	private Entry readEntry(String line) {
+		try {
+			return mapper.readValue(line, Entry.class);
+		} catch (IOException e) {
+			// most likely a line cut short when the service stopped
+			log.debug("Skipping unreadable query log line: " + line);
+			return null;
+		}
+	}
+
+	private static Comparator<Summary> comparator(Ranking ranking) {
+		Comparator<Summary> byFrequency = Comparator.comparingLong(summary -> summary.count);
+		Comparator<Summary> byDuration = Comparator.comparingLong(Summary::getAverageDurationMillis);
+		if (ranking == Ranking.DURATION) {
+			return byDuration.reversed().thenComparing(byFrequency.reversed());
+		}
+		return byFrequency.reversed().thenComparing(byDuration.reversed());
+	}
+
+}
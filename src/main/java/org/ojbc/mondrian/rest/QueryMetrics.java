@@ -0,0 +1,257 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.ehcache.core.statistics.CacheStatistics;
+import org.ehcache.core.statistics.TierStatistics;
+import org.ojbc.mondrian.QueryBulkhead;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records the timings of queries and metadata requests, and the state of the query execution machinery (concurrency limits, scheduler, coalescing and cost
+ * history), as Micrometer meters.
+ *
+ * Query meters are tagged with the connection, the cube the query selects from, and whether the result came from the cache; each phase of a request is a
+ * separate timer, tagged with the phase.  So that clients cannot create a meter for every name they care to put in a query, a query is only tagged with a cube
+ * that a query on the same connection has actually been executed against; any other query is tagged with the cube "unknown".
+ *
+ */
+public final class QueryMetrics {
+
+	static final String UNKNOWN_CUBE = "unknown";
+
+	// the first FROM followed by a cube name; in a query with a subselect, the outer FROM is followed by a parenthesis, so this finds the subselect's cube
+	private static final Pattern CUBE_PATTERN = Pattern.compile("\\bFROM\\s+(\\[(?:[^\\]]|\\]\\])+\\]|[A-Za-z_][\\w]*)", Pattern.CASE_INSENSITIVE);
+
+	private static final Duration MINIMUM_EXPECTED_DURATION = Duration.ofMillis(1);
+	private static final Duration MAXIMUM_EXPECTED_DURATION = Duration.ofMinutes(5);
+
+	private final MeterRegistry registry;
+	private final Map<String, Set<String>> executedCubes = new ConcurrentHashMap<>();
+
+	public QueryMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Record the timings of a query
+	 * @param connectionName the connection the query was submitted to
+	 * @param query the MDX query
+	 * @param timings the timings
+	 */
+	public void recordQuery(String connectionName, String query, QueryTimings timings) {
+		String cube = getCubeTag(connectionName, query, timings);
+		Tags tags = Tags.of("connection", connectionName, "cube", cube, "cached", String.valueOf(timings.isCached()));
+		record("mondrian.query", "Time to process a query", tags, timings);
+		Tags sizeTags = Tags.of("connection", connectionName, "cube", cube);
+		if (timings.getCellCount() >= 0) {
+			DistributionSummary.builder("mondrian.query.cells")
+				.description("Number of cells in the results of executed queries")
+				.baseUnit("cells")
+				.tags(sizeTags)
+				.register(registry)
+				.record(timings.getCellCount());
+		}
+		recordResponseBytes("mondrian.query.response", sizeTags, timings);
+	}
+
+	/**
+	 * Record the timings of a metadata request
+	 * @param connectionName the connection whose metadata was requested
+	 * @param timings the timings
+	 */
+	public void recordMetadata(String connectionName, QueryTimings timings) {
+		Tags tags = Tags.of("connection", connectionName, "cached", String.valueOf(timings.isCached()));
+		record("mondrian.metadata", "Time to process a metadata request", tags, timings);
+		recordResponseBytes("mondrian.metadata.response", Tags.of("connection", connectionName), timings);
+	}
+
+	private void record(String name, String description, Tags tags, QueryTimings timings) {
+		timer(name, description, tags).record(timings.getTotalNanos(), TimeUnit.NANOSECONDS);
+		for (QueryTimings.Phase phase : QueryTimings.Phase.values()) {
+			if (timings.isMarked(phase)) {
+				timer(name + ".phase", "Time spent in each phase of processing", tags.and("phase", phase.getTagValue()))
+					.record(timings.getPhaseNanos(phase), TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	private Timer timer(String name, String description, Tags tags) {
+		return Timer.builder(name)
+			.description(description)
+			.tags(tags)
+			.publishPercentileHistogram()
+			.minimumExpectedValue(MINIMUM_EXPECTED_DURATION)
+			.maximumExpectedValue(MAXIMUM_EXPECTED_DURATION)
+			.register(registry);
+	}
+
+	private void recordResponseBytes(String name, Tags tags, QueryTimings timings) {
+		if (timings.getResponseBytes() >= 0) {
+			DistributionSummary.builder(name)
+				.description("Size of response bodies")
+				.baseUnit("bytes")
+				.tags(tags)
+				.register(registry)
+				.record(timings.getResponseBytes());
+		}
+	}
+
+	/**
+	 * Expose the number of queries executing, and the number that shared the result of an identical query
+	 */
+	public void registerQueryExecution(RunningQueryRegistry runningQueries, SingleFlight<?, ?> inFlightQueries, QueryCostModel queryCostModel) {
+		Gauge.builder("mondrian.query.running", runningQueries, r -> r.getRunningQueries().size())
+			.description("Number of queries waiting to execute or executing")
+			.register(registry);
+		Gauge.builder("mondrian.query.inflight", inFlightQueries, SingleFlight::getInFlightCount)
+			.description("Number of distinct queries executing whose result identical queries can share")
+			.register(registry);
+		FunctionCounter.builder("mondrian.query.coalesced", inFlightQueries, SingleFlight::getCoalescedCount)
+			.description("Number of queries that shared the result of an identical query that was already executing")
+			.register(registry);
+		Gauge.builder("mondrian.query.cost.history", queryCostModel, QueryCostModel::size)
+			.description("Number of distinct queries whose execution cost is remembered")
+			.register(registry);
+	}
+
+	/**
+	 * Expose the usage of a concurrency limit (a connection's, or a lane's)
+	 */
+	public void registerBulkhead(QueryBulkhead bulkhead) {
+		Gauge.builder("mondrian.query.bulkhead.active", bulkhead, QueryBulkhead::getActiveCount)
+			.description("Number of queries executing under the concurrency limit")
+			.tag("bulkhead", bulkhead.getName())
+			.register(registry);
+		Gauge.builder("mondrian.query.bulkhead.queued", bulkhead, QueryBulkhead::getQueueDepth)
+			.description("Number of queries waiting for the concurrency limit")
+			.tag("bulkhead", bulkhead.getName())
+			.register(registry);
+		FunctionCounter.builder("mondrian.query.bulkhead.admitted", bulkhead, QueryBulkhead::getAdmittedCount)
+			.description("Number of queries admitted by the concurrency limit")
+			.tag("bulkhead", bulkhead.getName())
+			.register(registry);
+		FunctionCounter.builder("mondrian.query.bulkhead.rejected", bulkhead, b -> b.getRejectedCount() + b.getTimedOutCount())
+			.description("Number of queries rejected by the concurrency limit, because too many were waiting or they waited too long")
+			.tag("bulkhead", bulkhead.getName())
+			.register(registry);
+	}
+
+	/**
+	 * Expose the usage of the fair scheduler
+	 */
+	public void registerScheduler(FairQueryScheduler scheduler) {
+		Gauge.builder("mondrian.query.scheduler.running", scheduler, FairQueryScheduler::getRunningCount)
+			.description("Number of queries holding an execution slot")
+			.register(registry);
+		Gauge.builder("mondrian.query.scheduler.waiting", scheduler, FairQueryScheduler::getWaitingCount)
+			.description("Number of queries waiting for an execution slot")
+			.register(registry);
+	}
+
+	/**
+	 * Expose Ehcache's statistics of a cache, using the names and tags of Micrometer's cache meters
+	 * @param name the name of the cache
+	 * @param statistics the cache's statistics
+	 */
+	public void registerCache(String name, CacheStatistics statistics) {
+		FunctionCounter.builder("cache.gets", statistics, CacheStatistics::getCacheHits)
+			.description("Number of cache lookups that found an entry")
+			.tags("cache", name, "result", "hit")
+			.register(registry);
+		FunctionCounter.builder("cache.gets", statistics, CacheStatistics::getCacheMisses)
+			.description("Number of cache lookups that found no entry")
+			.tags("cache", name, "result", "miss")
+			.register(registry);
+		FunctionCounter.builder("cache.puts", statistics, CacheStatistics::getCachePuts)
+			.description("Number of entries added to the cache")
+			.tag("cache", name)
+			.register(registry);
+		FunctionCounter.builder("cache.evictions", statistics, CacheStatistics::getCacheEvictions)
+			.description("Number of entries evicted from the cache to make room for others")
+			.tag("cache", name)
+			.register(registry);
+		FunctionCounter.builder("cache.removals", statistics, CacheStatistics::getCacheRemovals)
+			.description("Number of entries removed from the cache")
+			.tag("cache", name)
+			.register(registry);
+		// every entry is held by the lowest tier, so its mapping count is the size of the cache
+		Gauge.builder("cache.size", statistics, s -> s.getTierStatistics().values().stream().mapToLong(TierStatistics::getMappings).max().orElse(0))
+			.description("Number of entries in the cache")
+			.tag("cache", name)
+			.register(registry);
+	}
+
+	/**
+	 * Expose the estimated heap occupied by the query cache
+	 */
+	public void registerQueryCache(QueryCacheStatistics queryCacheStatistics) {
+		Gauge.builder("mondrian.query.cache.size", queryCacheStatistics, QueryCacheStatistics::getEstimatedSize)
+			.description("Estimated heap occupied by cached query results")
+			.baseUnit("bytes")
+			.register(registry);
+		FunctionCounter.builder("mondrian.query.cache.size.evictions", queryCacheStatistics, QueryCacheStatistics::getSizeEvictionCount)
+			.description("Number of cached query results removed to keep the query cache within its size in bytes")
+			.register(registry);
+	}
+
+	/**
+	 * Get the cube to tag a query with: the cube it was executed against, or, for a query that was not executed (because its result came from the cache or
+	 * from an identical query, or because it failed), the cube it names if a query on the same connection has been executed against that cube
+	 */
+	private String getCubeTag(String connectionName, String query, QueryTimings timings) {
+		Set<String> cubes = executedCubes.computeIfAbsent(connectionName, c -> ConcurrentHashMap.newKeySet());
+		String cube = timings.getCubeName();
+		if (cube != null) {
+			cubes.add(cube);
+			return cube;
+		}
+		cube = getCubeName(query);
+		return cubes.contains(cube) ? cube : UNKNOWN_CUBE;
+	}
+
+	/**
+	 * Get the name of the cube an MDX query selects from, for tagging
+	 * @param query the query
+	 * @return the cube name (without brackets), or "unknown" if it cannot be determined
+	 */
+	static String getCubeName(String query) {
+		if (query != null) {
+			Matcher matcher = CUBE_PATTERN.matcher(query);
+			if (matcher.find()) {
+				String cube = matcher.group(1);
+				return cube.startsWith("[") ? cube.substring(1, cube.length() - 1).replace("]]", "]") : cube;
+			}
+		}
+		return UNKNOWN_CUBE;
+	}
+
+}
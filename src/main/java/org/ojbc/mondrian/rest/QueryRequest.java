@@ -18,8 +18,14 @@ package org.ojbc.mondrian.rest;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
-import lombok.Setter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import lombok.Value;
 import lombok.experimental.NonFinal;
 
@@ -47,11 +53,27 @@ public class QueryRequest {
 	private String connectionName;
 	private String query;
 	private TidyConfig tidy;
+	@EqualsAndHashCode.Exclude private boolean stream;
+	@EqualsAndHashCode.Exclude private boolean profile;
+	
+	@NonFinal String mondrianRole;
 	
-	@NonFinal @Setter String mondrianRole;
+	// computing the key normalizes and digests the query, so it is done once per request (and again if the role changes); initialized, so not a constructor argument
+	@EqualsAndHashCode.Exclude @ToString.Exclude @Getter(AccessLevel.NONE) private final AtomicReference<QueryCacheKey> cacheKey = new AtomicReference<>();
 	
-	public int getCacheKey() {
-		return hashCode();
+	public void setMondrianRole(String mondrianRole) {
+		this.mondrianRole = mondrianRole;
+		cacheKey.set(null);
+	}
+	
+	@JsonIgnore
+	public QueryCacheKey getCacheKey() {
+		QueryCacheKey ret = cacheKey.get();
+		if (ret == null) {
+			ret = QueryCacheKey.forRequest(this);
+			cacheKey.set(ret);
+		}
+		return ret;
 	}
 
 }
@@ -0,0 +1,264 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.ojbc.mondrian.QueryContext;
+
+/**
+ * The time a single request spent in each phase of its processing.  Phases are timed back to back:  marking a phase attributes to it the time since the previous
+ * mark (or since the timings were created), so a request is timed by marking each phase as it finishes.  A phase may be marked more than once, in which case
+ * its times are added.  Timings belong to one request and are not thread-safe, except for {@link #abandon()}, which may be called from any thread.
+ *
+ */
+public final class QueryTimings {
+
+	public static enum Phase {
+
+		/**
+		 * Authorizing the request
+		 */
+		AUTHORIZATION("authorization"),
+		/**
+		 * Looking up (and storing) the result in the query or metadata cache
+		 */
+		CACHE_LOOKUP("cache"),
+		/**
+		 * Waiting for the connection's concurrency limit, the query's lane, or the fair scheduler to admit the query
+		 */
+		QUEUE("queue"),
+		/**
+		 * Borrowing an olap connection from the pool
+		 */
+		CONNECTION_ACQUISITION("connect"),
+		/**
+		 * Executing the query in Mondrian
+		 */
+		EXECUTION("execute"),
+		/**
+		 * Waiting for an identical query that was already executing to finish, and sharing its result
+		 */
+		COALESCED("coalesced"),
+		/**
+		 * Building the wrapper (raw, tidy or metadata) from the result
+		 */
+		RESULT_CONSTRUCTION("wrap"),
+		/**
+		 * Serializing the result and writing it to the response
+		 */
+		SERIALIZATION("serialize");
+
+		private final String serverTimingName;
+
+		private Phase(String serverTimingName) {
+			this.serverTimingName = serverTimingName;
+		}
+
+		/**
+		 * Get the name of the phase as used in metric tags and headers
+		 * @return the name
+		 */
+		public String getTagValue() {
+			return name().toLowerCase();
+		}
+
+		/**
+		 * Get the (short) name of the phase as used in the Server-Timing header
+		 * @return the name
+		 */
+		public String getServerTimingName() {
+			return serverTimingName;
+		}
+
+	}
+
+	private final long startNanos = System.nanoTime();
+	private final long[] phaseNanos = new long[Phase.values().length];
+	private final boolean[] phaseMarked = new boolean[Phase.values().length];
+	private long markNanos = startNanos;
+	private boolean cached;
+	private long cellCount = -1;
+	private String cubeName;
+	private long responseBytes = -1;
+	private QueryContext queryContext;
+	private RunningQuery runningQuery;
+	private boolean abandoned;
+
+	/**
+	 * Attribute the time since the previous mark to a phase
+	 * @param phase the phase that just finished
+	 */
+	public void mark(Phase phase) {
+		long now = System.nanoTime();
+		phaseNanos[phase.ordinal()] += now - markNanos;
+		phaseMarked[phase.ordinal()] = true;
+		markNanos = now;
+	}
+
+	/**
+	 * Whether a phase has been marked
+	 * @param phase the phase
+	 * @return true if the request went through the phase
+	 */
+	public boolean isMarked(Phase phase) {
+		return phaseMarked[phase.ordinal()];
+	}
+
+	/**
+	 * Get the time spent in a phase
+	 * @param phase the phase
+	 * @return the time in nanoseconds, 0 if the phase has not been marked
+	 */
+	public long getPhaseNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Get the time since the timings were created
+	 * @return the time in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return System.nanoTime() - startNanos;
+	}
+
+	/**
+	 * Get the time since the timings were created
+	 * @return the time in milliseconds
+	 */
+	public long getTotalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(getTotalNanos());
+	}
+
+	/**
+	 * Get the time spent in each phase the request has gone through so far
+	 * @return the time in (fractional) milliseconds, by phase tag value, in phase order
+	 */
+	public Map<String, Double> getPhaseMillis() {
+		Map<String, Double> ret = new LinkedHashMap<>();
+		for (Phase phase : Phase.values()) {
+			if (isMarked(phase)) {
+				ret.put(phase.getTagValue(), toMillis(getPhaseNanos(phase)));
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Format the timings as the value of a Server-Timing header (https://www.w3.org/TR/server-timing/), with an entry for each phase the request has gone
+	 * through so far, followed by the total
+	 * @return the header value
+	 */
+	public String getServerTiming() {
+		StringBuilder sb = new StringBuilder();
+		for (Phase phase : Phase.values()) {
+			if (isMarked(phase)) {
+				sb.append(phase.getServerTimingName()).append(";dur=").append(toMillis(getPhaseNanos(phase))).append(", ");
+			}
+		}
+		return sb.append("total;dur=").append(toMillis(getTotalNanos())).toString();
+	}
+
+	private static double toMillis(long nanos) {
+		// microsecond precision is plenty, and keeps the header short
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+
+	public boolean isCached() {
+		return cached;
+	}
+
+	void setCached(boolean cached) {
+		this.cached = cached;
+	}
+
+	/**
+	 * Get the number of cells in the result
+	 * @return the count, or -1 if unknown (for example, because the result came from the cache)
+	 */
+	public long getCellCount() {
+		return cellCount;
+	}
+
+	void setCellCount(long cellCount) {
+		this.cellCount = cellCount;
+	}
+
+	/**
+	 * Get the name of the cube the query was executed against
+	 * @return the name, or null if the query was not executed (for example, because the result came from the cache, or the query failed)
+	 */
+	public String getCubeName() {
+		return cubeName;
+	}
+
+	void setCubeName(String cubeName) {
+		this.cubeName = cubeName;
+	}
+
+	/**
+	 * Get the size of the response body
+	 * @return the number of bytes written (compressed, if the response was), or -1 if no body was written
+	 */
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	void setResponseBytes(long responseBytes) {
+		this.responseBytes = responseBytes;
+	}
+
+	/**
+	 * Get the context in which the query was executed, which holds the SQL statements executed for it (and, if it was profiled, its profile)
+	 * @return the context, or null if the request did not execute a query (for example, because the result came from the cache)
+	 */
+	public QueryContext getQueryContext() {
+		return queryContext;
+	}
+
+	void setQueryContext(QueryContext queryContext) {
+		this.queryContext = queryContext;
+	}
+
+	/**
+	 * Abandon the request (because its client has gone away), cancelling the query it is executing, if any, and any query it executes from now on
+	 */
+	public synchronized void abandon() {
+		abandoned = true;
+		if (runningQuery != null) {
+			runningQuery.cancel();
+		}
+	}
+
+	/**
+	 * Whether the request has been abandoned
+	 * @return true if it has
+	 */
+	public synchronized boolean isAbandoned() {
+		return abandoned;
+	}
+
+	synchronized void setRunningQuery(RunningQuery runningQuery) {
+		this.runningQuery = runningQuery;
+		if (abandoned && runningQuery != null) {
+			runningQuery.cancel();
+		}
+	}
+
+}
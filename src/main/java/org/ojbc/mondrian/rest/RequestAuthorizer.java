@@ -37,11 +37,18 @@ public interface RequestAuthorizer {
 	
 	public static final String ALL_ACCESS_ROLE_NAME = RequestAuthorizer.class.getName() + "-All-Access";
 	
+	/**
+	 * Key that, in a token's connection-role mappings, specifies the token's share of query execution time relative to other tokens (when fair scheduling is enabled).
+	 * Tokens without it have weight 1.
+	 */
+	public static final String SCHEDULING_WEIGHT_KEY = RequestAuthorizer.class.getName() + "-Scheduling-Weight";
+	
 	static final class RequestAuthorizationStatus {
 		public boolean authorized;
 		public String message;
 		public String mondrianRole;
 		public String token;
+		public int schedulingWeight = 1;
 	}
 	
 	@Slf4j
@@ -74,6 +81,27 @@ public interface RequestAuthorizer {
 			
 		}
 		
+		/**
+		 * Get the scheduling weight specified in a token's connection-role mappings
+		 * @param connectionMappings the mappings
+		 * @return the weight, or 1 if none is specified (or the specified weight is invalid)
+		 */
+		public static final int getSchedulingWeight(Map<String, String> connectionMappings) {
+			String weight = connectionMappings.get(SCHEDULING_WEIGHT_KEY);
+			if (weight != null) {
+				try {
+					int ret = Integer.parseInt(weight.trim());
+					if (ret >= 1) {
+						return ret;
+					}
+				} catch (NumberFormatException e) {
+					// fall through
+				}
+				log.warn("Invalid scheduling weight " + weight + ", a weight of 1 will be used");
+			}
+			return 1;
+		}
+		
 	}
 	
 	public RequestAuthorizationStatus authorizeRequest(HttpServletRequest request, String connectionName) throws Exception;
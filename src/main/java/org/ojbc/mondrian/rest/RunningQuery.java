@@ -0,0 +1,104 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.sql.SQLException;
+
+import org.olap4j.OlapStatement;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A query that is currently executing, as listed by the running query admin endpoint.
+ *
+ */
+@Getter
+@Slf4j
+public final class RunningQuery {
+
+	public static enum Phase {
+		QUEUED, WAITING_FOR_CONNECTION, EXECUTING, PROCESSING_RESULT
+	}
+
+	private final long id;
+	private final String connectionName;
+	private final String mondrianRole;
+	// the token authorizes the query's client, so it is never shown to administrators
+	@JsonIgnore private final String token;
+	private final String query;
+	private final long startTime = System.currentTimeMillis();
+	private volatile Phase phase = Phase.QUEUED;
+	private volatile QueryLanes.Lane lane;
+	private volatile boolean cancelled;
+	@JsonIgnore private volatile OlapStatement statement;
+
+	RunningQuery(long id, String connectionName, String mondrianRole, String token, String query) {
+		this.id = id;
+		this.connectionName = connectionName;
+		this.mondrianRole = mondrianRole;
+		this.token = token;
+		this.query = query;
+	}
+
+	/**
+	 * Get the time since the query was submitted
+	 * @return the elapsed time in milliseconds
+	 */
+	@JsonProperty("elapsedMillis")
+	public long getElapsedMillis() {
+		return System.currentTimeMillis() - startTime;
+	}
+
+	void setPhase(Phase phase) {
+		this.phase = phase;
+	}
+
+	void setLane(QueryLanes.Lane lane) {
+		this.lane = lane;
+	}
+
+	/**
+	 * Associate the statement executing the query with this running query.  If the query has already been cancelled, the statement is cancelled immediately.
+	 */
+	void setStatement(OlapStatement statement) throws SQLException {
+		this.statement = statement;
+		if (cancelled) {
+			statement.cancel();
+			throw new QueryCancelledException("Query was cancelled");
+		}
+	}
+
+	/**
+	 * Cancel the query.  Mondrian stops evaluating the query and cancels any SQL statements it has running on the query's behalf.
+	 */
+	public void cancel() {
+		cancelled = true;
+		OlapStatement s = statement;
+		if (s != null) {
+			try {
+				s.cancel();
+			} catch (SQLException e) {
+				log.warn("Unable to cancel query " + id + ": " + e.getMessage());
+			}
+		}
+	}
+
+}
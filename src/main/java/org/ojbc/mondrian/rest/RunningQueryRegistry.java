@@ -0,0 +1,68 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the queries that are currently executing, so that they can be listed and cancelled.
+ *
+ */
+public final class RunningQueryRegistry {
+
+	private final Map<Long, RunningQuery> runningQueries = new ConcurrentHashMap<>();
+	private final AtomicLong idSequence = new AtomicLong();
+
+	/**
+	 * Register a query that is about to execute.  The caller must unregister it when execution finishes.
+	 * @return the running query
+	 */
+	public RunningQuery register(String connectionName, String mondrianRole, String token, String query) {
+		RunningQuery runningQuery = new RunningQuery(idSequence.incrementAndGet(), connectionName, mondrianRole, token, query);
+		runningQueries.put(runningQuery.getId(), runningQuery);
+		return runningQuery;
+	}
+
+	public void unregister(RunningQuery runningQuery) {
+		runningQueries.remove(runningQuery.getId());
+	}
+
+	/**
+	 * Get a running query
+	 * @param id the query's id
+	 * @return the query, or null if no query with that id is running
+	 */
+	public RunningQuery getRunningQuery(long id) {
+		return runningQueries.get(id);
+	}
+
+	/**
+	 * Get the running queries, longest-running first
+	 * @return the queries
+	 */
+	public List<RunningQuery> getRunningQueries() {
+		List<RunningQuery> ret = new ArrayList<>(runningQueries.values());
+		ret.sort(Comparator.comparingLong(RunningQuery::getStartTime).thenComparingLong(RunningQuery::getId));
+		return ret;
+	}
+
+}
@@ -55,6 +55,7 @@ public class SamlAssertionRequestAuthorizer extends AbstractSamlAssertionRequest
 				ret.authorized = true;
 				ret.mondrianRole = role;
 				ret.token = getToken(assertion);
+				ret.schedulingWeight = RequestAuthorizer.AuthorizerUtil.getSchedulingWeight(connectionMappings);
 				if (role.equals(ALL_ACCESS_ROLE_NAME)) {
 					ret.mondrianRole = null;
 				}
@@ -0,0 +1,162 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import lombok.Value;
+
+/**
+ * Deduplicates concurrent executions of the same work.  The first caller for a key executes the work; callers that arrive with the same key while it is running
+ * wait for it and receive the same result, or the same exception.  Once the work completes, the next caller for the key executes it again.
+ *
+ * Some failures concern only the caller that executed the work (for example, that caller was rejected by a concurrency limit, or its execution was cancelled);
+ * callers waiting for it do not receive those, but try again themselves, executing the work if no other caller has started it in the meantime.
+ *
+ * @param <K> the type of key identifying the work
+ * @param <V> the type of result
+ */
+public final class SingleFlight<K, V> {
+
+	/**
+	 * The work to execute
+	 */
+	public static interface Execution<V> {
+		public V execute() throws Exception;
+	}
+
+	/**
+	 * The result of a call, and whether it was shared from another caller's execution
+	 */
+	@Value
+	public static final class Outcome<V> {
+		private V value;
+		private boolean coalesced;
+	}
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private final Predicate<Throwable> callerSpecificFailure;
+
+	public SingleFlight() {
+		this(t -> false);
+	}
+
+	/**
+	 * @param callerSpecificFailure identifies failures that concern only the caller that executed the work, and are not passed to the callers waiting for it
+	 */
+	public SingleFlight(Predicate<Throwable> callerSpecificFailure) {
+		this.callerSpecificFailure = callerSpecificFailure;
+	}
+
+	/**
+	 * Execute the work for the specified key, or wait for an execution already in progress for that key
+	 * @param key the key identifying the work
+	 * @param execution the work
+	 * @return the outcome
+	 * @throws Exception the exception thrown by the execution (whether this caller's or the shared one)
+	 */
+	public Outcome<V> execute(K key, Execution<V> execution) throws Exception {
+		return execute(key, 0, execution);
+	}
+
+	/**
+	 * Execute the work for the specified key, or wait (for up to the specified time) for an execution already in progress for that key
+	 * @param key the key identifying the work
+	 * @param timeoutMillis the longest time to wait for another caller's execution, or 0 to wait indefinitely
+	 * @param execution the work
+	 * @return the outcome
+	 * @throws TimeoutException if another caller's execution did not complete in time
+	 * @throws Exception the exception thrown by the execution (whether this caller's or the shared one)
+	 */
+	public Outcome<V> execute(K key, long timeoutMillis, Execution<V> execution) throws Exception {
+
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+
+		while (true) {
+
+			CompletableFuture<V> future = new CompletableFuture<>();
+			CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+
+			if (existing == null) {
+				V value;
+				// the key is removed before the waiters are released, so that any that try again do not find this execution
+				try {
+					value = execution.execute();
+				} catch (Exception | Error e) {
+					inFlight.remove(key, future);
+					future.completeExceptionally(e);
+					throw e;
+				}
+				inFlight.remove(key, future);
+				future.complete(value);
+				return new Outcome<>(value, false);
+			}
+
+			coalescedCount.incrementAndGet();
+			try {
+				if (timeoutMillis > 0) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						throw new TimeoutException("Timed out after " + timeoutMillis + " ms waiting for an identical execution");
+					}
+					return new Outcome<>(existing.get(remaining, TimeUnit.MILLISECONDS), true);
+				}
+				return new Outcome<>(existing.get(), true);
+			} catch (TimeoutException e) {
+				coalescedCount.decrementAndGet();
+				throw e;
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (callerSpecificFailure.test(cause)) {
+					coalescedCount.decrementAndGet();
+					continue;
+				}
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw (Error) cause;
+			}
+
+		}
+
+	}
+
+	/**
+	 * Get the number of calls, since startup, that received the result of another caller's execution
+	 * @return the count
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * Get the number of executions currently in progress
+	 * @return the count
+	 */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ojbc.mondrian.QueryContext;
+import org.ojbc.mondrian.QueryProfile;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.rolling.FixedWindowRollingPolicy;
+import ch.qos.logback.core.rolling.RollingFileAppender;
+import ch.qos.logback.core.rolling.SizeBasedTriggeringPolicy;
+import ch.qos.logback.core.util.FileSize;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Log of the queries that took longer than a threshold to answer, one json object per line, recording each query's connection, role, token, MDX, cell count,
+ * response size, the time spent in each phase of processing, whether the result came from the cache, and the SQL statements Mondrian executed for it (and,
+ * if Mondrian's profiling was enabled for the query, its plan and timing).  Records go to a dedicated logback logger, with an asynchronous appender in front of
+ * a rolling file appender, so requests do not wait for the file; if the appender falls behind by more than a fixed number of records, further records are
+ * dropped (and counted) until it catches up.  When the log file reaches its maximum size, it is renamed (file.1, file.2, and so on, keeping a fixed number of
+ * old files) and a new file is started.
+ *
+ */
+@Slf4j
+public final class SlowQueryLog {
+
+	/**
+	 * The name of the logger records are written to
+	 */
+	public static final String RECORD_LOGGER_NAME = SlowQueryLog.class.getName() + ".records";
+
+	private static final int QUEUE_SIZE = 1000;
+
+	/**
+	 * A line in the log
+	 */
+	@Getter
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public static final class Entry {
+		private long time;
+		private Long requestId;
+		private String connectionName;
+		private String mondrianRole;
+		private String token;
+		private String query;
+		private long durationMillis;
+		private boolean cached;
+		private Long cellCount;
+		private Long responseBytes;
+		private Map<String, Double> phases;
+		private Long sqlStatementCount;
+		private List<QueryProfile.SqlStatementProfile> sqlStatements;
+		private String plan;
+		private List<String> mondrianTiming;
+	}
+
+	private final File file;
+	@Getter private final long thresholdMillis;
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final Logger recordLogger;
+	private final AsyncAppender asyncAppender;
+
+	/**
+	 * Open the log, creating it if it does not exist
+	 * @param file the log file
+	 * @param thresholdMillis queries that take at least this long are logged
+	 * @param maxFileBytes the size at which the log file is rolled over
+	 * @param maxFiles the number of rolled-over files to keep (at least one is always kept)
+	 */
+	public SlowQueryLog(File file, long thresholdMillis, long maxFileBytes, int maxFiles) {
+
+		this.file = file;
+		this.thresholdMillis = thresholdMillis;
+
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+		PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+		encoder.setContext(context);
+		encoder.setPattern("%msg%n");
+		encoder.start();
+
+		RollingFileAppender<ILoggingEvent> fileAppender = new RollingFileAppender<>();
+		fileAppender.setContext(context);
+		fileAppender.setName("slow-query-log-file");
+		fileAppender.setFile(file.getAbsolutePath());
+		fileAppender.setEncoder(encoder);
+
+		FixedWindowRollingPolicy rollingPolicy = new FixedWindowRollingPolicy();
+		rollingPolicy.setContext(context);
+		rollingPolicy.setParent(fileAppender);
+		rollingPolicy.setFileNamePattern(file.getAbsolutePath() + ".%i");
+		rollingPolicy.setMinIndex(1);
+		rollingPolicy.setMaxIndex(Math.max(1, maxFiles));
+		rollingPolicy.start();
+
+		SizeBasedTriggeringPolicy<ILoggingEvent> triggeringPolicy = new SizeBasedTriggeringPolicy<>();
+		triggeringPolicy.setContext(context);
+		triggeringPolicy.setMaxFileSize(new FileSize(maxFileBytes));
+		triggeringPolicy.start();
+
+		fileAppender.setRollingPolicy(rollingPolicy);
+		fileAppender.setTriggeringPolicy(triggeringPolicy);
+		fileAppender.start();
+
+		asyncAppender = new AsyncAppender();
+		asyncAppender.setContext(context);
+		asyncAppender.setName("slow-query-log");
+		asyncAppender.setQueueSize(QUEUE_SIZE);
+		// records are dropped only when the queue is full (and counted), never by level
+		asyncAppender.setDiscardingThreshold(0);
+		asyncAppender.setNeverBlock(true);
+		asyncAppender.addAppender(fileAppender);
+		asyncAppender.start();
+
+		recordLogger = context.getLogger(RECORD_LOGGER_NAME);
+		recordLogger.setLevel(Level.INFO);
+		recordLogger.setAdditive(false);
+		recordLogger.addAppender(asyncAppender);
+
+	}
+
+	/**
+	 * Whether a query of a given (predicted) duration would be logged
+	 * @param durationMillis the duration
+	 * @return true if the duration reaches the threshold
+	 */
+	public boolean isSlow(double durationMillis) {
+		return durationMillis >= thresholdMillis;
+	}
+
+	/**
+	 * Log a query, if it took at least the threshold to answer
+	 * @param connectionName the connection the query was submitted to
+	 * @param mondrianRole the role the query executed with
+	 * @param token the token of the request
+	 * @param query the MDX query
+	 * @param timings the timings of the request
+	 */
+	public void record(String connectionName, String mondrianRole, String token, String query, QueryTimings timings) {
+		long durationMillis = timings.getTotalMillis();
+		if (!isSlow(durationMillis)) {
+			return;
+		}
+		if (asyncAppender.getRemainingCapacity() == 0) {
+			if (droppedCount.getAndIncrement() % QUEUE_SIZE == 0) {
+				log.warn("Slow query log " + file + " is falling behind, " + droppedCount.get() + " records dropped so far");
+			}
+			return;
+		}
+		Entry entry = new Entry();
+		entry.time = System.currentTimeMillis();
+		entry.connectionName = connectionName;
+		entry.mondrianRole = mondrianRole;
+		entry.token = token;
+		entry.query = query;
+		entry.durationMillis = durationMillis;
+		entry.cached = timings.isCached();
+		entry.cellCount = timings.getCellCount() < 0 ? null : timings.getCellCount();
+		entry.responseBytes = timings.getResponseBytes() < 0 ? null : timings.getResponseBytes();
+		entry.phases = timings.getPhaseMillis();
+		QueryContext queryContext = timings.getQueryContext();
+		if (queryContext != null) {
+			entry.requestId = queryContext.getRequestId();
+			entry.sqlStatementCount = queryContext.getSqlCount();
+			entry.sqlStatements = queryContext.getSqlStatements();
+			QueryProfile profile = queryContext.getProfile();
+			if (profile != null) {
+				entry.plan = profile.getPlan();
+				entry.mondrianTiming = profile.getMondrianTiming();
+			}
+		}
+		try {
+			recordLogger.info(mapper.writeValueAsString(entry));
+		} catch (JsonProcessingException e) {
+			log.warn("Unable to write to slow query log " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Get the number of records dropped because the log was falling behind
+	 * @return the count
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Write the records already submitted, and stop writing to the log
+	 */
+	public void close() {
+		// stopping the asynchronous appender writes what it has queued, then stops the file appender
+		recordLogger.detachAndStopAllAppenders();
+	}
+
+	File rolledFile(int n) {
+		return new File(file.getAbsoluteFile().getParentFile(), file.getName() + "." + n);
+	}
+
+}
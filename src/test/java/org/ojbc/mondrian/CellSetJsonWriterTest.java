@@ -0,0 +1,61 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+import org.olap4j.CellSet;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class CellSetJsonWriterTest {
+
+	private ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void testSameShapeAsWrapper() throws Exception {
+		assertSameShape(TestCellSetFactory.getInstance().getSingleAxisSingleDimensionCellSet());
+		assertSameShape(TestCellSetFactory.getInstance().getDualAxisSingleDimensionCellSet());
+		assertSameShape(TestCellSetFactory.getInstance().getDualAxisTwoDimensionCellSet());
+		assertSameShape(TestCellSetFactory.getInstance().getDualAxisTwoDimensionTwoMeasuresCellSet());
+	}
+
+	@Test
+	public void testReadableAsWrapper() throws Exception {
+		CellSet cellSet = TestCellSetFactory.getInstance().getDualAxisTwoDimensionCellSet();
+		CellSetWrapper copy = mapper.readValue(stream(cellSet), CellSetWrapper.class);
+		assertEquals(new CellSetWrapper(cellSet), copy);
+	}
+
+	private void assertSameShape(CellSet cellSet) throws Exception {
+		String expected = mapper.writeValueAsString(new CellSetWrapper(cellSet));
+		assertEquals(expected, stream(cellSet));
+	}
+
+	private String stream(CellSet cellSet) throws Exception {
+		StringWriter writer = new StringWriter();
+		try (JsonGenerator generator = mapper.getFactory().createGenerator(writer)) {
+			CellSetJsonWriter.write(cellSet, generator);
+		}
+		return writer.toString();
+	}
+
+}
@@ -191,6 +191,17 @@ public class CellSetWrapperTest {
 		}
 		
 	}
-
+	
+	@Test
+	public void testEstimateSize() {
+		
+		CellSetWrapper small = new CellSetWrapper(TestCellSetFactory.getInstance().getSingleAxisSingleDimensionCellSet());
+		CellSetWrapper large = new CellSetWrapper(TestCellSetFactory.getInstance().getDualAxisTwoDimensionCellSet());
+		
+		// six cells on two axes, five positions, and (at least) seven position members
+		assertTrue(large.estimateSize() >= 6 * (160 + 2 * 20) + 5 * 150 + 7 * 250);
+		assertTrue(small.estimateSize() > 0 && small.estimateSize() < large.estimateSize());
+		
+	}
 
 }
@@ -2,13 +2,18 @@ package org.ojbc.mondrian;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.sql.Connection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import javax.sql.DataSource;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -82,6 +87,26 @@ public class MondrianConnectionFactoryTest {
 		log.info(json);
 	}
 	
+	@Test
+	public void testJdbcConnectionPool() throws Exception {
+		
+		MondrianConnectionFactory pooledFactory = new MondrianConnectionFactory();
+		pooledFactory.init("classpath*:pooled-test-connections.json", false);
+		try {
+			MondrianConnection pooledConnection = pooledFactory.getConnections().get("pooled");
+			assertNotNull(pooledConnection.getDataSourceName());
+			assertTrue(pooledFactory.getSqlStatistics().containsKey("pooled"));
+			DataSource dataSource = new PooledDataSourceResolver().lookup(pooledConnection.getDataSourceName());
+			try (Connection c = dataSource.getConnection()) {
+				assertTrue(c.isValid(5));
+			}
+			assertNull(factory.getConnections().get("test").getDataSourceName());
+		} finally {
+			pooledFactory.close();
+		}
+		
+	}
+	
 	@Test
 	public void testFoodMartConnection() throws Exception {
 		
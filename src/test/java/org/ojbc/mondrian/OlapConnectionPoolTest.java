@@ -0,0 +1,132 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.olap4j.OlapConnection;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class OlapConnectionPoolTest {
+
+	private AtomicInteger openedCount;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		log.debug("setUp");
+		openedCount = new AtomicInteger();
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+
+		OlapConnectionPool pool = new OlapConnectionPool("test", this::newConnection, settings("{\"MaxSize\" : 2}"));
+
+		OlapConnection c1 = pool.borrow();
+		assertEquals(1, pool.getActiveCount());
+		pool.release(c1);
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(1, pool.getIdleCount());
+
+		OlapConnection c2 = pool.borrow();
+		assertSame(c1, c2);
+		assertEquals(1, openedCount.get());
+
+		OlapConnection c3 = pool.borrow();
+		assertNotSame(c2, c3);
+		assertEquals(2, openedCount.get());
+
+	}
+
+	@Test
+	public void testBorrowTimeout() throws Exception {
+
+		OlapConnectionPool pool = new OlapConnectionPool("test", this::newConnection, settings("{\"MaxSize\" : 1, \"BorrowTimeoutSeconds\" : 0}"));
+
+		OlapConnection c1 = pool.borrow();
+		assertThrows(SQLTransientConnectionException.class, () -> pool.borrow());
+		pool.invalidate(c1);
+		verify(c1).close();
+
+		// the permit is returned even though the connection was discarded
+		pool.borrow();
+		assertEquals(2, openedCount.get());
+
+	}
+
+	@Test
+	public void testValidation() throws Exception {
+
+		OlapConnectionPool pool = new OlapConnectionPool("test", this::newConnection, settings("{}"));
+
+		OlapConnection c1 = pool.borrow();
+		pool.release(c1);
+		when(c1.isValid(anyInt())).thenReturn(false);
+
+		OlapConnection c2 = pool.borrow();
+		assertNotSame(c1, c2);
+		verify(c1).close();
+
+	}
+
+	@Test
+	public void testEvictIdle() throws Exception {
+
+		OlapConnectionPool pool = new OlapConnectionPool("test", this::newConnection, settings("{\"MaxIdleSeconds\" : 0}"));
+
+		OlapConnection c1 = pool.borrow();
+		pool.release(c1);
+		Thread.sleep(10);
+
+		assertEquals(1, pool.evictIdle());
+		assertEquals(0, pool.getIdleCount());
+		verify(c1).close();
+
+	}
+
+	private OlapConnection newConnection() {
+		openedCount.incrementAndGet();
+		OlapConnection ret = mock(OlapConnection.class);
+		try {
+			when(ret.isValid(anyInt())).thenReturn(true);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		return ret;
+	}
+
+	private static MondrianConnectionFactory.OlapConnectionPoolSettings settings(String json) throws Exception {
+		return new ObjectMapper().readValue(json, MondrianConnectionFactory.OlapConnectionPoolSettings.class);
+	}
+
+}
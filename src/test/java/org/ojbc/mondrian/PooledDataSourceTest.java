@@ -0,0 +1,110 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+public class PooledDataSourceTest {
+
+	@Test
+	public void testFetchSize() throws Exception {
+
+		DataSource delegate = mock(DataSource.class);
+		Connection connection = mock(Connection.class);
+		Statement statement = mock(Statement.class);
+		PreparedStatement preparedStatement = mock(PreparedStatement.class);
+		when(delegate.getConnection()).thenReturn(connection);
+		when(connection.createStatement()).thenReturn(statement);
+		when(connection.prepareStatement("select 1")).thenReturn(preparedStatement);
+
+		Connection c = new FetchSizeDataSource(delegate, 500).getConnection();
+		assertSame(statement, c.createStatement());
+		assertSame(preparedStatement, c.prepareStatement("select 1"));
+		c.close();
+
+		verify(statement).setFetchSize(500);
+		verify(preparedStatement).setFetchSize(500);
+		verify(connection).close();
+
+	}
+
+	@Test
+	public void testInstrumentation() throws Exception {
+
+		DataSource delegate = mock(DataSource.class);
+		Connection connection = mock(Connection.class);
+		Statement statement = mock(Statement.class);
+		ResultSet resultSet = mock(ResultSet.class);
+		when(delegate.getConnection()).thenReturn(connection);
+		when(connection.createStatement()).thenReturn(statement);
+		when(statement.executeQuery("select a from t where b = 1")).thenReturn(resultSet);
+		when(statement.executeQuery("select a from t where b = 2")).thenReturn(resultSet);
+		when(resultSet.next()).thenReturn(true, true, false, true, false);
+
+		SqlStatistics statistics = new SqlStatistics();
+		InstrumentedDataSource dataSource = new InstrumentedDataSource(delegate, statistics);
+		for (int i=1;i <= 2;i++) {
+			Connection c = dataSource.getConnection();
+			Statement s = c.createStatement();
+			ResultSet rs = s.executeQuery("select a from t where b = " + i);
+			while (rs.next()) {
+				// read the rows
+			}
+			rs.close();
+			s.close();
+			c.close();
+		}
+
+		verify(statement, times(2)).close();
+		verify(connection, times(2)).close();
+
+		List<SqlStatistics.StatementStatistics> top = statistics.getTopStatements(SqlStatistics.Ordering.TOTAL_TIME, 10);
+		assertEquals(1, top.size());
+		assertEquals("select a from t where b = ?", top.get(0).getFingerprint());
+		assertEquals(2, top.get(0).getExecutionCount());
+		assertEquals(3, top.get(0).getRowCount());
+		assertEquals(-1, top.get(0).getLastRequestId());
+
+	}
+
+	@Test
+	public void testResolver() throws Exception {
+		DataSource dataSource = mock(DataSource.class);
+		PooledDataSourceResolver.register("PooledDataSourceTest", dataSource);
+		try {
+			assertSame(dataSource, new PooledDataSourceResolver().lookup("PooledDataSourceTest"));
+		} finally {
+			PooledDataSourceResolver.unregister("PooledDataSourceTest");
+		}
+	}
+
+}
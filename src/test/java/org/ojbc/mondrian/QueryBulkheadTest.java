@@ -0,0 +1,134 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class QueryBulkheadTest {
+
+	@Test
+	public void testAdmission() throws Exception {
+
+		QueryBulkhead bulkhead = new QueryBulkhead("test", settings("{\"MaxConcurrent\" : 2}"));
+
+		bulkhead.acquire();
+		bulkhead.acquire();
+		assertEquals(2, bulkhead.getActiveCount());
+		assertEquals(0, bulkhead.getQueueDepth());
+		bulkhead.release();
+		assertEquals(1, bulkhead.getActiveCount());
+		bulkhead.release();
+		assertEquals(0, bulkhead.getActiveCount());
+		assertEquals(2, bulkhead.getAdmittedCount());
+		assertEquals(0, bulkhead.getRejectedCount());
+
+	}
+
+	@Test
+	public void testQueueFull() throws Exception {
+
+		QueryBulkhead bulkhead = new QueryBulkhead("test", settings("{\"MaxConcurrent\" : 1, \"MaxQueued\" : 1, \"QueueTimeoutSeconds\" : 10, \"RetryAfterSeconds\" : 7}"));
+		bulkhead.acquire();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+
+			CountDownLatch started = new CountDownLatch(1);
+			Future<?> waiter = executor.submit(() -> {
+				started.countDown();
+				bulkhead.acquire();
+				return null;
+			});
+			started.await();
+			while (bulkhead.getQueueDepth() == 0) {
+				Thread.sleep(10);
+			}
+
+			QueryRejectedException e = assertThrows(QueryRejectedException.class, () -> bulkhead.acquire());
+			assertEquals(7, e.getRetryAfterSeconds());
+			assertEquals(1, bulkhead.getRejectedCount());
+
+			bulkhead.release();
+			waiter.get(5, TimeUnit.SECONDS);
+			assertEquals(0, bulkhead.getQueueDepth());
+			assertEquals(1, bulkhead.getActiveCount());
+			assertEquals(2, bulkhead.getAdmittedCount());
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+	}
+
+	@Test
+	public void testQueueTimeout() throws Exception {
+
+		QueryBulkhead bulkhead = new QueryBulkhead("test", settings("{\"MaxConcurrent\" : 1, \"MaxQueued\" : 1, \"QueueTimeoutSeconds\" : 0}"));
+		bulkhead.acquire();
+
+		assertThrows(QueryRejectedException.class, () -> bulkhead.acquire());
+		assertEquals(1, bulkhead.getTimedOutCount());
+		assertEquals(0, bulkhead.getRejectedCount());
+		assertEquals(0, bulkhead.getQueueDepth());
+		assertEquals(1, bulkhead.getActiveCount());
+
+	}
+
+	@Test
+	public void testWaitTime() throws Exception {
+
+		QueryBulkhead bulkhead = new QueryBulkhead("test", settings("{\"MaxConcurrent\" : 1}"));
+		bulkhead.acquire();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> waiter = executor.submit(() -> {
+				bulkhead.acquire();
+				return null;
+			});
+			while (bulkhead.getQueueDepth() == 0) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(100);
+			bulkhead.release();
+			waiter.get(5, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertTrue(bulkhead.getTotalWaitMillis() >= 100);
+		assertTrue(bulkhead.getAverageWaitMillis() >= 50);
+
+	}
+
+	private static MondrianConnectionFactory.QueryConcurrencySettings settings(String json) throws Exception {
+		return new ObjectMapper().readValue(json, MondrianConnectionFactory.QueryConcurrencySettings.class);
+	}
+
+}
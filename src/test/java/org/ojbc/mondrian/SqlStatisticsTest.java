@@ -0,0 +1,94 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+public class SqlStatisticsTest {
+
+	@Test
+	public void testFingerprint() {
+		assertEquals("select \"t\".\"a\" as \"c0\" from \"t\" where \"t\".\"b\" = ? and \"t\".\"c\" = ?",
+				SqlStatistics.fingerprint("select \"t\".\"a\" as \"c0\"\n  from \"t\"\n  where \"t\".\"b\" = 'it''s' and \"t\".\"c\" = 1997"));
+		assertEquals("select * from t1 where x in (...) and y in (...)",
+				SqlStatistics.fingerprint("select * from t1 where x in (1, 2, 3.5) and y in ('a','b')"));
+		assertEquals("select col2 from table_3 where y = ?", SqlStatistics.fingerprint("select col2 from table_3 where y = 42"));
+		assertEquals("", SqlStatistics.fingerprint(null));
+	}
+
+	@Test
+	public void testAggregation() {
+
+		SqlStatistics statistics = new SqlStatistics();
+		statistics.record("select a from t where b = 1", 10_000_000, 5_000_000, 10, 1, "ROLE1");
+		statistics.record("select a from t where b = 2", 20_000_000, 0, 5, 2, "ROLE2");
+		statistics.record("select a from u", 1_000_000, 1_000_000, 100, 3, null);
+
+		assertEquals(2, statistics.size());
+		List<SqlStatistics.StatementStatistics> top = statistics.getTopStatements(SqlStatistics.Ordering.TOTAL_TIME, 10);
+		SqlStatistics.StatementStatistics s = top.get(0);
+		assertEquals("select a from t where b = ?", s.getFingerprint());
+		assertEquals(2, s.getExecutionCount());
+		assertEquals(30.0, s.getTotalExecuteMillis(), 0);
+		assertEquals(5.0, s.getTotalFetchMillis(), 0);
+		assertEquals(17.5, s.getAverageMillis(), 0);
+		assertEquals(20.0, s.getMaxMillis(), 0);
+		assertEquals(15, s.getRowCount());
+		assertEquals(2, s.getLastRequestId());
+		assertEquals(Arrays.asList("ROLE1", "ROLE2"), Arrays.asList(s.getMondrianRoles().toArray()));
+
+		assertEquals(Arrays.asList("select a from u", "select a from t where b = ?"), fingerprints(statistics.getTopStatements(SqlStatistics.Ordering.ROWS, 10)));
+		assertEquals(Arrays.asList("select a from t where b = ?"), fingerprints(statistics.getTopStatements(SqlStatistics.Ordering.COUNT, 1)));
+
+		// the statistics returned are copies
+		statistics.record("select a from t where b = 3", 1, 1, 1, 4, null);
+		assertEquals(2, s.getExecutionCount());
+
+		statistics.clear();
+		assertEquals(0, statistics.size());
+
+	}
+
+	@Test
+	public void testEviction() {
+		SqlStatistics statistics = new SqlStatistics(2);
+		statistics.record("select a from t", 30, 0, 0, -1, null);
+		statistics.record("select b from t", 10, 0, 0, -1, null);
+		statistics.record("select c from t", 20, 0, 0, -1, null);
+		assertEquals(Arrays.asList("select a from t", "select c from t"), fingerprints(statistics.getTopStatements(SqlStatistics.Ordering.TOTAL_TIME, 10)));
+	}
+
+	@Test
+	public void testOrderingNames() {
+		assertEquals(SqlStatistics.Ordering.TOTAL_TIME, SqlStatistics.Ordering.forName("totalTime"));
+		assertEquals(SqlStatistics.Ordering.MAX_TIME, SqlStatistics.Ordering.forName("max_time"));
+		assertEquals(SqlStatistics.Ordering.ROWS, SqlStatistics.Ordering.forName(" rows "));
+		assertThrows(IllegalArgumentException.class, () -> SqlStatistics.Ordering.forName("cost"));
+	}
+
+	private static List<String> fingerprints(List<SqlStatistics.StatementStatistics> statistics) {
+		return statistics.stream().map(SqlStatistics.StatementStatistics::getFingerprint).collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,357 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Generates a Mondrian schema, a star schema in a file-based HSQLDB database holding its data, and a *mondrian-connections.json file that registers the two as
+ * a connection, for measuring how metadata building, tidying and query execution scale with the size of a schema.
+ *
+ * Every cube uses every (shared) dimension.  Each dimension has a single hierarchy whose levels have the specified numbers of members, with the members of each
+ * level spread evenly among the members of the level above; its table has one row per member of the bottom level.  Fact rows reference bottom-level members
+ * chosen at random (from a fixed seed, so that generation is repeatable).
+ *
+ * The generator also writes a workload for the load test harness (see LoadTest) that queries the generated schema.
+ *
+ */
+@Slf4j
+public final class SyntheticSchemaGenerator {
+
+	private static final int BATCH_SIZE = 10000;
+
+	private final String name;
+	private final int cubeCount;
+	private final int dimensionCount;
+	private final int[] levelMemberCounts;
+	private final int measureCount;
+	private final long factRowCount;
+	private final long seed;
+
+	/**
+	 * Create a generator
+	 * @param name the name of the schema and connection
+	 * @param cubeCount the number of cubes (each with its own fact table)
+	 * @param dimensionCount the number of dimensions
+	 * @param levelMemberCounts the number of members in each level of every dimension, top level first (each at least as large as the one before)
+	 * @param measureCount the number of measures in each cube
+	 * @param factRowCount the number of rows in each fact table
+	 * @param seed the seed for choosing the members referenced by fact rows, and the values of measures
+	 */
+	public SyntheticSchemaGenerator(String name, int cubeCount, int dimensionCount, int[] levelMemberCounts, int measureCount, long factRowCount, long seed) {
+		if (cubeCount < 1 || dimensionCount < 1 || levelMemberCounts.length < 1 || measureCount < 1 || factRowCount < 0) {
+			throw new IllegalArgumentException("A synthetic schema needs at least one cube, dimension, level and measure");
+		}
+		for (int i=0;i < levelMemberCounts.length;i++) {
+			if (levelMemberCounts[i] < 1 || (i > 0 && levelMemberCounts[i] < levelMemberCounts[i-1])) {
+				throw new IllegalArgumentException("Level member counts must be positive and must not decrease from one level to the next: " + Arrays.toString(levelMemberCounts));
+			}
+		}
+		this.name = name;
+		this.cubeCount = cubeCount;
+		this.dimensionCount = dimensionCount;
+		this.levelMemberCounts = levelMemberCounts;
+		this.measureCount = measureCount;
+		this.factRowCount = factRowCount;
+		this.seed = seed;
+	}
+
+	/**
+	 * Generate the schema, database, connection definition and workload
+	 * @param directory the directory in which to generate them (created if necessary; an existing database of the same name there is replaced)
+	 * @return the connection definition file
+	 */
+	public File generate(File directory) throws IOException, SQLException {
+
+		directory = directory.getCanonicalFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create directory " + directory);
+		}
+
+		String jdbcUrl = "jdbc:hsqldb:file:" + new File(new File(directory, name + "-db"), name).getPath();
+		long start = System.currentTimeMillis();
+		try (Connection connection = DriverManager.getConnection(jdbcUrl, "SA", "")) {
+			createDatabase(connection);
+		}
+		log.info("Generated database " + jdbcUrl + " in " + (System.currentTimeMillis() - start) + " ms");
+
+		File schemaFile = new File(directory, name + ".xml");
+		writeSchema(schemaFile);
+
+		Map<String, Object> jdbcConnectionPool = new LinkedHashMap<>();
+		jdbcConnectionPool.put("MaxSize", 10);
+		jdbcConnectionPool.put("ReadOnly", true);
+		Map<String, Object> connection = new LinkedHashMap<>();
+		connection.put("JdbcDriver", "org.hsqldb.jdbc.JDBCDriver");
+		connection.put("Jdbc", jdbcUrl + ";readonly=true");
+		connection.put("JdbcUser", "SA");
+		connection.put("JdbcPassword", "");
+		connection.put("Catalog", schemaFile.toURI().toString());
+		connection.put("Description", "Synthetic schema: " + cubeCount + " cubes, " + dimensionCount + " dimensions with level member counts " +
+				Arrays.toString(levelMemberCounts) + ", " + factRowCount + " fact rows per cube");
+		connection.put("JdbcConnectionPool", jdbcConnectionPool);
+		Map<String, Object> connections = new LinkedHashMap<>();
+		connections.put(name, connection);
+		File connectionsFile = new File(directory, name + "-mondrian-connections.json");
+		new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(connectionsFile, connections);
+
+		new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(directory, name + "-workload.json"), createWorkload());
+
+		log.info("Wrote connection " + name + " to " + connectionsFile);
+		return connectionsFile;
+
+	}
+
+	static String dimensionName(int d) {
+		return "D" + d;
+	}
+
+	static String levelName(int d, int l) {
+		return dimensionName(d) + " Level " + l;
+	}
+
+	static String cubeName(int c) {
+		return "Cube " + c;
+	}
+
+	private void createDatabase(Connection connection) throws SQLException {
+
+		connection.setAutoCommit(false);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("SET DATABASE DEFAULT TABLE TYPE CACHED");
+			statement.execute("SET FILES LOG FALSE");
+			statement.execute("SET FILES CACHE ROWS 1000000");
+			statement.execute("SET FILES CACHE SIZE 1000000");
+		}
+
+		int leafCount = levelMemberCounts[levelMemberCounts.length - 1];
+
+		for (int d=1;d <= dimensionCount;d++) {
+			String table = dimensionName(d);
+			StringBuilder ddl = new StringBuilder("CREATE TABLE " + table + " (" + table + "_ID INTEGER PRIMARY KEY");
+			StringBuilder insert = new StringBuilder("INSERT INTO " + table + " VALUES (?");
+			for (int l=1;l <= levelMemberCounts.length;l++) {
+				ddl.append(", L" + l + "_KEY INTEGER NOT NULL, L" + l + "_NAME VARCHAR(64) NOT NULL");
+				insert.append(", ?, ?");
+			}
+			recreateTable(connection, table, ddl.append(")").toString());
+			try (PreparedStatement ps = connection.prepareStatement(insert.append(")").toString())) {
+				for (int i=0;i < leafCount;i++) {
+					ps.setInt(1, i);
+					for (int l=1;l <= levelMemberCounts.length;l++) {
+						int key = levelKey(i, l);
+						ps.setInt(l * 2, key);
+						ps.setString(l * 2 + 1, levelName(d, l) + " Member " + key);
+					}
+					ps.addBatch();
+					if ((i + 1) % BATCH_SIZE == 0 || i == leafCount - 1) {
+						ps.executeBatch();
+						connection.commit();
+					}
+				}
+			}
+			log.info("Generated dimension table " + table + " with " + leafCount + " rows");
+		}
+
+		Random random = new Random(seed);
+
+		for (int c=1;c <= cubeCount;c++) {
+			String table = "F" + c;
+			StringBuilder ddl = new StringBuilder("CREATE TABLE " + table + " (");
+			StringBuilder insert = new StringBuilder("INSERT INTO " + table + " VALUES (");
+			for (int d=1;d <= dimensionCount;d++) {
+				ddl.append(dimensionName(d) + "_ID INTEGER NOT NULL, ");
+				insert.append("?, ");
+			}
+			for (int m=1;m <= measureCount;m++) {
+				ddl.append("M" + m + " INTEGER NOT NULL" + (m < measureCount ? ", " : ")"));
+				insert.append(m < measureCount ? "?, " : "?)");
+			}
+			recreateTable(connection, table, ddl.toString());
+			try (PreparedStatement ps = connection.prepareStatement(insert.toString())) {
+				for (long r=0;r < factRowCount;r++) {
+					for (int d=1;d <= dimensionCount;d++) {
+						ps.setInt(d, random.nextInt(leafCount));
+					}
+					for (int m=1;m <= measureCount;m++) {
+						ps.setInt(dimensionCount + m, random.nextInt(1000));
+					}
+					ps.addBatch();
+					if ((r + 1) % BATCH_SIZE == 0 || r == factRowCount - 1) {
+						ps.executeBatch();
+						connection.commit();
+					}
+				}
+			}
+			log.info("Generated fact table " + table + " with " + factRowCount + " rows");
+		}
+
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("SET FILES LOG TRUE");
+			statement.execute("SHUTDOWN");
+		}
+
+	}
+
+	private static void recreateTable(Connection connection, String table, String ddl) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE " + table + " IF EXISTS");
+			statement.execute(ddl);
+		}
+	}
+
+	/**
+	 * Get the key of the member of a level that is the ancestor of (or is) a bottom-level member.  Each member's parent is derived from the member's own key
+	 * (rather than each level's key from the leaf), so that every member has a single parent even when a level's count does not divide the next one's.
+	 * @param leaf the index of the bottom-level member
+	 * @param level the level, 1 being the top
+	 * @return the key
+	 */
+	int levelKey(int leaf, int level) {
+		int key = leaf;
+		for (int l=levelMemberCounts.length;l > level;l--) {
+			key = (int) ((long) key * levelMemberCounts[l - 2] / levelMemberCounts[l - 1]);
+		}
+		return key;
+	}
+
+	private void writeSchema(File schemaFile) throws IOException {
+		try (PrintWriter out = new PrintWriter(schemaFile, StandardCharsets.UTF_8.name())) {
+			out.println("<Schema name='" + name + "'>");
+			for (int d=1;d <= dimensionCount;d++) {
+				String dimension = dimensionName(d);
+				out.println();
+				out.println("  <Dimension name='" + dimension + "'>");
+				out.println("    <Hierarchy name='" + dimension + "' allMemberName='All' primaryKey='" + dimension + "_ID' hasAll='true'>");
+				out.println("      <Table name='" + dimension + "'/>");
+				for (int l=1;l <= levelMemberCounts.length;l++) {
+					out.println("      <Level name='" + levelName(d, l) + "' column='L" + l + "_KEY' nameColumn='L" + l + "_NAME' type='Integer' uniqueMembers='true' approxRowCount='" +
+							levelMemberCounts[l - 1] + "'/>");
+				}
+				out.println("    </Hierarchy>");
+				out.println("  </Dimension>");
+			}
+			for (int c=1;c <= cubeCount;c++) {
+				out.println();
+				out.println("  <Cube name='" + cubeName(c) + "'>");
+				out.println("    <Table name='F" + c + "'/>");
+				for (int d=1;d <= dimensionCount;d++) {
+					out.println("    <DimensionUsage name='" + dimensionName(d) + "' source='" + dimensionName(d) + "' foreignKey='" + dimensionName(d) + "_ID'/>");
+				}
+				for (int m=1;m <= measureCount;m++) {
+					out.println("    <Measure name='M" + m + "' column='M" + m + "' aggregator='sum' formatString='#,###'/>");
+				}
+				out.println("  </Cube>");
+			}
+			out.println();
+			out.println("</Schema>");
+		}
+	}
+
+	private List<Map<String, Object>> createWorkload() {
+
+		int levelCount = levelMemberCounts.length;
+		String topLevel = "[" + dimensionName(1) + "].[" + levelName(1, 1) + "].Members";
+		String rows = dimensionCount > 1 ? "CrossJoin(" + topLevel + ", [" + dimensionName(2) + "].[" + levelName(2, 1) + "].Members)" : topLevel;
+		String cube = "[" + cubeName(1) + "]";
+
+		List<Map<String, Object>> ret = new ArrayList<>();
+		ret.add(createWorkloadItem("query (top levels)", 4, "SELECT {[Measures].[M1]} ON COLUMNS, NON EMPTY " + rows + " ON ROWS FROM " + cube, false));
+		ret.add(createWorkloadItem("query (tidy)", 2, "SELECT {[Measures].[M1]} ON COLUMNS, NON EMPTY [" + dimensionName(1) + "].[" +
+				levelName(1, Math.min(2, levelCount)) + "].Members ON ROWS FROM " + cube, true));
+		ret.add(createWorkloadItem("query (bottom level, uncached)", 1, "WITH MEMBER [Measures].[Request ${sequence}] AS [Measures].[M1] * 2 " +
+				"SELECT {[Measures].[M1], [Measures].[Request ${sequence}]} ON COLUMNS, TopCount([" + dimensionName(1) + "].[" + levelName(1, levelCount) +
+				"].Members, 100, [Measures].[M1]) ON ROWS FROM " + cube, false));
+		Map<String, Object> metadata = new LinkedHashMap<>();
+		metadata.put("Name", "getMetadata");
+		metadata.put("Weight", 1);
+		metadata.put("Path", "/getMetadata?connectionName=" + name);
+		ret.add(metadata);
+		return ret;
+
+	}
+
+	private Map<String, Object> createWorkloadItem(String itemName, int weight, String query, boolean tidy) {
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("connectionName", name);
+		body.put("query", query);
+		if (tidy) {
+			body.put("tidy", Collections.singletonMap("enabled", true));
+		}
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("Name", itemName);
+		ret.put("Weight", weight);
+		ret.put("Path", "/query");
+		ret.put("Body", body);
+		return ret;
+	}
+
+	/**
+	 * Generate a schema from the command line.  Options (given as --name=value) are directory, name, cubes, dimensions, levels (a comma-separated list of
+	 * member counts), measures, factRows and seed.
+	 */
+	public static void main(String... args) throws Exception {
+
+		File directory = new File("target/synthetic-schema");
+		String name = "synthetic";
+		int cubes = 1;
+		int dimensions = 3;
+		int[] levels = {10, 100, 1000};
+		int measures = 2;
+		long factRows = 100000;
+		long seed = 1;
+
+		for (String arg : args) {
+			String[] nameValue = arg.replaceFirst("^--", "").split("=", 2);
+			String value = nameValue.length > 1 ? nameValue[1] : "";
+			switch (nameValue[0]) {
+				case "directory": directory = new File(value); break;
+				case "name": name = value; break;
+				case "cubes": cubes = Integer.parseInt(value); break;
+				case "dimensions": dimensions = Integer.parseInt(value); break;
+				case "levels": levels = Arrays.stream(value.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray(); break;
+				case "measures": measures = Integer.parseInt(value); break;
+				case "factRows": factRows = Long.parseLong(value); break;
+				case "seed": seed = Long.parseLong(value); break;
+				default: throw new IllegalArgumentException("Unrecognized option " + arg);
+			}
+		}
+
+		new SyntheticSchemaGenerator(name, cubes, dimensions, levels, measures, factRows, seed).generate(directory);
+
+	}
+
+}
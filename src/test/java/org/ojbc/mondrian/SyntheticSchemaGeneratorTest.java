@@ -0,0 +1,116 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ojbc.mondrian.MondrianConnectionFactory.MondrianConnection;
+import org.w3c.dom.Document;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SyntheticSchemaGeneratorTest {
+
+	@TempDir
+	File directory;
+
+	@Test
+	public void testGenerate() throws Exception {
+
+		File connectionsFile = new SyntheticSchemaGenerator("scaling", 2, 2, new int[] {3, 12}, 2, 500, 1).generate(directory);
+		assertEquals("scaling-mondrian-connections.json", connectionsFile.getName());
+
+		Map<String, MondrianConnection> connections = new ObjectMapper().readValue(connectionsFile, new TypeReference<Map<String, MondrianConnection>>() {});
+		MondrianConnection connection = connections.get("scaling");
+		assertTrue(connection.validate());
+		assertTrue(connection.getJdbcConnectionPoolSettings().isReadOnly());
+
+		Document schema = connection.getMondrianSchemaContentDocument();
+		assertEquals(2, schema.getElementsByTagName("Cube").getLength());
+		assertEquals(2, schema.getElementsByTagName("Dimension").getLength());
+		assertEquals(4, schema.getElementsByTagName("Level").getLength());
+		assertEquals(4, schema.getElementsByTagName("DimensionUsage").getLength());
+		assertEquals(4, schema.getElementsByTagName("Measure").getLength());
+
+		try (Connection c = DriverManager.getConnection(connection.getJdbcConnectionString(), "SA", ""); Statement s = c.createStatement()) {
+			assertEquals(12, count(s, "SELECT COUNT(*) FROM D1"));
+			assertEquals(3, count(s, "SELECT COUNT(DISTINCT L1_KEY) FROM D2"));
+			// each member of the top level has the same number of children, and no child has two parents
+			assertEquals(4, count(s, "SELECT COUNT(*) FROM D1 WHERE L1_KEY = 1"));
+			assertEquals(12, count(s, "SELECT COUNT(DISTINCT L1_KEY * 100 + L2_KEY) FROM D1"));
+			assertEquals(500, count(s, "SELECT COUNT(*) FROM F1"));
+			assertEquals(500, count(s, "SELECT COUNT(*) FROM F2 JOIN D1 ON F2.D1_ID = D1.D1_ID JOIN D2 ON F2.D2_ID = D2.D2_ID"));
+			s.execute("SHUTDOWN");
+		}
+
+		List<Map<String, Object>> workload = new ObjectMapper().readValue(new File(directory, "scaling-workload.json"), new TypeReference<List<Map<String, Object>>>() {});
+		assertEquals(4, workload.size());
+		assertEquals("/getMetadata?connectionName=scaling", workload.get(3).get("Path"));
+
+	}
+
+	@Test
+	public void testNonDividingLevelCounts() {
+
+		int[] counts = new int[] {2, 3, 7};
+		SyntheticSchemaGenerator generator = new SyntheticSchemaGenerator("scaling", 1, 1, counts, 1, 10, 1);
+		for (int level=1;level < counts.length;level++) {
+			// every member of a level has exactly one parent, and every level has as many members as it was given
+			Map<Integer, Integer> parents = new HashMap<>();
+			Set<Integer> keys = new HashSet<>();
+			for (int leaf=0;leaf < counts[counts.length - 1];leaf++) {
+				int key = generator.levelKey(leaf, level + 1);
+				int parent = generator.levelKey(leaf, level);
+				assertEquals(parent, (int) parents.computeIfAbsent(key, k -> parent), "member " + key + " of level " + (level + 1) + " has two parents");
+				keys.add(generator.levelKey(leaf, level));
+			}
+			assertEquals(counts[level], parents.size());
+			assertEquals(counts[level - 1], keys.size());
+		}
+
+	}
+
+	@Test
+	public void testInvalidShape() {
+		assertThrows(IllegalArgumentException.class, () -> new SyntheticSchemaGenerator("scaling", 1, 1, new int[] {10, 5}, 1, 10, 1));
+		assertThrows(IllegalArgumentException.class, () -> new SyntheticSchemaGenerator("scaling", 0, 1, new int[] {10}, 1, 10, 1));
+	}
+
+	private static long count(Statement s, String sql) throws Exception {
+		try (ResultSet rs = s.executeQuery(sql)) {
+			rs.next();
+			return rs.getLong(1);
+		}
+	}
+
+}
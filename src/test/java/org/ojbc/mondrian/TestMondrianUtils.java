@@ -21,6 +21,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.StreamSupport;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -68,4 +70,39 @@ public class TestMondrianUtils {
 		
 	}
 
+	@Test
+	public void testCartesianSpliterator() {
+		
+		int[] sizes = new int[] {3, 4, 2};
+		List<String> combinations = new ArrayList<>();
+		CartesianSpliterator spliterator = new CartesianSpliterator(sizes);
+		assertEquals(24, spliterator.estimateSize());
+		spliterator.forEachRemaining(indexes -> combinations.add(Arrays.toString(indexes)));
+		
+		assertEquals(24, combinations.size());
+		assertEquals("[0, 0, 0]", combinations.get(0));
+		assertEquals("[0, 0, 1]", combinations.get(1));
+		assertEquals("[0, 1, 0]", combinations.get(2));
+		assertEquals("[1, 0, 0]", combinations.get(8));
+		assertEquals("[2, 3, 1]", combinations.get(23));
+		assertEquals(0, spliterator.estimateSize());
+		
+		// splitting yields contiguous chunks that together cover every combination in order
+		List<String> splitCombinations = new ArrayList<>();
+		spliterator = new CartesianSpliterator(sizes);
+		spliterator.tryAdvance(indexes -> splitCombinations.add(Arrays.toString(indexes)));
+		Spliterator<int[]> prefix = spliterator.trySplit();
+		Spliterator<int[]> prefixPrefix = prefix.trySplit();
+		assertEquals(23, prefixPrefix.estimateSize() + prefix.estimateSize() + spliterator.estimateSize());
+		prefixPrefix.forEachRemaining(indexes -> splitCombinations.add(Arrays.toString(indexes)));
+		prefix.forEachRemaining(indexes -> splitCombinations.add(Arrays.toString(indexes)));
+		spliterator.forEachRemaining(indexes -> splitCombinations.add(Arrays.toString(indexes)));
+		assertEquals(combinations, splitCombinations);
+		
+		assertEquals(24, StreamSupport.stream(new CartesianSpliterator(sizes), true).count());
+		assertEquals(0, new CartesianSpliterator(new int[] {3, 0, 2}).estimateSize());
+		assertEquals(1, new CartesianSpliterator(new int[0]).estimateSize());
+		
+	}
+
 }
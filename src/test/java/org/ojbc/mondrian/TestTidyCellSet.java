@@ -1,8 +1,12 @@
 package org.ojbc.mondrian;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,6 +15,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.olap4j.CellSet;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -72,6 +78,15 @@ public class TestTidyCellSet {
 		assertEquals("D2_V3", rows.get(5).get("[D2].[D2].[D2_V3]"));
 	}
 	
+	@Test
+	public void testEstimateSize() {
+		tidyCellSet.init(TestCellSetFactory.getInstance().getSingleAxisSingleDimensionCellSet());
+		long small = tidyCellSet.estimateSize();
+		assertTrue(small > 0);
+		tidyCellSet.init(TestCellSetFactory.getInstance().getDualAxisTwoDimensionCellSet());
+		assertTrue(tidyCellSet.estimateSize() >= 6 * small);
+	}
+	
 	@Test
 	public void testDualAxisTwoDimensionsTwoMeasures() {
 		CellSet cellSet = TestCellSetFactory.getInstance().getDualAxisTwoDimensionTwoMeasuresCellSet();
@@ -114,4 +129,24 @@ public class TestTidyCellSet {
 		assertEquals("D2_V1", rows.get(0).get("D2_V1"));
 	}
 	
+	@Test
+	public void testColumnOrder() {
+		CellSet cellSet = TestCellSetFactory.getInstance().getDualAxisTwoDimensionTwoMeasuresCellSet();
+		tidyCellSet.init(cellSet);
+		List<Map<String, Object>> rows = tidyCellSet.getValues();
+		assertEquals(Arrays.asList("[D1].[D1].[D1_V1]", "[D2].[D2].[D2_V1]", "M1", "M2"), new ArrayList<>(rows.get(0).keySet()));
+		assertTrue(rows.get(0).containsKey("M2"));
+		assertFalse(rows.get(0).containsKey("[D1].[D1].[D1_V2]"));
+	}
+	
+	@Test
+	public void testJsonRoundTrip() throws Exception {
+		CellSet cellSet = TestCellSetFactory.getInstance().getDualAxisTwoDimensionCellSet();
+		tidyCellSet.init(cellSet);
+		ObjectMapper mapper = new ObjectMapper();
+		String json = mapper.writeValueAsString(tidyCellSet);
+		TidyCellSetWrapper copy = mapper.readValue(json, TidyCellSetWrapper.class);
+		assertEquals(tidyCellSet.getValues(), copy.getValues());
+	}
+	
 }
@@ -39,6 +39,10 @@ public class BearerTokenRequestAuthorizerTest {
 		Map<String, String> innerMap = new HashMap<>();
 		innerMap.put("test", "ROLE1");
 		tokenRoleMappings.put("TOKEN1", innerMap);
+		Map<String, String> weightedMap = new HashMap<>();
+		weightedMap.put("test", "ROLE1");
+		weightedMap.put(RequestAuthorizer.SCHEDULING_WEIGHT_KEY, "4");
+		tokenRoleMappings.put("TOKEN2", weightedMap);
 		bearerTokenRequestAuthorizer = new BearerTokenRequestAuthorizer();
 		bearerTokenRequestAuthorizer.setTokenRoleMappings(tokenRoleMappings);
 		assertNotNull(bearerTokenRequestAuthorizer);
@@ -61,4 +65,22 @@ public class BearerTokenRequestAuthorizerTest {
 		
 	}
 	
+	@Test
+	public void testSchedulingWeight() {
+		
+		HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+		
+		Mockito.when(request.getHeader("Authorization")).thenReturn("Bearer TOKEN1");
+		RequestAuthorizer.RequestAuthorizationStatus status = bearerTokenRequestAuthorizer.authorizeRequest(request, "test");
+		assertTrue(status.authorized);
+		assertEquals(1, status.schedulingWeight);
+		
+		Mockito.when(request.getHeader("Authorization")).thenReturn("Bearer TOKEN2");
+		status = bearerTokenRequestAuthorizer.authorizeRequest(request, "test");
+		assertTrue(status.authorized);
+		assertEquals("ROLE1", status.mondrianRole);
+		assertEquals(4, status.schedulingWeight);
+		
+	}
+	
 }
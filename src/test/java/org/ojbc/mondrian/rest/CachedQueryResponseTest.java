@@ -0,0 +1,121 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.ojbc.mondrian.CellSetWrapper;
+import org.ojbc.mondrian.CellSetWrapperType;
+import org.ojbc.mondrian.TestCellSetFactory;
+import org.ojbc.mondrian.TidyCellSetWrapper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class CachedQueryResponseTest {
+
+	private ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void testFormats() throws Exception {
+
+		CellSetWrapper result = new CellSetWrapper(TestCellSetFactory.getInstance().getDualAxisTwoDimensionCellSet());
+		byte[] json = mapper.writeValueAsBytes(result);
+
+		CachedQueryResponse response = CachedQueryResponse.create(result, CachedQueryResponse.Format.OBJECTS, mapper);
+		assertFalse(response.isSerialized());
+		assertSame(result, response.getResult());
+		assertEquals(result.estimateSize() + 48, response.getEstimatedSize());
+		assertTrue(response.getEstimatedSize() > 48);
+
+		response = CachedQueryResponse.create(result, CachedQueryResponse.Format.JSON, mapper);
+		assertTrue(response.isSerialized());
+		assertNull(response.getContentEncoding());
+		assertArrayEquals(json, response.getBody());
+		assertTrue(response.isAcceptedBy(null));
+		assertTrue(response.getEstimatedSize() >= json.length);
+
+		for (CachedQueryResponse.Format format : new CachedQueryResponse.Format[] {CachedQueryResponse.Format.GZIP, CachedQueryResponse.Format.DEFLATE}) {
+			response = CachedQueryResponse.create(result, format, mapper);
+			assertEquals(format.name().toLowerCase(), response.getContentEncoding());
+			assertTrue(response.getBody().length < json.length);
+			assertTrue(response.getEstimatedSize() >= response.getBody().length && response.getEstimatedSize() < json.length);
+			assertArrayEquals(json, response.getUncompressedBody());
+			assertEquals(result, mapper.readValue(response.getUncompressedBody(), CellSetWrapper.class));
+		}
+
+		assertEquals(CachedQueryResponse.Format.GZIP, CachedQueryResponse.Format.forName(" Gzip "));
+		assertThrows(IllegalArgumentException.class, () -> CachedQueryResponse.Format.forName("brotli"));
+
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+
+		TidyCellSetWrapper tidy = new TidyCellSetWrapper();
+		tidy.init(TestCellSetFactory.getInstance().getDualAxisTwoDimensionCellSet());
+		CellSetWrapperType[] results = new CellSetWrapperType[] {new CellSetWrapper(TestCellSetFactory.getInstance().getDualAxisTwoDimensionCellSet()), tidy};
+
+		for (CellSetWrapperType result : results) {
+			for (CachedQueryResponse.Format format : CachedQueryResponse.Format.values()) {
+				CachedQueryResponse response = CachedQueryResponse.create(result, format, mapper);
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+					oos.writeObject(response);
+				}
+				CachedQueryResponse copy;
+				try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+					copy = (CachedQueryResponse) ois.readObject();
+				}
+				assertEquals(response.getEstimatedSize(), copy.getEstimatedSize());
+				assertEquals(response.getContentEncoding(), copy.getContentEncoding());
+				if (format == CachedQueryResponse.Format.OBJECTS) {
+					// tidy rows must still omit the columns they have no value for
+					assertEquals(mapper.writeValueAsString(result), mapper.writeValueAsString(copy.getResult()));
+				} else {
+					assertArrayEquals(response.getBody(), copy.getBody());
+				}
+			}
+		}
+
+	}
+
+	@Test
+	public void testAcceptEncoding() throws Exception {
+		CellSetWrapper result = new CellSetWrapper(TestCellSetFactory.getInstance().getSingleAxisSingleDimensionCellSet());
+		CachedQueryResponse response = CachedQueryResponse.create(result, CachedQueryResponse.Format.GZIP, mapper);
+		assertTrue(response.isAcceptedBy("gzip, deflate, br"));
+		assertTrue(response.isAcceptedBy("deflate;q=1.0, GZIP;q=0.5"));
+		assertTrue(response.isAcceptedBy("*"));
+		assertFalse(response.isAcceptedBy(null));
+		assertFalse(response.isAcceptedBy("deflate"));
+		assertFalse(response.isAcceptedBy("gzip;q=0"));
+		assertFalse(response.isAcceptedBy("identity"));
+	}
+
+}
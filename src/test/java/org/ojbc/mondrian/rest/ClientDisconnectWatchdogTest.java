@@ -0,0 +1,154 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.Test;
+import org.olap4j.OlapStatement;
+
+public class ClientDisconnectWatchdogTest {
+
+	@Test
+	public void testDisconnectWhileExecuting() throws Exception {
+
+		ClientOutputStream out = new ClientOutputStream();
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		when(response.getOutputStream()).thenReturn(out);
+		doAnswer(invocation -> {
+			out.flush();
+			return null;
+		}).when(response).flushBuffer();
+
+		// the statement "executes" until it is cancelled
+		CountDownLatch cancelled = new CountDownLatch(1);
+		OlapStatement statement = mock(OlapStatement.class);
+		doAnswer(invocation -> {
+			cancelled.countDown();
+			return null;
+		}).when(statement).cancel();
+
+		RunningQuery runningQuery = new RunningQueryRegistry().register("test", null, "TOKEN1", "select from Test_F1");
+		runningQuery.setStatement(statement);
+		QueryTimings timings = new QueryTimings();
+		timings.setRunningQuery(runningQuery);
+
+		ClientDisconnectWatchdog watchdog = new ClientDisconnectWatchdog(50);
+		try {
+			ClientDisconnectWatchdog.Watch watch = watchdog.watch(response, timings::abandon);
+			// while the client is connected, the query carries on
+			assertTrue(out.written.await(5, TimeUnit.SECONDS));
+			assertFalse(runningQuery.isCancelled());
+			verify(response).setStatus(200);
+			out.connected.set(false);
+			assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+			assertTrue(runningQuery.isCancelled());
+			assertTrue(timings.isAbandoned());
+			assertTrue(watch.isDisconnected());
+			// only whitespace was written before the client went away
+			assertTrue(out.toString().trim().isEmpty());
+			watch.stop();
+		} finally {
+			watchdog.close();
+		}
+
+		// a query the abandoned request starts afterwards is cancelled as well
+		RunningQuery nextQuery = new RunningQueryRegistry().register("test", null, "TOKEN1", "select from Test_F1");
+		timings.setRunningQuery(nextQuery);
+		assertTrue(nextQuery.isCancelled());
+		assertThrows(QueryCancelledException.class, () -> nextQuery.setStatement(mock(OlapStatement.class)));
+
+	}
+
+	@Test
+	public void testResponseReadyBeforeCheck() throws Exception {
+
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		ClientDisconnectWatchdog watchdog = new ClientDisconnectWatchdog(50);
+		try {
+			QueryTimings timings = new QueryTimings();
+			ClientDisconnectWatchdog.Watch watch = watchdog.watch(response, timings::abandon);
+			watch.stop();
+			Thread.sleep(200);
+			verify(response, never()).getOutputStream();
+			verify(response, never()).flushBuffer();
+			assertFalse(watch.isDisconnected());
+			assertFalse(timings.isAbandoned());
+		} finally {
+			watchdog.close();
+		}
+
+		assertThrows(IllegalArgumentException.class, () -> new ClientDisconnectWatchdog(0));
+
+	}
+
+	private static final class ClientOutputStream extends ServletOutputStream {
+
+		final AtomicBoolean connected = new AtomicBoolean(true);
+		final CountDownLatch written = new CountDownLatch(1);
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		@Override
+		public void write(int b) throws IOException {
+			if (!connected.get()) {
+				throw new IOException("Broken pipe");
+			}
+			bytes.write(b);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (!connected.get()) {
+				throw new IOException("Broken pipe");
+			}
+			written.countDown();
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+		}
+
+		@Override
+		public String toString() {
+			return bytes.toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class FairQuerySchedulerTest {
+
+	@Test
+	public void testAloneUsesAllSlots() throws Exception {
+		FairQueryScheduler scheduler = new FairQueryScheduler(3, 100);
+		List<FairQueryScheduler.Ticket> tickets = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			tickets.add(scheduler.acquire("BATCH", 1));
+		}
+		assertEquals(3, scheduler.getRunningCount());
+		assertEquals(0, scheduler.getWaitingCount());
+		tickets.forEach(scheduler::release);
+		assertEquals(0, scheduler.getRunningCount());
+	}
+
+	@Test
+	public void testFairAdmission() throws Exception {
+
+		FairQueryScheduler scheduler = new FairQueryScheduler(1, 100);
+		// another token's query holds the only slot while the others queue up
+		FairQueryScheduler.Ticket blocker = scheduler.acquire("OTHER", 1);
+
+		List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+
+			// a batch consumer queues up several queries before an interactive user submits one
+			for (int i = 0; i < 4; i++) {
+				submit(executor, scheduler, "BATCH", 1, admitted);
+				awaitWaiting(scheduler, "BATCH", i + 1);
+			}
+			submit(executor, scheduler, "INTERACTIVE", 1, admitted);
+			awaitWaiting(scheduler, "INTERACTIVE", 1);
+
+			scheduler.release(blocker);
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(5, admitted.size());
+		// the interactive query is admitted ahead of most of the batch consumer's backlog
+		assertTrue(admitted.indexOf("INTERACTIVE") <= 1, admitted.toString());
+
+	}
+
+	@Test
+	public void testWeights() throws Exception {
+
+		FairQueryScheduler scheduler = new FairQueryScheduler(1, 100);
+		// another token's query holds the only slot while the others queue up
+		FairQueryScheduler.Ticket blocker = scheduler.acquire("OTHER", 1);
+
+		List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+
+			for (int i = 0; i < 6; i++) {
+				submit(executor, scheduler, "LIGHT", 1, admitted);
+				awaitWaiting(scheduler, "LIGHT", i + 1);
+				submit(executor, scheduler, "HEAVY", 3, admitted);
+				awaitWaiting(scheduler, "HEAVY", i + 1);
+			}
+
+			scheduler.release(blocker);
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(12, admitted.size());
+		// of the first eight queries admitted, the token with three times the weight gets (about) three times as many
+		long heavy = admitted.subList(0, 8).stream().filter("HEAVY"::equals).count();
+		assertTrue(heavy >= 5, admitted.toString());
+
+	}
+
+	@Test
+	public void testIdleTokensForgotten() throws Exception {
+
+		FairQueryScheduler scheduler = new FairQueryScheduler(2, 100);
+		FairQueryScheduler.Ticket first = scheduler.acquire("TOKEN1", 1);
+		FairQueryScheduler.Ticket second = scheduler.acquire("TOKEN1", 1);
+		// queries without a token (e.g. from SAML assertions with the default token strategy) share one token
+		Thread waiting = new Thread(() -> {
+			try {
+				scheduler.release(scheduler.acquire(null, 1));
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		waiting.start();
+		awaitWaiting(scheduler, null, 1);
+		assertEquals(2, scheduler.getTokenCount());
+
+		scheduler.release(first);
+		waiting.join(5000);
+		assertFalse(waiting.isAlive());
+		assertEquals(1, scheduler.getTokenCount());
+		scheduler.release(second);
+		assertEquals(0, scheduler.getTokenCount());
+		assertEquals(0, scheduler.getRunningCount());
+
+		// a token whose waiting query gives up is forgotten as well
+		FairQueryScheduler.Ticket executing = scheduler.acquire("TOKEN1", 1);
+		assertNull(scheduler.acquire("TOKEN2", 1, () -> false, 10));
+		assertEquals(1, scheduler.getTokenCount());
+		scheduler.release(executing);
+		assertEquals(0, scheduler.getTokenCount());
+
+	}
+
+	private static void submit(ExecutorService executor, FairQueryScheduler scheduler, String token, int weight, List<String> admitted) {
+		executor.submit(() -> {
+			FairQueryScheduler.Ticket ticket = scheduler.acquire(token, weight);
+			admitted.add(token);
+			scheduler.release(ticket);
+			return null;
+		});
+	}
+
+	private static void awaitWaiting(FairQueryScheduler scheduler, String token, int count) throws InterruptedException {
+		while (scheduler.getWaitingCount(token) < count) {
+			Thread.sleep(5);
+		}
+	}
+
+}
@@ -48,7 +48,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
@@ -249,6 +251,127 @@ public class MondrianRestControllerTest extends AbstractMondrianRestControllerTe
 		
 	}
 	
+	@Test
+	public void testStreamingQuery() throws Exception {
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<String> requestEntity = new HttpEntity<String>("{ \"connectionName\" : \"test\", \"query\" : \"select {[Measures].[F1_M1]} on columns from Test_F1\", \"stream\" : true}", headers);
+		ResponseEntity<CellSetWrapper> response = restTemplate.postForEntity(new URI("http://localhost:" + port + "/query"), requestEntity, CellSetWrapper.class);
+		assertEquals(200, response.getStatusCode().value());
+		
+		CellSetWrapper cellSet = response.getBody();
+		assertEquals(1, cellSet.getCellWrappers().size());
+		assertEquals(3.0, cellSet.getCellWrappers().get(0).getValue());
+		assertEquals(1, cellSet.getAxisWrappers().size());
+		
+		// streamed results are not cached
+		response = restTemplate.postForEntity(new URI("http://localhost:" + port + "/query"), requestEntity, CellSetWrapper.class);
+		assertNull(response.getHeaders().get("mondrian-rest-cached-result"));
+		
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testProfiledQuery() throws Exception {
+		
+		HttpEntity<String> requestEntity = buildQueryRequestEntity("test", "select {[Measures].[F1_M1]} on columns from Test_F1");
+		ResponseEntity<CellSetWrapper> response = restTemplate.postForEntity(new URI("http://localhost:" + port + "/query"), requestEntity, CellSetWrapper.class);
+		String serverTiming = response.getHeaders().getFirst("Server-Timing");
+		assertTrue(serverTiming.matches("authorization;dur=[0-9.]+, cache;dur=.+, total;dur=[0-9.]+"));
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		requestEntity = new HttpEntity<String>("{ \"connectionName\" : \"test\", \"query\" : \"select {[Measures].[F1_M1]} on columns from Test_F1\", \"profile\" : true}", headers);
+		ParameterizedTypeReference<Map<String, Object>> responseType = new ParameterizedTypeReference<Map<String, Object>>() {};
+		ResponseEntity<Map<String, Object>> profiledResponse = restTemplate.exchange(new URI("http://localhost:" + port + "/query"), HttpMethod.POST, requestEntity, responseType);
+		assertEquals(200, profiledResponse.getStatusCode().value());
+		
+		// profiled queries always execute
+		assertNull(profiledResponse.getHeaders().get("mondrian-rest-cached-result"));
+		assertTrue(profiledResponse.getHeaders().getFirst("Server-Timing").contains("execute;dur="));
+		
+		Map<String, Object> body = profiledResponse.getBody();
+		assertEquals(1, ((List<Object>) body.get("cellWrappers")).size());
+		Map<String, Object> profile = (Map<String, Object>) body.get("profile");
+		assertTrue(((Map<String, Object>) profile.get("phases")).containsKey("execution"));
+		assertNotNull(profile.get("sqlStatements"));
+		assertFalse(((List<String>) profile.get("mondrianTiming")).isEmpty());
+		
+	}
+	
+	@Test
+	public void testAsyncQuery() throws Exception {
+		
+		HttpEntity<String> requestEntity = buildQueryRequestEntity("test", "select {[Measures].[F1_M1]} on columns from Test_F1");
+		ParameterizedTypeReference<Map<String, Object>> responseType = new ParameterizedTypeReference<Map<String, Object>>() {};
+		ResponseEntity<Map<String, Object>> submitResponse = restTemplate.exchange(new URI("http://localhost:" + port + "/query/async"), HttpMethod.POST, requestEntity, responseType);
+		assertEquals(202, submitResponse.getStatusCode().value());
+		String id = (String) submitResponse.getBody().get("id");
+		assertNotNull(id);
+		assertTrue(submitResponse.getHeaders().getLocation().toString().endsWith("/query/jobs/" + id));
+		
+		Map<String, Object> job = null;
+		for (int i=0;i < 100;i++) {
+			job = restTemplate.exchange(new URI("http://localhost:" + port + "/query/jobs/" + id), HttpMethod.GET, null, responseType).getBody();
+			if ("SUCCEEDED".equals(job.get("status")) || "FAILED".equals(job.get("status"))) {
+				break;
+			}
+			Thread.sleep(100);
+		}
+		assertEquals("SUCCEEDED", job.get("status"));
+		assertEquals("test", job.get("connectionName"));
+		
+		ResponseEntity<CellSetWrapper> response = restTemplate.getForEntity(new URI("http://localhost:" + port + "/query/jobs/" + id + "/result"), CellSetWrapper.class);
+		assertEquals(200, response.getStatusCode().value());
+		CellSetWrapper cellSet = response.getBody();
+		assertEquals(1, cellSet.getCellWrappers().size());
+		assertEquals(3.0, cellSet.getCellWrappers().get(0).getValue());
+		
+		ResponseEntity<String> missingResponse = restTemplate.getForEntity(new URI("http://localhost:" + port + "/query/jobs/no-such-job"), String.class);
+		assertEquals(404, missingResponse.getStatusCode().value());
+		
+	}
+	
+	@Test
+	public void testQueryBatch() throws Exception {
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<String> requestEntity = new HttpEntity<String>("[" +
+				"{ \"connectionName\" : \"test\", \"query\" : \"select {[Measures].[F1_M1]} on columns from Test_F1\"}, " +
+				"{ \"connectionName\" : \"test\", \"query\" : \"select {[Measures].[Bogus]} on columns from Test_F1\"}, " +
+				"{ \"connectionName\" : \"no-such-connection\", \"query\" : \"select from Test_F1\"}, " +
+				"{ \"connectionName\" : \"test\", \"query\" : \"select {[Measures].[F1_M1]} on columns from Test_F1\"}, " +
+				"null, " +
+				"{ \"connectionName\" : \"test\", \"query\" : \"select {[Measures].[F1_M1]} on columns from Test_F1\", \"stream\" : true}" +
+				"]", headers);
+		ParameterizedTypeReference<List<Map<String, Object>>> responseType = new ParameterizedTypeReference<List<Map<String, Object>>>() {};
+		ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(new URI("http://localhost:" + port + "/queryBatch"), HttpMethod.POST, requestEntity, responseType);
+		assertEquals(200, response.getStatusCode().value());
+		
+		List<Map<String, Object>> results = response.getBody();
+		assertEquals(6, results.size());
+		for (int i=0;i < results.size();i++) {
+			assertEquals(i, results.get(i).get("index"));
+		}
+		
+		assertEquals(200, results.get(0).get("status"));
+		assertNotNull(results.get(0).get("result"));
+		assertEquals(500, results.get(1).get("status"));
+		assertNotNull(results.get(1).get("error"));
+		assertNull(results.get(1).get("result"));
+		assertEquals(404, results.get(2).get("status"));
+		assertEquals(200, results.get(3).get("status"));
+		assertEquals(results.get(0).get("result"), results.get(3).get("result"));
+		// elements that are not queries, or that ask for what a batch cannot do, are turned away without failing the batch
+		assertEquals(400, results.get(4).get("status"));
+		assertNotNull(results.get(4).get("error"));
+		assertEquals(400, results.get(5).get("status"));
+		assertNull(results.get(5).get("result"));
+		
+	}
+	
 	@Test
 	public void testCachedQueries() throws Exception {
 		
@@ -0,0 +1,170 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.ojbc.mondrian.MondrianConnectionFactory;
+import org.ojbc.mondrian.QueryBulkhead;
+import org.ojbc.mondrian.QueryRejectedException;
+
+public class QueryAdmissionTest {
+
+	@Test
+	public void testSchedulerAheadOfBulkhead() throws Exception {
+
+		FairQueryScheduler scheduler = new FairQueryScheduler(1, 100);
+		QueryBulkhead connectionBulkhead = new QueryBulkhead("test", new MondrianConnectionFactory.QueryConcurrencySettings(1, 10, 30, 5));
+		// another token's query holds the connection while the others queue up
+		QueryAdmission blocker = QueryAdmission.acquire(scheduler, "OTHER", 1, null, connectionBulkhead);
+
+		List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+
+			// a batch consumer queues up several queries before an interactive user submits one; they all wait in the scheduler, not in the connection's FIFO queue
+			for (int i = 0; i < 4; i++) {
+				submit(executor, scheduler, "BATCH", connectionBulkhead, admitted);
+				awaitWaiting(scheduler, "BATCH", i + 1);
+			}
+			submit(executor, scheduler, "INTERACTIVE", connectionBulkhead, admitted);
+			awaitWaiting(scheduler, "INTERACTIVE", 1);
+			assertEquals(0, connectionBulkhead.getQueueDepth());
+
+			blocker.release();
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(5, admitted.size());
+		assertTrue(admitted.indexOf("INTERACTIVE") <= 1, admitted.toString());
+		assertEquals(0, connectionBulkhead.getActiveCount());
+		assertEquals(0, scheduler.getRunningCount());
+
+	}
+
+	@Test
+	public void testRejectionReleasesEarlierPermits() throws Exception {
+
+		FairQueryScheduler scheduler = new FairQueryScheduler(2, 100);
+		QueryBulkhead laneBulkhead = new QueryBulkhead("fast lane", new MondrianConnectionFactory.QueryConcurrencySettings(1, 0, 30, 5));
+		QueryBulkhead connectionBulkhead = new QueryBulkhead("test", new MondrianConnectionFactory.QueryConcurrencySettings(2, 10, 30, 5));
+
+		QueryAdmission first = QueryAdmission.acquire(scheduler, "TOKEN1", 1, laneBulkhead, connectionBulkhead);
+		// the lane is full, so the second query is turned away before it takes a connection permit
+		assertThrows(QueryRejectedException.class, () -> QueryAdmission.acquire(scheduler, "TOKEN1", 1, laneBulkhead, connectionBulkhead));
+		assertEquals(1, scheduler.getRunningCount());
+		assertEquals(1, laneBulkhead.getActiveCount());
+		assertEquals(1, connectionBulkhead.getActiveCount());
+
+		first.release();
+		assertEquals(0, scheduler.getRunningCount());
+		assertEquals(0, laneBulkhead.getActiveCount());
+		assertEquals(0, connectionBulkhead.getActiveCount());
+
+	}
+
+	@Test
+	public void testSaturatedConnectionDoesNotHoldSlots() throws Exception {
+
+		FairQueryScheduler scheduler = new FairQueryScheduler(2, 100);
+		QueryBulkhead laneBulkhead = new QueryBulkhead("fast lane", new MondrianConnectionFactory.QueryConcurrencySettings(2, 10, 30, 5));
+		QueryBulkhead connectionA = new QueryBulkhead("A", new MondrianConnectionFactory.QueryConcurrencySettings(1, 10, 30, 5));
+		QueryBulkhead connectionB = new QueryBulkhead("B", new MondrianConnectionFactory.QueryConcurrencySettings(1, 10, 30, 5));
+
+		QueryAdmission executingOnA = QueryAdmission.acquire(scheduler, "TOKEN1", 1, laneBulkhead, connectionA);
+		List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+
+			// the next query on A waits for A, without taking the free slot or lane place
+			executor.submit(() -> {
+				QueryAdmission admission = QueryAdmission.acquire(scheduler, "TOKEN1", 1, laneBulkhead, connectionA);
+				admitted.add("A");
+				admission.release();
+				return null;
+			});
+			while (connectionA.getQueueDepth() < 1) {
+				Thread.sleep(5);
+			}
+			assertEquals(1, scheduler.getRunningCount());
+			assertEquals(1, laneBulkhead.getActiveCount());
+
+			// so a query on B (even from the same token) is admitted straight away
+			QueryAdmission executingOnB = QueryAdmission.acquire(scheduler, "TOKEN1", 1, laneBulkhead, connectionB);
+			assertEquals(2, scheduler.getRunningCount());
+			assertEquals(1, connectionB.getActiveCount());
+			assertTrue(admitted.isEmpty());
+			executingOnB.release();
+
+			// and the query waiting for A goes once A is free
+			executingOnA.release();
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(Arrays.asList("A"), admitted);
+		assertEquals(0, scheduler.getRunningCount());
+		assertEquals(0, scheduler.getWaitingCount());
+		assertEquals(0, connectionA.getQueueDepth());
+		assertEquals(0, connectionA.getActiveCount());
+		assertEquals(0, laneBulkhead.getActiveCount());
+
+		// a query held up by its connection for longer than the connection's queue timeout is rejected
+		QueryBulkhead connectionC = new QueryBulkhead("C", new MondrianConnectionFactory.QueryConcurrencySettings(1, 10, 0, 5));
+		QueryAdmission executingOnC = QueryAdmission.acquire(scheduler, "TOKEN1", 1, null, connectionC);
+		assertThrows(QueryRejectedException.class, () -> QueryAdmission.acquire(scheduler, "TOKEN1", 1, null, connectionC));
+		assertEquals(1, connectionC.getTimedOutCount());
+		assertEquals(0, connectionC.getQueueDepth());
+		assertEquals(1, scheduler.getRunningCount());
+		executingOnC.release();
+
+	}
+
+	private static void submit(ExecutorService executor, FairQueryScheduler scheduler, String token, QueryBulkhead connectionBulkhead, List<String> admitted) {
+		executor.submit(() -> {
+			QueryAdmission admission = QueryAdmission.acquire(scheduler, token, 1, null, connectionBulkhead);
+			admitted.add(token);
+			admission.release();
+			return null;
+		});
+	}
+
+	private static void awaitWaiting(FairQueryScheduler scheduler, String token, int count) throws InterruptedException {
+		while (scheduler.getWaitingCount(token) < count) {
+			Thread.sleep(5);
+		}
+	}
+
+}
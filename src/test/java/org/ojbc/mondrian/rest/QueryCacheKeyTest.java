@@ -0,0 +1,74 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+public class QueryCacheKeyTest {
+
+	private static final String QUERY = "select {[Measures].[Unit Sales]} on columns, {[Store].[Store Country].members} on rows from Sales";
+
+	@Test
+	public void testNormalization() {
+		assertEquals("SELECT{[Measures].[Unit Sales]}ON COLUMNS,{[Store].[Store Country].members}ON ROWS FROM Sales", QueryCacheKey.normalizeMdx(QUERY));
+		assertEquals(QueryCacheKey.normalizeMdx(QUERY), QueryCacheKey.normalizeMdx(
+				"SELECT\n\t{ [Measures].[Unit Sales] } ON COLUMNS, -- comment\n  { [Store].[Store Country].members }  On Rows /* another\ncomment */ FROM Sales"));
+		// identifiers and literals are kept exactly as written, including keyword lookalikes
+		assertEquals("[Select  Me].Rows", QueryCacheKey.normalizeMdx("[Select  Me].Rows"));
+		assertEquals("'a  --  b' + \"it\"\"s\"", QueryCacheKey.normalizeMdx("'a  --  b'  +  \"it\"\"s\""));
+		assertNotEquals(QueryCacheKey.normalizeMdx("[A B]"), QueryCacheKey.normalizeMdx("[A  B]"));
+	}
+
+	@Test
+	public void testKey() {
+		QueryCacheKey key = request("test", QUERY, null, false, "ROLE1").getCacheKey();
+		assertEquals(64, key.getDigest().length());
+		assertEquals(key, request("test", QUERY.replace("select", "SELECT").replace("from", "From"), null, false, "ROLE1").getCacheKey());
+		assertEquals(key, request("test", "  " + QUERY + "\n", null, true, "ROLE1").getCacheKey());
+		assertEquals(key, request("test", QUERY, new QueryRequest.TidyConfig(false, true, null), false, "ROLE1").getCacheKey());
+		assertNotEquals(key, request("test", QUERY, null, false, "ROLE2").getCacheKey());
+		assertNotEquals(key, request("test", QUERY, null, false, null).getCacheKey());
+		assertNotEquals(key, request("other", QUERY, null, false, "ROLE1").getCacheKey());
+		assertNotEquals(key, request("test", QUERY, new QueryRequest.TidyConfig(true, false, null), false, "ROLE1").getCacheKey());
+		assertNotEquals(request("test", QUERY, new QueryRequest.TidyConfig(true, true, null), false, "ROLE1").getCacheKey(),
+				request("test", QUERY, new QueryRequest.TidyConfig(true, true, Collections.singletonMap("[Store].[Store Country]", "Country")), false, "ROLE1").getCacheKey());
+		// field values cannot run together into the same canonical form
+		assertNotEquals(request("ab", QUERY, null, false, "c").getCacheKey(), request("a", QUERY, null, false, "bc").getCacheKey());
+	}
+
+	@Test
+	public void testKeyComputedOnce() {
+		QueryRequest queryRequest = request("test", QUERY, null, false, null);
+		QueryCacheKey key = queryRequest.getCacheKey();
+		assertSame(key, queryRequest.getCacheKey());
+		// the role is set after the request is received, so the key must follow it
+		queryRequest.setMondrianRole("ROLE1");
+		assertEquals(request("test", QUERY, null, false, "ROLE1").getCacheKey(), queryRequest.getCacheKey());
+		assertNotEquals(key, queryRequest.getCacheKey());
+	}
+
+	private static QueryRequest request(String connectionName, String query, QueryRequest.TidyConfig tidy, boolean stream, String mondrianRole) {
+		return new QueryRequest(connectionName, query, tidy, stream, false, mondrianRole);
+	}
+
+}
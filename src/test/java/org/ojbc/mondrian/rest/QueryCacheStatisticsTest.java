@@ -0,0 +1,198 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.ehcache.Cache;
+import org.ehcache.CacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheEventListenerConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.core.statistics.DefaultStatisticsService;
+import org.ehcache.event.EventType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ojbc.mondrian.CellSetWrapper;
+import org.ojbc.mondrian.TestCellSetFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class QueryCacheStatisticsTest {
+
+	private QueryCacheStatistics statistics;
+	private DefaultStatisticsService statisticsService;
+	private CacheManager cacheManager;
+	private Cache<QueryCacheKey, CachedQueryResponse> cache;
+	private CachedQueryResponse small;
+	private CachedQueryResponse large;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		statistics = new QueryCacheStatistics();
+		statisticsService = new DefaultStatisticsService();
+		cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+				.using(statisticsService)
+				.withCache("query-cache",
+						CacheConfigurationBuilder.newCacheConfigurationBuilder(QueryCacheKey.class, CachedQueryResponse.class, ResourcePoolsBuilder.heap(2))
+								.withService(CacheEventListenerConfigurationBuilder.newEventListenerConfiguration(statistics,
+										EventType.EVICTED, EventType.EXPIRED, EventType.REMOVED).synchronous().ordered()))
+				.build(true);
+		cache = cacheManager.getCache("query-cache", QueryCacheKey.class, CachedQueryResponse.class);
+		ObjectMapper mapper = new ObjectMapper();
+		small = CachedQueryResponse.create(new CellSetWrapper(TestCellSetFactory.getInstance().getSingleAxisSingleDimensionCellSet()),
+				CachedQueryResponse.Format.JSON, mapper);
+		large = CachedQueryResponse.create(new CellSetWrapper(TestCellSetFactory.getInstance().getDualAxisTwoDimensionCellSet()),
+				CachedQueryResponse.Format.JSON, mapper);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		cacheManager.close();
+	}
+
+	@Test
+	public void testEntries() {
+
+		QueryRequest smallRequest = new QueryRequest("test", "select from Small", null, false, false, null);
+		QueryRequest largeRequest = new QueryRequest("other", "select from Large", null, false, false, "ROLE1");
+		put(smallRequest, small);
+		put(largeRequest, large);
+
+		get(smallRequest);
+		get(smallRequest);
+		get(largeRequest);
+
+		List<QueryCacheStatistics.EntryStatistics> bySize = statistics.getTopEntries(QueryCacheStatistics.Ordering.SIZE, c -> true, 10);
+		assertEquals(2, bySize.size());
+		assertEquals("select from Large", bySize.get(0).getQuery());
+		assertEquals("ROLE1", bySize.get(0).getMondrianRole());
+		assertEquals(large.getEstimatedSize(), bySize.get(0).getEstimatedSize());
+		List<QueryCacheStatistics.EntryStatistics> byHits = statistics.getTopEntries(QueryCacheStatistics.Ordering.HITS, c -> true, 1);
+		assertEquals(1, byHits.size());
+		assertEquals("select from Small", byHits.get(0).getQuery());
+		assertEquals(2, byHits.get(0).getHitCount());
+		assertTrue(byHits.get(0).getLastHitTime() > 0);
+		assertEquals(1, statistics.getTopEntries(QueryCacheStatistics.Ordering.SIZE, "test"::equals, 10).size());
+
+		Map<String, QueryCacheStatistics.ConnectionStatistics> connections = statistics.getConnectionStatistics(c -> true);
+		assertEquals(2, connections.size());
+		assertEquals(1, connections.get("test").getEntryCount());
+		assertEquals(small.getEstimatedSize(), connections.get("test").getEstimatedSize());
+		assertEquals(small.getEstimatedSize() + large.getEstimatedSize(), statistics.getEstimatedSize());
+
+		QueryCacheStatistics.CacheSummary summary = QueryCacheStatistics.CacheSummary.of(statisticsService.getCacheStatistics("query-cache"));
+		assertEquals(3, summary.getHits());
+		assertEquals(2, summary.getPuts());
+		assertEquals(2, summary.getTiers().get("OnHeap").getMappings());
+
+	}
+
+	@Test
+	public void testRemoval() {
+
+		QueryRequest first = new QueryRequest("test", "select from A", null, false, false, null);
+		put(first, small);
+		put(new QueryRequest("test", "select from B", null, false, false, null), small);
+		put(new QueryRequest("test", "select from C", null, false, false, null), small);
+		// the cache holds two entries, so one has been evicted
+		assertEquals(2, statistics.size());
+		assertEquals(1, QueryCacheStatistics.CacheSummary.of(statisticsService.getCacheStatistics("query-cache")).getEvictions());
+
+		cache.remove(new QueryRequest("test", "select from C", null, false, false, null).getCacheKey());
+		assertEquals(1, statistics.size());
+
+		cache.clear();
+		statistics.clear();
+		assertEquals(0, statistics.size());
+		assertEquals(0, statistics.getEstimatedSize());
+
+	}
+
+	@Test
+	public void testSizeEvictions() {
+
+		QueryRequest a = new QueryRequest("test", "select from A", null, false, false, null);
+		QueryRequest b = new QueryRequest("test", "select from B", null, false, false, null);
+		put(a, large);
+		put(b, small);
+		assertEquals(0, statistics.evict(large.getEstimatedSize() + small.getEstimatedSize(), cache::remove));
+
+		// serving A makes B the least recently used
+		get(a);
+		assertEquals(1, statistics.evict(large.getEstimatedSize(), cache::remove));
+		assertNull(cache.get(b.getCacheKey()));
+		assertSame(large, cache.get(a.getCacheKey()));
+		assertEquals(large.getEstimatedSize(), statistics.getEstimatedSize());
+		assertEquals(1, statistics.getSizeEvictionCount());
+
+		// a result that has replaced the one chosen for removal is left alone
+		assertEquals(0, statistics.evict(0, (key, response) -> cache.remove(key, small)));
+		assertSame(large, cache.get(a.getCacheKey()));
+
+		// replacing an entry counts only the new result's size
+		put(a, small);
+		assertEquals(small.getEstimatedSize(), statistics.getEstimatedSize());
+
+	}
+
+	@Test
+	public void testOffHeapTier() {
+
+		CacheManager tieredCacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+				.withCache("tiered-cache",
+						CacheConfigurationBuilder.newCacheConfigurationBuilder(QueryCacheKey.class, CachedQueryResponse.class,
+								ResourcePoolsBuilder.heap(1).offheap(1, MemoryUnit.MB)))
+				.build(true);
+		try {
+			Cache<QueryCacheKey, CachedQueryResponse> tieredCache = tieredCacheManager.getCache("tiered-cache", QueryCacheKey.class, CachedQueryResponse.class);
+			QueryCacheKey a = new QueryRequest("test", "select from A", null, false, false, null).getCacheKey();
+			QueryCacheKey b = new QueryRequest("test", "select from B", null, false, false, null).getCacheKey();
+			tieredCache.put(a, large);
+			tieredCache.put(b, small);
+			// A no longer fits on heap, so it is read back from the off-heap tier
+			CachedQueryResponse response = tieredCache.get(a);
+			assertTrue(response != large);
+			assertArrayEquals(large.getBody(), response.getBody());
+		} finally {
+			tieredCacheManager.close();
+		}
+
+	}
+
+	private void put(QueryRequest queryRequest, CachedQueryResponse response) {
+		cache.put(queryRequest.getCacheKey(), response);
+		statistics.put(queryRequest.getCacheKey(), queryRequest, response);
+	}
+
+	private void get(QueryRequest queryRequest) {
+		if (cache.get(queryRequest.getCacheKey()) != null) {
+			statistics.hit(queryRequest.getCacheKey());
+		}
+	}
+
+}
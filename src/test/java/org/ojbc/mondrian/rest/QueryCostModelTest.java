@@ -0,0 +1,110 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import org.ojbc.mondrian.MondrianConnectionFactory;
+
+public class QueryCostModelTest {
+
+	@Test
+	public void testPredict() {
+
+		QueryCostModel model = new QueryCostModel(10);
+		assertNull(model.predict("test", "select from Test_F1"));
+
+		model.record("test", "select from Test_F1", 1000, 10, -1);
+		QueryCostModel.QueryCost cost = model.predict("test", "SELECT\n  FROM Test_F1 -- same query");
+		assertNotNull(cost);
+		assertEquals(1000, cost.getDurationMillis(), .001);
+		assertEquals(10, cost.getCellCount(), .001);
+		assertEquals(0, cost.getSqlCount(), .001);
+		assertEquals(1, cost.getExecutionCount());
+
+		model.record("test", "select from Test_F1", 2000, 10, 4);
+		cost = model.predict("test", "select from Test_F1");
+		assertEquals(1300, cost.getDurationMillis(), .001);
+		assertEquals(1.2, cost.getSqlCount(), .001);
+		assertEquals(2, cost.getExecutionCount());
+
+		assertNull(model.predict("other", "select from Test_F1"));
+
+	}
+
+	@Test
+	public void testMaxEntries() {
+		QueryCostModel model = new QueryCostModel(2);
+		model.record("test", "select from A", 1, 1, -1);
+		model.record("test", "select from B", 1, 1, -1);
+		model.predict("test", "select from A");
+		model.record("test", "select from C", 1, 1, -1);
+		assertEquals(2, model.size());
+		assertNotNull(model.predict("test", "select from A"));
+		assertNull(model.predict("test", "select from B"));
+	}
+
+	@Test
+	public void testIncompleteExecutions() {
+
+		QueryCostModel model = new QueryCostModel(10);
+		QueryLanes lanes = new QueryLanes(model, new MondrianConnectionFactory.QueryConcurrencySettings(4, 10, 10, 5),
+				new MondrianConnectionFactory.QueryConcurrencySettings(1, 10, 10, 5), 2000, 1000, QueryLanes.Lane.FAST);
+
+		// a query that times out is sent to the slow lane next time, rather than being treated as unknown (and so fast) every time
+		assertEquals(QueryLanes.Lane.FAST, lanes.route("test", "select from Crossjoin"));
+		model.recordIncomplete("test", "select from Crossjoin", 30000);
+		assertEquals(QueryLanes.Lane.SLOW, lanes.route("test", "select from Crossjoin"));
+		assertEquals(30000, model.predict("test", "select from Crossjoin").getDurationMillis(), .001);
+
+		// an incomplete execution only ever raises the prediction
+		model.record("test", "select from Quick", 50, 10, -1);
+		model.recordIncomplete("test", "select from Quick", 5);
+		QueryCostModel.QueryCost cost = model.predict("test", "select from Quick");
+		assertEquals(50, cost.getDurationMillis(), .001);
+		assertEquals(2, cost.getExecutionCount());
+		model.recordIncomplete("test", "select from Quick", 10000);
+		assertEquals(QueryLanes.Lane.SLOW, lanes.route("test", "select from Quick"));
+
+	}
+
+	@Test
+	public void testRouting() {
+
+		QueryCostModel model = new QueryCostModel(10);
+		QueryLanes lanes = new QueryLanes(model, new MondrianConnectionFactory.QueryConcurrencySettings(4, 10, 10, 5),
+				new MondrianConnectionFactory.QueryConcurrencySettings(1, 10, 10, 5), 2000, 1000, QueryLanes.Lane.SLOW);
+
+		assertEquals(QueryLanes.Lane.SLOW, lanes.route("test", "select from Quick"));
+
+		model.record("test", "select from Quick", 50, 10, -1);
+		model.record("test", "select from Long", 60000, 10, -1);
+		model.record("test", "select from Big", 50, 1000000, -1);
+		assertEquals(QueryLanes.Lane.FAST, lanes.route("test", "select from Quick"));
+		assertEquals(QueryLanes.Lane.SLOW, lanes.route("test", "select from Long"));
+		assertEquals(QueryLanes.Lane.SLOW, lanes.route("test", "select from Big"));
+
+		assertEquals(4, lanes.getBulkhead(QueryLanes.Lane.FAST).getMaxConcurrent());
+		assertEquals(1, lanes.getBulkhead(QueryLanes.Lane.SLOW).getMaxConcurrent());
+		assertEquals(QueryLanes.Lane.FAST, QueryLanes.Lane.forName(" Fast"));
+
+	}
+
+}
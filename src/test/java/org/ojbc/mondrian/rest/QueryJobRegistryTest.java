@@ -0,0 +1,130 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class QueryJobRegistryTest {
+
+	@Test
+	public void testJobLifecycle() throws Exception {
+
+		QueryJobRegistry registry = new QueryJobRegistry(1, 1, 0, 100, Long.MAX_VALUE);
+		try {
+
+			CountDownLatch release = new CountDownLatch(1);
+			QueryJob job = new QueryJob(new QueryRequest("test", "select from Test_F1", null, false, false, "ROLE1"), "TOKEN1", 1);
+			assertEquals(QueryJob.Status.QUEUED, job.getStatus());
+			assertTrue(registry.submit(job, j -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				j.fail(500, "{\"message\" : \"failed\"}");
+			}));
+			assertSame(job, registry.getJob(job.getId()));
+
+			// the single thread is busy and the queue holds one job, so a third job is rejected
+			QueryJob queued = new QueryJob(new QueryRequest("test", "select from Test_F1", null, false, false, "ROLE1"), "TOKEN1", 1);
+			assertTrue(registry.submit(queued, j -> j.fail(500, null)));
+			QueryJob rejected = new QueryJob(new QueryRequest("test", "select from Test_F1", null, false, false, "ROLE1"), "TOKEN1", 1);
+			assertFalse(registry.submit(rejected, j -> j.fail(500, null)));
+			assertNull(registry.getJob(rejected.getId()));
+
+			Map<String, Object> json = new ObjectMapper().readValue(new ObjectMapper().writeValueAsString(job), new TypeReference<Map<String, Object>>() {});
+			assertEquals(job.getId(), json.get("id"));
+			assertEquals("test", json.get("connectionName"));
+			assertFalse(json.containsKey("mondrianRole"));
+			assertFalse(json.containsKey("queryRequest"));
+			assertFalse(json.containsKey("result"));
+			assertTrue(json.containsKey("elapsedMillis"));
+
+			release.countDown();
+			long deadline = System.currentTimeMillis() + 10000;
+			while (!(job.isFinished() && queued.isFinished()) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(QueryJob.Status.FAILED, job.getStatus());
+			assertEquals(500, job.getErrorStatus());
+			assertTrue(job.getElapsedMillis() >= 0);
+
+			// retention is zero, so finished jobs expire at the next check
+			Thread.sleep(5);
+			registry.expireJobs();
+			assertNull(registry.getJob(job.getId()));
+			assertNull(registry.getJob(queued.getId()));
+
+		} finally {
+			registry.close();
+		}
+
+	}
+
+	@Test
+	public void testRetentionLimits() throws Exception {
+
+		QueryJobRegistry registry = new QueryJobRegistry(1, 10, 600, 2, Long.MAX_VALUE);
+		try {
+			QueryJob[] jobs = new QueryJob[3];
+			for (int i=0;i < jobs.length;i++) {
+				jobs[i] = new QueryJob(new QueryRequest("test", "select from Test_F1", null, false, false, null), "TOKEN1", 1);
+				assertTrue(registry.submit(jobs[i], j -> j.fail(500, null)));
+				// jobs are retained by when they finished, so make sure each finishes in a later millisecond than the one before
+				while (!jobs[i].isFinished()) {
+					Thread.sleep(1);
+				}
+				Thread.sleep(2);
+			}
+			// an execution that throws an Error without recording a failure still finishes the job
+			QueryJob broken = new QueryJob(new QueryRequest("test", "select from Test_F1", null, false, false, null), "TOKEN1", 1);
+			assertTrue(registry.submit(broken, j -> {
+				throw new OutOfMemoryError("test");
+			}));
+			long deadline = System.currentTimeMillis() + 10000;
+			while (!broken.isFinished() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(QueryJob.Status.FAILED, broken.getStatus());
+			assertEquals(500, broken.getErrorStatus());
+			// only the two most recently finished jobs are kept
+			while (registry.getJob(jobs[1].getId()) != null && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertNull(registry.getJob(jobs[0].getId()));
+			assertNull(registry.getJob(jobs[1].getId()));
+			assertSame(jobs[2], registry.getJob(jobs[2].getId()));
+			assertSame(broken, registry.getJob(broken.getId()));
+		} finally {
+			registry.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class QueryLogTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testTopQueries() throws Exception {
+
+		File file = tempDir.resolve("query.log").toFile();
+		QueryLog queryLog = new QueryLog(file, 100);
+
+		QueryRequest frequent = new QueryRequest("test", "select from Frequent", null, false, false, null);
+		QueryRequest expensive = new QueryRequest("test", "select from Expensive", null, false, false, "ROLE1");
+		QueryRequest tidy = new QueryRequest("test", "select from Frequent", new QueryRequest.TidyConfig(true, true, Collections.singletonMap("a", "b")), false, false, null);
+
+		queryLog.append(frequent, 10);
+		queryLog.append(new QueryRequest("test", "SELECT  FROM Frequent", null, false, false, null), -1);
+		queryLog.append(frequent, -1);
+		queryLog.append(expensive, 5000);
+		queryLog.append(tidy, 20);
+		queryLog.append(tidy, -1);
+
+		List<QueryRequest> top = queryLog.getTopQueries(10, QueryLog.Ranking.FREQUENCY);
+		assertEquals(3, top.size());
+		assertEquals("test", top.get(0).getConnectionName());
+		assertEquals("SELECT FROM Frequent", top.get(0).getQuery());
+		assertNull(top.get(0).getTidy());
+		assertEquals(tidy.getCacheKey(), top.get(1).getCacheKey());
+		assertEquals(expensive.getCacheKey(), top.get(2).getCacheKey());
+		assertEquals("ROLE1", top.get(2).getMondrianRole());
+
+		top = queryLog.getTopQueries(1, QueryLog.Ranking.DURATION);
+		assertEquals(1, top.size());
+		assertEquals(expensive.getCacheKey(), top.get(0).getCacheKey());
+
+		queryLog.close();
+
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+
+		File file = tempDir.resolve("query.log").toFile();
+		QueryLog queryLog = new QueryLog(file, 2);
+		for (int i = 0; i < 3; i++) {
+			queryLog.append(new QueryRequest("test", "select from A", null, false, false, null), 100);
+		}
+		queryLog.append(new QueryRequest("test", "select from B", null, false, false, null), 100);
+		queryLog.append(new QueryRequest("test", "select from B", null, false, false, null), 300);
+		queryLog.append(new QueryRequest("test", "select from C", null, false, false, null), 100);
+		queryLog.close();
+
+		// a line cut short when the service stopped is skipped
+		Files.write(file.toPath(), "{\"connectionName\" : \"te".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		queryLog = new QueryLog(file, 2);
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertEquals(2, lines.size());
+		assertTrue(lines.get(0).contains("\"count\":3"), lines.get(0));
+		assertTrue(lines.get(1).contains("\"count\":2"), lines.get(1));
+		assertTrue(lines.get(1).contains("\"durationMillis\":200"), lines.get(1));
+
+		queryLog.append(new QueryRequest("test", "select from B", null, false, false, null), 200);
+		queryLog.append(new QueryRequest("test", "select from B", null, false, false, null), 200);
+		List<QueryRequest> top = queryLog.getTopQueries(2, QueryLog.Ranking.FREQUENCY);
+		assertEquals("SELECT FROM B", top.get(0).getQuery());
+		assertEquals("SELECT FROM A", top.get(1).getQuery());
+		queryLog.close();
+
+	}
+
+	@Test
+	public void testCompactedDurationsWeighted() throws Exception {
+
+		File file = tempDir.resolve("query.log").toFile();
+		QueryLog queryLog = new QueryLog(file, 2);
+		for (int i = 0; i < 3; i++) {
+			queryLog.append(new QueryRequest("test", "select from A", null, false, false, null), 100);
+		}
+		queryLog.append(new QueryRequest("test", "select from B", null, false, false, null), 250);
+		queryLog.close();
+
+		// A is compacted to a single line standing for three executions of 100ms, so one more execution of 500ms averages 200ms rather than 300ms
+		queryLog = new QueryLog(file, 2);
+		queryLog.append(new QueryRequest("test", "select from A", null, false, false, null), 500);
+		List<QueryRequest> top = queryLog.getTopQueries(1, QueryLog.Ranking.DURATION);
+		assertEquals("SELECT FROM B", top.get(0).getQuery());
+		queryLog.close();
+
+		queryLog = new QueryLog(file, 2);
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertTrue(lines.get(0).contains("\"count\":4"), lines.get(0));
+		assertTrue(lines.get(0).contains("\"durationMillis\":200"), lines.get(0));
+		assertEquals(0, queryLog.getDroppedCount());
+		queryLog.close();
+
+	}
+
+	@Test
+	public void testCacheWarmUp() throws Exception {
+
+		assertTrue(CacheWarmUp.disabled().isReady());
+		assertEquals(CacheWarmUp.State.DISABLED, CacheWarmUp.disabled().getState());
+
+		List<QueryRequest> queries = Arrays.asList(
+				new QueryRequest("test", "select from A", null, false, false, null),
+				new QueryRequest("test", "select from B", null, false, false, null),
+				new QueryRequest("test", "select from C", null, false, false, null));
+		CacheWarmUp warmUp = new CacheWarmUp(queries, 2);
+		assertEquals(CacheWarmUp.State.RUNNING, warmUp.getState());
+		assertFalse(warmUp.isReady());
+
+		warmUp.start(queryRequest -> {
+			if (queryRequest.getQuery().contains("B")) {
+				throw new IllegalStateException("failed");
+			}
+		});
+		for (int i = 0; i < 100 && !warmUp.isReady(); i++) {
+			Thread.sleep(20);
+		}
+		assertTrue(warmUp.isReady());
+		assertEquals(CacheWarmUp.State.COMPLETE, warmUp.getState());
+		assertEquals(3, warmUp.getTotal());
+		assertEquals(2, warmUp.getCompleted());
+		assertEquals(1, warmUp.getFailed());
+
+	}
+
+}
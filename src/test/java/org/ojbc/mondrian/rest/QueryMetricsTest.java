@@ -0,0 +1,125 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.ojbc.mondrian.MondrianConnectionFactory;
+import org.ojbc.mondrian.QueryBulkhead;
+import org.ojbc.mondrian.QueryRejectedException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class QueryMetricsTest {
+
+	@Test
+	public void testGetCubeName() {
+		assertEquals("Sales", QueryMetrics.getCubeName("select {[Measures].[Unit Sales]} on columns from [Sales]"));
+		assertEquals("Sales", QueryMetrics.getCubeName("SELECT [Measures].MEMBERS ON 0 FROM Sales WHERE [Time].[1997]"));
+		assertEquals("Warehouse and Sales", QueryMetrics.getCubeName("select from\n  [Warehouse and Sales]"));
+		assertEquals("odd]name", QueryMetrics.getCubeName("select from [odd]]name]"));
+		assertEquals("Sales", QueryMetrics.getCubeName("select [Measures].members on 0 from (select [Time].[1997] on 0 from [Sales])"));
+		assertEquals(QueryMetrics.UNKNOWN_CUBE, QueryMetrics.getCubeName("not mdx"));
+		assertEquals(QueryMetrics.UNKNOWN_CUBE, QueryMetrics.getCubeName(null));
+	}
+
+	@Test
+	public void testRecordQuery() {
+
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		QueryMetrics queryMetrics = new QueryMetrics(registry);
+
+		QueryTimings timings = new QueryTimings();
+		timings.mark(QueryTimings.Phase.AUTHORIZATION);
+		timings.mark(QueryTimings.Phase.CACHE_LOOKUP);
+		timings.mark(QueryTimings.Phase.EXECUTION);
+		timings.setCellCount(12);
+		timings.setCubeName("Sales");
+		timings.setResponseBytes(345);
+		queryMetrics.recordQuery("foodmart", "select from [Sales]", timings);
+
+		timings = new QueryTimings();
+		timings.mark(QueryTimings.Phase.CACHE_LOOKUP);
+		timings.setCached(true);
+		timings.setResponseBytes(345);
+		queryMetrics.recordQuery("foodmart", "select from [Sales]", timings);
+
+		assertEquals(1, registry.get("mondrian.query").tags("connection", "foodmart", "cube", "Sales", "cached", "false").timer().count());
+		assertEquals(1, registry.get("mondrian.query").tags("connection", "foodmart", "cube", "Sales", "cached", "true").timer().count());
+		assertEquals(1, registry.get("mondrian.query.phase").tags("cached", "false", "phase", "execution").timer().count());
+		assertEquals(2, registry.get("mondrian.query.phase").tag("phase", "cache_lookup").timers().stream().mapToLong(t -> t.count()).sum());
+		assertNull(registry.find("mondrian.query.phase").tags("cached", "true", "phase", "execution").timer());
+
+		// cell counts are only known for executed queries; response sizes for every query
+		assertEquals(1, registry.get("mondrian.query.cells").summary().count());
+		assertEquals(12, registry.get("mondrian.query.cells").summary().totalAmount(), 0);
+		assertEquals(2, registry.get("mondrian.query.response").tags("connection", "foodmart", "cube", "Sales").summary().count());
+		assertEquals(690, registry.get("mondrian.query.response").summary().totalAmount(), 0);
+
+		// a query that was not executed is only tagged with a cube that has been executed against on its connection
+		queryMetrics.recordQuery("foodmart", "select from [No Such Cube]", new QueryTimings());
+		queryMetrics.recordQuery("other", "select from [Sales]", new QueryTimings());
+		assertNull(registry.find("mondrian.query").tags("cube", "No Such Cube").timer());
+		assertEquals(1, registry.get("mondrian.query").tags("connection", "foodmart", "cube", QueryMetrics.UNKNOWN_CUBE).timer().count());
+		assertEquals(1, registry.get("mondrian.query").tags("connection", "other", "cube", QueryMetrics.UNKNOWN_CUBE).timer().count());
+
+	}
+
+	@Test
+	public void testRecordMetadata() {
+
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		QueryMetrics queryMetrics = new QueryMetrics(registry);
+
+		QueryTimings timings = new QueryTimings();
+		timings.mark(QueryTimings.Phase.AUTHORIZATION);
+		timings.mark(QueryTimings.Phase.CONNECTION_ACQUISITION);
+		timings.mark(QueryTimings.Phase.RESULT_CONSTRUCTION);
+		queryMetrics.recordMetadata("foodmart", timings);
+
+		assertEquals(1, registry.get("mondrian.metadata").tags("connection", "foodmart", "cached", "false").timer().count());
+		assertEquals(1, registry.get("mondrian.metadata.phase").tag("phase", "result_construction").timer().count());
+		assertNull(registry.find("mondrian.metadata.response").summary());
+
+	}
+
+	@Test
+	public void testBulkheadMeters() throws Exception {
+
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		QueryMetrics queryMetrics = new QueryMetrics(registry);
+		QueryBulkhead bulkhead = new QueryBulkhead("foodmart", new ObjectMapper().readValue("{\"MaxConcurrent\" : 1, \"MaxQueued\" : 0}",
+				MondrianConnectionFactory.QueryConcurrencySettings.class));
+		queryMetrics.registerBulkhead(bulkhead);
+
+		bulkhead.acquire();
+		assertEquals(1, registry.get("mondrian.query.bulkhead.active").tag("bulkhead", "foodmart").gauge().value(), 0);
+		assertEquals(1, registry.get("mondrian.query.bulkhead.admitted").functionCounter().count(), 0);
+		assertThrows(QueryRejectedException.class, () -> bulkhead.acquire());
+		assertEquals(1, registry.get("mondrian.query.bulkhead.rejected").functionCounter().count(), 0);
+		bulkhead.release();
+		assertEquals(0, registry.get("mondrian.query.bulkhead.active").gauge().value(), 0);
+		assertEquals(0, registry.get("mondrian.query.bulkhead.queued").gauge().value(), 0);
+
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class QueryTimingsTest {
+
+	@Test
+	public void testPhases() throws Exception {
+
+		QueryTimings timings = new QueryTimings();
+		timings.mark(QueryTimings.Phase.AUTHORIZATION);
+		Thread.sleep(20);
+		timings.mark(QueryTimings.Phase.EXECUTION);
+		Thread.sleep(10);
+		timings.mark(QueryTimings.Phase.EXECUTION);
+
+		assertTrue(timings.isMarked(QueryTimings.Phase.AUTHORIZATION));
+		assertFalse(timings.isMarked(QueryTimings.Phase.CACHE_LOOKUP));
+		assertTrue(timings.getPhaseNanos(QueryTimings.Phase.EXECUTION) >= 30_000_000L);
+		assertTrue(timings.getTotalNanos() >= timings.getPhaseNanos(QueryTimings.Phase.AUTHORIZATION) + timings.getPhaseNanos(QueryTimings.Phase.EXECUTION));
+
+		Map<String, Double> phaseMillis = timings.getPhaseMillis();
+		assertEquals(Arrays.asList("authorization", "execution"), Arrays.asList(phaseMillis.keySet().toArray()));
+		assertTrue(phaseMillis.get("execution") >= 30);
+
+	}
+
+	@Test
+	public void testServerTiming() {
+
+		QueryTimings timings = new QueryTimings();
+		assertTrue(timings.getServerTiming().matches("total;dur=[0-9]+\\.[0-9]+"));
+
+		timings.mark(QueryTimings.Phase.AUTHORIZATION);
+		timings.mark(QueryTimings.Phase.CACHE_LOOKUP);
+		timings.mark(QueryTimings.Phase.CONNECTION_ACQUISITION);
+		timings.mark(QueryTimings.Phase.EXECUTION);
+		timings.mark(QueryTimings.Phase.RESULT_CONSTRUCTION);
+		timings.mark(QueryTimings.Phase.SERIALIZATION);
+		String d = ";dur=[0-9]+\\.[0-9]+";
+		assertTrue(timings.getServerTiming().matches("authorization" + d + ", cache" + d + ", connect" + d + ", execute" + d + ", wrap" + d + ", serialize" + d +
+				", total" + d));
+
+	}
+
+}
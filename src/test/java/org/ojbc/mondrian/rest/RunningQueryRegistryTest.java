@@ -0,0 +1,86 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.olap4j.OlapException;
+import org.olap4j.OlapStatement;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class RunningQueryRegistryTest {
+
+	@Test
+	public void testRegistry() throws Exception {
+
+		RunningQueryRegistry registry = new RunningQueryRegistry();
+		RunningQuery q1 = registry.register("test", "ROLE1", "TOKEN1", "select from Test_F1");
+		RunningQuery q2 = registry.register("foodmart", null, "TOKEN2", "select from Sales");
+		assertEquals(Arrays.asList(q1, q2), registry.getRunningQueries());
+		assertSame(q2, registry.getRunningQuery(q2.getId()));
+		assertEquals(RunningQuery.Phase.QUEUED, q1.getPhase());
+
+		Map<String, Object> json = new ObjectMapper().readValue(new ObjectMapper().writeValueAsString(q1), new TypeReference<Map<String, Object>>() {});
+		assertEquals("test", json.get("connectionName"));
+		assertEquals("ROLE1", json.get("mondrianRole"));
+		assertFalse(json.containsKey("token"));
+		assertEquals("select from Test_F1", json.get("query"));
+		assertEquals("QUEUED", json.get("phase"));
+		assertTrue(json.containsKey("elapsedMillis"));
+		assertFalse(json.containsKey("statement"));
+
+		registry.unregister(q1);
+		assertNull(registry.getRunningQuery(q1.getId()));
+		assertEquals(Arrays.asList(q2), registry.getRunningQueries());
+
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+
+		RunningQueryRegistry registry = new RunningQueryRegistry();
+
+		RunningQuery executing = registry.register("test", null, "TOKEN1", "select from Test_F1");
+		OlapStatement statement = mock(OlapStatement.class);
+		executing.setStatement(statement);
+		executing.cancel();
+		assertTrue(executing.isCancelled());
+		verify(statement).cancel();
+
+		// a query cancelled while waiting for a connection is stopped as soon as its statement exists
+		RunningQuery waiting = registry.register("test", null, "TOKEN1", "select from Test_F1");
+		waiting.cancel();
+		OlapStatement laterStatement = mock(OlapStatement.class);
+		assertThrows(OlapException.class, () -> waiting.setStatement(laterStatement));
+		verify(laterStatement).cancel();
+
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.ojbc.mondrian.QueryRejectedException;
+
+public class SingleFlightTest {
+
+	@Test
+	public void testCoalescing() throws Exception {
+
+		SingleFlight<String, String> singleFlight = new SingleFlight<>();
+		AtomicInteger executions = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(5);
+		try {
+			List<Future<SingleFlight.Outcome<String>>> futures = new ArrayList<>();
+			for (int i=0;i < 5;i++) {
+				futures.add(executor.submit(() -> singleFlight.execute("key", () -> {
+					executions.incrementAndGet();
+					release.await();
+					return "result";
+				})));
+			}
+			long deadline = System.currentTimeMillis() + 10000;
+			while (singleFlight.getCoalescedCount() < 4 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			release.countDown();
+			int coalesced = 0;
+			for (Future<SingleFlight.Outcome<String>> future : futures) {
+				SingleFlight.Outcome<String> outcome = future.get(10, TimeUnit.SECONDS);
+				assertEquals("result", outcome.getValue());
+				coalesced += outcome.isCoalesced() ? 1 : 0;
+			}
+			assertEquals(1, executions.get());
+			assertEquals(4, coalesced);
+			assertEquals(4, singleFlight.getCoalescedCount());
+			assertEquals(0, singleFlight.getInFlightCount());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// once complete, the next call executes again
+		assertFalse(singleFlight.execute("key", () -> "again").isCoalesced());
+
+	}
+
+	@Test
+	public void testExceptionPropagation() throws Exception {
+
+		SingleFlight<String, String> singleFlight = new SingleFlight<>();
+		SQLException failure = new SQLException("Query timeout of 1 seconds reached");
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<SingleFlight.Outcome<String>> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+				release.await();
+				throw failure;
+			}));
+			while (singleFlight.getInFlightCount() == 0) {
+				Thread.sleep(10);
+			}
+			Future<SingleFlight.Outcome<String>> follower = executor.submit(() -> singleFlight.execute("key", () -> "not executed"));
+			while (singleFlight.getCoalescedCount() == 0) {
+				Thread.sleep(10);
+			}
+			release.countDown();
+			assertSame(failure, assertThrows(ExecutionException.class, () -> leader.get(10, TimeUnit.SECONDS)).getCause());
+			assertSame(failure, assertThrows(ExecutionException.class, () -> follower.get(10, TimeUnit.SECONDS)).getCause());
+			assertEquals(0, singleFlight.getInFlightCount());
+		} finally {
+			executor.shutdownNow();
+		}
+
+	}
+
+	@Test
+	public void testCallerSpecificFailure() throws Exception {
+
+		SingleFlight<String, String> singleFlight = new SingleFlight<>(t -> t instanceof QueryRejectedException);
+		QueryRejectedException rejection = new QueryRejectedException("Too many queries", 5);
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<SingleFlight.Outcome<String>> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+				release.await();
+				throw rejection;
+			}));
+			while (singleFlight.getInFlightCount() == 0) {
+				Thread.sleep(10);
+			}
+			Future<SingleFlight.Outcome<String>> follower = executor.submit(() -> singleFlight.execute("key", () -> "executed by follower"));
+			while (singleFlight.getCoalescedCount() == 0) {
+				Thread.sleep(10);
+			}
+			release.countDown();
+			assertSame(rejection, assertThrows(ExecutionException.class, () -> leader.get(10, TimeUnit.SECONDS)).getCause());
+			// the follower was not rejected itself, so it executes the work
+			SingleFlight.Outcome<String> outcome = follower.get(10, TimeUnit.SECONDS);
+			assertEquals("executed by follower", outcome.getValue());
+			assertFalse(outcome.isCoalesced());
+			assertEquals(0, singleFlight.getCoalescedCount());
+		} finally {
+			executor.shutdownNow();
+		}
+
+	}
+
+	@Test
+	public void testWaitTimeout() throws Exception {
+
+		SingleFlight<String, String> singleFlight = new SingleFlight<>();
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			Future<SingleFlight.Outcome<String>> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+				release.await();
+				return "result";
+			}));
+			while (singleFlight.getInFlightCount() == 0) {
+				Thread.sleep(10);
+			}
+			assertThrows(TimeoutException.class, () -> singleFlight.execute("key", 50, () -> "not executed"));
+			release.countDown();
+			assertEquals("result", leader.get(10, TimeUnit.SECONDS).getValue());
+		} finally {
+			executor.shutdownNow();
+		}
+
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Unless explicitly acquired and licensed from Licensor under another license, the contents of
+ * this file are subject to the Reciprocal Public License ("RPL") Version 1.5, or subsequent
+ * versions as allowed by the RPL, and You may not copy or use this file in either source code
+ * or executable form, except in compliance with the terms and conditions of the RPL
+ *
+ * All software distributed under the RPL is provided strictly on an "AS IS" basis, WITHOUT
+ * WARRANTY OF ANY KIND, EITHER EXPRESS OR IMPLIED, AND LICENSOR HEREBY DISCLAIMS ALL SUCH
+ * WARRANTIES, INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE, QUIET ENJOYMENT, OR NON-INFRINGEMENT. See the RPL for specific language
+ * governing rights and limitations under the RPL.
+ *
+ * http://opensource.org/licenses/RPL-1.5
+ *
+ * Copyright 2012-2020 Open Justice Broker Consortium
+ */
+package org.ojbc.mondrian.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SlowQueryLogTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testThreshold() throws Exception {
+
+		File file = tempDir.resolve("slow.log").toFile();
+		SlowQueryLog slowQueryLog = new SlowQueryLog(file, 50, 1024 * 1024, 2);
+		assertTrue(slowQueryLog.isSlow(50));
+		assertFalse(slowQueryLog.isSlow(49.9));
+
+		QueryTimings fast = new QueryTimings();
+		fast.mark(QueryTimings.Phase.AUTHORIZATION);
+		slowQueryLog.record("test", null, "TOKEN1", "select from Fast", fast);
+
+		QueryTimings slow = new QueryTimings();
+		slow.mark(QueryTimings.Phase.AUTHORIZATION);
+		Thread.sleep(60);
+		slow.mark(QueryTimings.Phase.EXECUTION);
+		slow.setCellCount(42);
+		slow.setResponseBytes(1234);
+		slowQueryLog.record("test", "ROLE1", "TOKEN2", "select from Slow", slow);
+		slowQueryLog.close();
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertEquals(1, lines.size());
+		JsonNode entry = new ObjectMapper().readTree(lines.get(0));
+		assertEquals("test", entry.get("connectionName").asText());
+		assertEquals("ROLE1", entry.get("mondrianRole").asText());
+		assertEquals("TOKEN2", entry.get("token").asText());
+		assertEquals("select from Slow", entry.get("query").asText());
+		assertTrue(entry.get("durationMillis").asLong() >= 60);
+		assertFalse(entry.get("cached").asBoolean());
+		assertEquals(42, entry.get("cellCount").asLong());
+		assertEquals(1234, entry.get("responseBytes").asLong());
+		assertTrue(entry.get("phases").get("execution").asDouble() >= 60);
+		// the query was not executed with a context, so there is nothing known about its SQL
+		assertFalse(entry.has("sqlStatements"));
+
+	}
+
+	@Test
+	public void testRolling() throws Exception {
+
+		File file = tempDir.resolve("slow.log").toFile();
+		SlowQueryLog slowQueryLog = new SlowQueryLog(file, 0, 600, 2);
+		// logback checks the size of the file only every so often, so it takes a good many records to roll it over more than once
+		for (int i=0;i < 200;i++) {
+			slowQueryLog.record("test", null, "TOKEN1", "select from Cube" + i, new QueryTimings());
+		}
+		slowQueryLog.close();
+
+		assertEquals(0, slowQueryLog.getDroppedCount());
+		assertTrue(slowQueryLog.rolledFile(1).exists());
+		assertTrue(slowQueryLog.rolledFile(2).exists());
+		assertFalse(slowQueryLog.rolledFile(3).exists());
+		String last = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).stream().reduce((a, b) -> b).get();
+		assertEquals("select from Cube199", new ObjectMapper().readTree(last).get("query").asText());
+
+	}
+
+}